@@ -3,9 +3,13 @@ package com.genealogy;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @MapperScan("com.genealogy.mapper")
+@EnableAsync
+@EnableScheduling
 public class GenealogyApplication {
 
     public static void main(String[] args) {
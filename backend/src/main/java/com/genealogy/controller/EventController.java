@@ -2,21 +2,33 @@ package com.genealogy.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genealogy.dto.CursorPage;
 import com.genealogy.dto.EventDTO;
+import com.genealogy.dto.GeoClusterDTO;
+import com.genealogy.dto.MigrationFlowDTO;
 import com.genealogy.dto.R;
 import com.genealogy.entity.Event;
 import com.genealogy.entity.OperateLog;
 import com.genealogy.entity.Person;
+import com.genealogy.service.EventGeoService;
 import com.genealogy.service.EventService;
+import com.genealogy.service.FamilyCacheService;
+import com.genealogy.service.MigrationFlowService;
 import com.genealogy.service.OperateLogService;
 import com.genealogy.service.PersonService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,7 +40,10 @@ import java.util.Map;
 public class EventController {
 
     private final EventService eventService;
+    private final EventGeoService eventGeoService;
+    private final MigrationFlowService migrationFlowService;
     private final PersonService personService;
+    private final FamilyCacheService familyCacheService;
     private final OperateLogService operateLogService;
     private final ObjectMapper objectMapper;
 
@@ -38,10 +53,81 @@ public class EventController {
         return R.ok(eventService.findByPersonId(personId));
     }
 
-    /** 查询全部事件（时间轴） */
-    @GetMapping("/all")
-    public R<List<Event>> all() {
-        return R.ok(eventService.allSorted());
+    /**
+     * 家族时间轴：按日期游标分页，fromYear/toYear 按年份过滤，下一页传入上一页的 nextCursor
+     */
+    @GetMapping(value = "/all", params = "familyId")
+    public R<CursorPage<Event>> timeline(@RequestParam Long familyId,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "100") int limit,
+                                         @RequestParam(required = false) Integer fromYear,
+                                         @RequestParam(required = false) Integer toYear) {
+        try {
+            return R.ok(eventService.timelinePage(familyId, cursor, limit, fromYear, toYear));
+        } catch (IllegalArgumentException e) {
+            return R.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * 迁徙地图：视口内带经纬度的事件按缩放级别聚合，bbox 为 西,南,东,北
+     */
+    @GetMapping("/geo")
+    public R<List<GeoClusterDTO>> geo(@RequestParam Long familyId,
+                                      @RequestParam String bbox,
+                                      @RequestParam(defaultValue = "5") int zoom) {
+        try {
+            return R.ok(eventGeoService.clusters(familyId, bbox, zoom));
+        } catch (IllegalArgumentException e) {
+            return R.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * 家族迁徙流向（起点-终点汇总），by 为 place / decade / generation；结果随家族版本缓存并带 ETag
+     */
+    @GetMapping("/flows")
+    public ResponseEntity<byte[]> flows(@RequestParam Long familyId,
+                                        @RequestParam(defaultValue = "place") String by,
+                                        @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch)
+            throws JsonProcessingException {
+        if (!MigrationFlowService.GROUP_BY.contains(by)) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(objectMapper.writeValueAsBytes(R.fail("汇总维度应为 place / decade / generation")));
+        }
+        FamilyCacheService.CachedBody body = familyCacheService.get("flows-" + by, familyId,
+                () -> R.ok(migrationFlowService.flows(familyId, by)));
+        if (body.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(body.getEtag())
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(body.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body.getBody());
+    }
+
+    /** 按现有事件重建全部迁徙路段 */
+    @PostMapping("/flows/rebuild")
+    public R<Integer> rebuildFlows(HttpServletRequest request) {
+        if (!"ADMIN".equals(request.getAttribute("role"))) {
+            return R.fail(403, "仅管理员可操作");
+        }
+        int persons = migrationFlowService.rebuild();
+        familyCacheService.bumpAll();
+        return R.ok(persons);
+    }
+
+    /** 家族时间轴，以 NDJSON 流式输出全部事件 */
+    @GetMapping("/all/stream")
+    public void timelineStream(@RequestParam Long familyId, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        eventService.writeTimeline(familyId, response.getOutputStream());
     }
 
     /** 新增事件 */
@@ -51,10 +137,11 @@ public class EventController {
         BeanUtils.copyProperties(dto, entity);
         eventService.save(entity);
 
+        Person person = personService.getById(dto.getPersonId());
+        if (person != null) familyCacheService.bump(person.getFamilyId());
+
         // 记录日志
         try {
-            Person person = personService.getById(dto.getPersonId());
-
             Map<String, Object> detail = new HashMap<>();
             detail.put("personId", dto.getPersonId());
             detail.put("personName", person != null ? person.getName() : "");
@@ -98,6 +185,7 @@ public class EventController {
     public R<Void> update(@PathVariable Long id, @Valid @RequestBody EventDTO dto, HttpServletRequest request) {
         Event entity = eventService.getById(id);
         if (entity == null) return R.fail("事件不存在");
+        Long oldPersonId = entity.getPersonId();
 
         // 记录变更前
         Map<String, Object> before = new HashMap<>();
@@ -109,10 +197,15 @@ public class EventController {
         BeanUtils.copyProperties(dto, entity, "id");
         eventService.updateById(entity);
 
+        Person person = personService.getById(dto.getPersonId());
+        if (person != null) familyCacheService.bump(person.getFamilyId());
+        if (!oldPersonId.equals(dto.getPersonId())) {
+            Person oldPerson = personService.getById(oldPersonId);
+            if (oldPerson != null) familyCacheService.bump(oldPerson.getFamilyId());
+        }
+
         // 记录日志
         try {
-            Person person = personService.getById(dto.getPersonId());
-
             Map<String, Object> detail = new HashMap<>();
             detail.put("before", before);
 
@@ -161,6 +254,7 @@ public class EventController {
         Long familyId = person != null ? person.getFamilyId() : null;
 
         eventService.removeById(id);
+        familyCacheService.bump(familyId);
 
         // 记录日志
         try {
@@ -1,9 +1,14 @@
 package com.genealogy.controller;
 
 import com.genealogy.dto.FamilyDTO;
+import com.genealogy.dto.GenerationJobDTO;
 import com.genealogy.dto.R;
 import com.genealogy.entity.Family;
+import com.genealogy.service.FamilyCacheService;
+import com.genealogy.service.FamilyGraphService;
 import com.genealogy.service.FamilyService;
+import com.genealogy.service.GenerationService;
+import com.genealogy.service.PersonSuggestService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -18,6 +23,10 @@ import java.util.List;
 public class FamilyController {
 
     private final FamilyService familyService;
+    private final FamilyGraphService familyGraphService;
+    private final FamilyCacheService familyCacheService;
+    private final GenerationService generationService;
+    private final PersonSuggestService personSuggestService;
 
     @GetMapping("/list")
     public R<List<Family>> list() {
@@ -60,6 +69,32 @@ public class FamilyController {
             return R.fail(403, "仅管理员可操作");
         }
         familyService.removeById(id);
+        familyGraphService.evict(id);
+        personSuggestService.evict(id);
+        familyCacheService.bump(id);
         return R.ok();
     }
+
+    /**
+     * 按亲子关系重算家族全部人物的世代，后台执行，返回任务ID；dryRun 时只生成变更明细不写回
+     */
+    @PostMapping("/{id}/generations/recompute")
+    public R<GenerationJobDTO> recomputeGenerations(@PathVariable Long id,
+                                                    @RequestParam(defaultValue = "false") boolean dryRun,
+                                                    HttpServletRequest request) {
+        if (!"ADMIN".equals(request.getAttribute("role"))) {
+            return R.fail(403, "仅管理员可操作");
+        }
+        if (familyService.getById(id) == null) return R.fail("家族不存在");
+        GenerationJobDTO job = generationService.createJob(id, dryRun);
+        generationService.runAsync(job);
+        return R.ok(job);
+    }
+
+    /** 查询世代重算任务的状态与变更明细 */
+    @GetMapping("/generations/jobs/{jobId}")
+    public R<GenerationJobDTO> generationJob(@PathVariable String jobId) {
+        GenerationJobDTO job = generationService.getJob(jobId);
+        return job != null ? R.ok(job) : R.fail("任务不存在");
+    }
 }
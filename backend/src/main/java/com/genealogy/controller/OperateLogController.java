@@ -2,7 +2,10 @@ package com.genealogy.controller;
 
 import com.genealogy.dto.OperateLogDTO;
 import com.genealogy.dto.R;
+import com.genealogy.service.OperateLogPartitionService;
 import com.genealogy.service.OperateLogService;
+import com.genealogy.service.OperateLogWriter;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
@@ -18,6 +21,8 @@ import java.util.Map;
 public class OperateLogController {
 
     private final OperateLogService operateLogService;
+    private final OperateLogWriter operateLogWriter;
+    private final OperateLogPartitionService operateLogPartitionService;
 
     /**
      * 分页查询操作日志
@@ -27,6 +32,18 @@ public class OperateLogController {
         return R.ok(operateLogService.pageQuery(params));
     }
 
+    /**
+     * 游标分页查询操作日志，下一页传入上一页的 nextCursor；totalMode 为 approx/exact 时附带总数
+     */
+    @PostMapping("/scroll")
+    public R<OperateLogDTO.CursorResult> scroll(@RequestBody OperateLogDTO.QueryParams params) {
+        try {
+            return R.ok(operateLogService.cursorQuery(params));
+        } catch (IllegalArgumentException e) {
+            return R.fail(e.getMessage());
+        }
+    }
+
     /**
      * 查询某人物的操作历史
      */
@@ -48,11 +65,33 @@ public class OperateLogController {
      */
     @GetMapping("/{id}/detail")
     public R<OperateLogDTO> getDetail(@PathVariable Long id) {
-        OperateLogDTO log = operateLogService.findById(id);
+        OperateLogDTO log = operateLogService.findDetail(id);
         if (log == null) {
             return R.fail("日志不存在");
         }
         // 解析详情JSON并设置到detail字段（DTO的detail字段是String，这里用额外字段返回）
         return R.ok(log);
     }
+
+    /**
+     * 异步日志写入的队列深度、批次与同步回退次数
+     */
+    @GetMapping("/writer/stats")
+    public R<Map<String, Object>> writerStats(HttpServletRequest request) {
+        if (!"ADMIN".equals(request.getAttribute("role"))) {
+            return R.fail(403, "仅管理员可操作");
+        }
+        return R.ok(operateLogWriter.stats());
+    }
+
+    /**
+     * 立即执行分区维护：预建未来月份分区，归档并删除超过保留期的分区
+     */
+    @PostMapping("/partitions/maintain")
+    public R<Map<String, Object>> maintainPartitions(HttpServletRequest request) {
+        if (!"ADMIN".equals(request.getAttribute("role"))) {
+            return R.fail(403, "仅管理员可操作");
+        }
+        return R.ok(operateLogPartitionService.maintain());
+    }
 }
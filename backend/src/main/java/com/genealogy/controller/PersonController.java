@@ -2,26 +2,59 @@ package com.genealogy.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genealogy.dto.CursorPage;
+import com.genealogy.dto.DuplicateJobDTO;
+import com.genealogy.dto.KinshipDTO;
+import com.genealogy.dto.LineageDTO;
+import com.genealogy.dto.PageResult;
+import com.genealogy.dto.PathStepDTO;
 import com.genealogy.dto.PersonDTO;
-import com.genealogy.dto.R;
+import com.genealogy.dto.SuggestDTO;
 import com.genealogy.dto.TreeNodeDTO;
+import com.genealogy.dto.R;
+import com.genealogy.entity.DuplicateCandidate;
 import com.genealogy.entity.OperateLog;
 import com.genealogy.entity.Person;
+import com.genealogy.entity.Relation;
+import com.genealogy.service.DateKeyBackfillService;
+import com.genealogy.service.DuplicateDetectionService;
+import com.genealogy.service.EventGeoService;
 import com.genealogy.service.EventService;
+import com.genealogy.service.FamilyCacheService;
+import com.genealogy.service.FamilyGraphService;
 import com.genealogy.service.FamilyService;
+import com.genealogy.service.FamilySnapshotService;
+import com.genealogy.service.KinshipPathService;
+import com.genealogy.service.KinshipService;
+import com.genealogy.service.LineageService;
+import com.genealogy.service.MigrationFlowService;
 import com.genealogy.service.OperateLogService;
+import com.genealogy.service.PersonDiff;
+import com.genealogy.service.PersonSearchService;
 import com.genealogy.service.PersonService;
+import com.genealogy.service.PersonSuggestService;
 import com.genealogy.service.RelationService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/api/person")
@@ -29,11 +62,25 @@ import java.util.Map;
 @Slf4j
 public class PersonController {
 
+    private static final String CBOR_VALUE = "application/cbor";
+
     private final PersonService personService;
+    private final PersonSearchService personSearchService;
+    private final PersonSuggestService personSuggestService;
     private final RelationService relationService;
     private final EventService eventService;
+    private final EventGeoService eventGeoService;
+    private final MigrationFlowService migrationFlowService;
     private final FamilyService familyService;
+    private final FamilyGraphService familyGraphService;
+    private final FamilyCacheService familyCacheService;
+    private final LineageService lineageService;
+    private final KinshipPathService kinshipPathService;
+    private final KinshipService kinshipService;
     private final OperateLogService operateLogService;
+    private final DuplicateDetectionService duplicateDetectionService;
+    private final DateKeyBackfillService dateKeyBackfillService;
+    private final FamilySnapshotService familySnapshotService;
     private final ObjectMapper objectMapper;
 
     @GetMapping("/list")
@@ -42,37 +89,101 @@ public class PersonController {
         return R.ok(personService.search(keyword, familyId));
     }
 
+    /**
+     * 游标分页列表：带 limit 参数时按 (世代, 姓名, ID) 分页，fields 为逗号分隔的返回字段（如 id,name,gender,generation）；
+     * bornFrom/bornTo 按出生年份过滤；下一页传入上一页的 nextCursor
+     */
+    @GetMapping(value = "/list", params = "limit")
+    public R<CursorPage<Map<String, Object>>> listPage(@RequestParam(required = false) Long familyId,
+                                                       @RequestParam(required = false) String cursor,
+                                                       @RequestParam int limit,
+                                                       @RequestParam(required = false) String fields,
+                                                       @RequestParam(required = false) Integer bornFrom,
+                                                       @RequestParam(required = false) Integer bornTo) {
+        try {
+            return R.ok(personService.listPage(familyId, cursor, limit, fields, bornFrom, bornTo));
+        } catch (IllegalArgumentException e) {
+            return R.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * 按姓名、拼音（全拼/首字母）、出生地、简介检索人物，按相关度排序分页
+     */
+    @GetMapping("/search")
+    public R<PageResult<Person>> search(@RequestParam String q,
+                                        @RequestParam(required = false) Long familyId,
+                                        @RequestParam(defaultValue = "1") int pageNum,
+                                        @RequestParam(defaultValue = "20") int pageSize) {
+        return R.ok(personSearchService.search(q, familyId, pageNum, pageSize));
+    }
+
+    /**
+     * 人物选择器联想：按姓名、全拼或首字母前缀匹配，只返回选择器需要的字段
+     */
+    @GetMapping("/suggest")
+    public R<List<SuggestDTO>> suggest(@RequestParam String prefix,
+                                       @RequestParam Long familyId,
+                                       @RequestParam(defaultValue = "10") int limit) {
+        return R.ok(personSuggestService.suggest(prefix, familyId, limit));
+    }
+
+    /**
+     * 查找两人之间最短的亲缘路径（亲子/配偶/收养），可跨家族
+     */
+    @GetMapping("/path")
+    public R<List<PathStepDTO>> path(@RequestParam Long from,
+                                     @RequestParam Long to,
+                                     @RequestParam(defaultValue = "12") int maxHops) {
+        List<PathStepDTO> path = kinshipPathService.findPath(from, to, maxHops);
+        return path != null ? R.ok(path) : R.fail("在跳数限制内未找到亲缘路径");
+    }
+
     @GetMapping("/{id}")
     public R<Person> getById(@PathVariable Long id) {
         Person p = personService.getById(id);
         return p != null ? R.ok(p) : R.fail("人物不存在");
     }
 
+    /**
+     * 人物在 asOf 时刻（ISO 格式，如 2025-06-01T12:00:00）的状态，由家族快照回放操作日志得到
+     */
+    @GetMapping(value = "/{id}", params = "asOf")
+    public R<Person> getByIdAsOf(@PathVariable Long id,
+                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf) {
+        Person p = familySnapshotService.personAt(id, asOf);
+        return p != null ? R.ok(p) : R.fail("该时刻人物不存在");
+    }
+
     @PostMapping
     public R<Person> add(@Valid @RequestBody PersonDTO dto, HttpServletRequest request) {
         Person entity = new Person();
         BeanUtils.copyProperties(dto, entity);
-        personService.save(entity);
-        familyService.refreshMemberCount(entity.getFamilyId());
+        try (OperateLogService.AuditScope ignored = operateLogService.audited()) {
+            personService.save(entity);
+            familyService.refreshMemberCount(entity.getFamilyId());
+            familyGraphService.putPerson(entity);
+            familyCacheService.bump(entity.getFamilyId());
+            lineageService.addPerson(entity.getId());
+            personSearchService.putPerson(entity);
+            personSuggestService.putPerson(null, entity);
 
-        // 记录日志
-        try {
-            Map<String, Object> detail = new HashMap<>();
-            detail.put("name", entity.getName());
-            detail.put("gender", entity.getGender());
-            detail.put("generation", entity.getGeneration());
-            operateLogService.log(
-                    OperateLog.OperateType.PERSON_ADD,
-                    (Long) request.getAttribute("userId"),
-                    (String) request.getAttribute("displayName"),
-                    entity.getId(),
-                    entity.getName(),
-                    "PERSON",
-                    entity.getFamilyId(),
-                    objectMapper.writeValueAsString(detail)
-            );
-        } catch (Exception e) {
-            log.error("记录操作日志失败", e);
+            // 记录完整的审计字段，作为按时间点还原时的初始状态
+            try {
+                Map<String, Object> detail = PersonDiff.snapshot(entity);
+                operateLogService.log(
+                        OperateLog.OperateType.PERSON_ADD,
+                        (Long) request.getAttribute("userId"),
+                        (String) request.getAttribute("displayName"),
+                        entity.getId(),
+                        entity.getName(),
+                        "PERSON",
+                        entity.getFamilyId(),
+                        objectMapper.writeValueAsString(detail)
+                );
+            } catch (Exception e) {
+                log.error("记录操作日志失败", e);
+            }
         }
 
         return R.ok(entity);
@@ -82,47 +193,59 @@ public class PersonController {
     public R<Void> update(@PathVariable Long id, @Valid @RequestBody PersonDTO dto, HttpServletRequest request) {
         Person entity = personService.getById(id);
         if (entity == null) return R.fail("人物不存在");
+        Long oldFamilyId = entity.getFamilyId();
 
         // 记录变更前的数据
-        Map<String, Object> before = new HashMap<>();
-        before.put("name", entity.getName());
-        before.put("gender", entity.getGender());
-        before.put("generation", entity.getGeneration());
-        before.put("birthDate", entity.getBirthDate());
-        before.put("deathDate", entity.getDeathDate());
-        before.put("birthPlace", entity.getBirthPlace());
-        before.put("bio", entity.getBio());
+        Map<String, Object> before = PersonDiff.snapshot(entity);
 
         BeanUtils.copyProperties(dto, entity, "id");
-        personService.updateById(entity);
+        try (OperateLogService.AuditScope ignored = operateLogService.audited()) {
+            personService.updateById(entity);
+            if (!Objects.equals(oldFamilyId, entity.getFamilyId())) {
+                eventService.moveFamily(id, entity.getFamilyId());
+                eventGeoService.moveFamily(id, entity.getFamilyId());
+                migrationFlowService.moveFamily(id, entity.getFamilyId());
+            }
+            familyGraphService.updatePerson(oldFamilyId, entity);
+            familyCacheService.bump(oldFamilyId);
+            familyCacheService.bump(entity.getFamilyId());
+            personSearchService.putPerson(entity);
+            personSuggestService.putPerson(oldFamilyId, entity);
 
-        // 记录变更后的数据和变更内容
-        try {
-            Map<String, Object> after = new HashMap<>();
-            after.put("name", entity.getName());
-            after.put("gender", entity.getGender());
-            after.put("generation", entity.getGeneration());
-            after.put("birthDate", entity.getBirthDate());
-            after.put("deathDate", entity.getDeathDate());
-            after.put("birthPlace", entity.getBirthPlace());
-            after.put("bio", entity.getBio());
-
-            Map<String, Object> detail = new HashMap<>();
-            detail.put("before", before);
-            detail.put("after", after);
-
-            operateLogService.log(
-                    OperateLog.OperateType.PERSON_EDIT,
-                    (Long) request.getAttribute("userId"),
-                    (String) request.getAttribute("displayName"),
-                    entity.getId(),
-                    entity.getName(),
-                    "PERSON",
-                    entity.getFamilyId(),
-                    objectMapper.writeValueAsString(detail)
-            );
-        } catch (Exception e) {
-            log.error("记录操作日志失败", e);
+            // 只记录变化的字段，长文本只记录改动片段
+            try {
+                Map<String, Object> after = PersonDiff.snapshot(entity);
+                Map<String, Object> detail = PersonDiff.encode(PersonDiff.diff(before, after));
+                boolean moved = !Objects.equals(oldFamilyId, entity.getFamilyId());
+                // 转家族：附带完整状态，原家族与新家族各记一条，供两个家族按时间点还原
+                if (moved) detail.put("state", after);
+                String json = objectMapper.writeValueAsString(detail);
+                if (moved) {
+                    operateLogService.log(
+                            OperateLog.OperateType.PERSON_EDIT,
+                            (Long) request.getAttribute("userId"),
+                            (String) request.getAttribute("displayName"),
+                            entity.getId(),
+                            entity.getName(),
+                            "PERSON",
+                            oldFamilyId,
+                            json
+                    );
+                }
+
+                operateLogService.log(
+                        OperateLog.OperateType.PERSON_EDIT,
+                        (Long) request.getAttribute("userId"),
+                        (String) request.getAttribute("displayName"),
+                        entity.getId(),
+                        entity.getName(),
+                        "PERSON",
+                        entity.getFamilyId(),
+                        json
+                );
+            } catch (Exception e) {
+                log.error("记录操作日志失败", e);
+            }
         }
 
         return R.ok();
@@ -135,52 +258,272 @@ public class PersonController {
         Long familyId = p.getFamilyId();
         String personName = p.getName();
 
-        // 记录删除前的数据
-        Map<String, Object> detail = new HashMap<>();
-        detail.put("name", p.getName());
-        detail.put("gender", p.getGender());
-        detail.put("generation", p.getGeneration());
+        // 记录删除前的完整数据及随之删除的关系，作为还原编辑历史的终点
+        Map<String, Object> detail = PersonDiff.snapshot(p);
+        List<Relation> relations = relationService.findByPersonId(id);
+        List<Map<String, Object>> relationDetail = new ArrayList<>();
+        for (Relation r : relations) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("id", r.getId());
+            m.put("fromId", r.getFromId());
+            m.put("toId", r.getToId());
+            m.put("type", r.getType());
+            relationDetail.add(m);
+        }
+        detail.put("relations", relationDetail);
 
-        personService.removeById(id);
-        relationService.removeByPersonId(id);
-        eventService.removeByPersonId(id);
-        familyService.refreshMemberCount(familyId);
+        try (OperateLogService.AuditScope ignored = operateLogService.audited()) {
+            // 对方家族中指向此人的跨家族配偶关系随之删除，同步对方家族的配偶统计
+            for (Relation r : relations) {
+                if ("spouse".equals(r.getType()) && id.equals(r.getToId())) {
+                    familyGraphService.removeRelation(r, personService.getById(r.getFromId()), p);
+                }
+            }
+            personService.removeById(id);
+            lineageService.removePerson(id, relations);
+            relationService.removeByPersonId(id);
+            kinshipPathService.removePerson(id);
+            eventService.removeByPersonId(id);
+            familyService.refreshMemberCount(familyId);
+            familyGraphService.removePerson(p);
+            familyCacheService.bump(familyId);
+            personSearchService.removePerson(id);
+            personSuggestService.removePerson(p);
 
-        // 记录日志
-        try {
-            operateLogService.log(
-                    OperateLog.OperateType.PERSON_DELETE,
-                    (Long) request.getAttribute("userId"),
-                    (String) request.getAttribute("displayName"),
-                    id,
-                    personName,
-                    "PERSON",
-                    familyId,
-                    objectMapper.writeValueAsString(detail)
-            );
-        } catch (Exception e) {
-            log.error("记录操作日志失败", e);
+            // 记录日志
+            try {
+                operateLogService.log(
+                        OperateLog.OperateType.PERSON_DELETE,
+                        (Long) request.getAttribute("userId"),
+                        (String) request.getAttribute("displayName"),
+                        id,
+                        personName,
+                        "PERSON",
+                        familyId,
+                        objectMapper.writeValueAsString(detail)
+                );
+            } catch (Exception e) {
+                log.error("记录操作日志失败", e);
+            }
         }
 
         return R.ok();
     }
 
     @PatchMapping("/{id}/star")
-    public R<Void> toggleStar(@PathVariable Long id) {
+    public R<Void> toggleStar(@PathVariable Long id, HttpServletRequest request) {
         Person p = personService.getById(id);
         if (p == null) return R.fail("人物不存在");
+        Map<String, Object> before = PersonDiff.snapshot(p);
         p.setIsStarred(!Boolean.TRUE.equals(p.getIsStarred()));
-        personService.updateById(p);
+        try (OperateLogService.AuditScope ignored = operateLogService.audited()) {
+            personService.updateById(p);
+            familyGraphService.putPerson(p);
+            familyCacheService.bump(p.getFamilyId());
+
+            // 收藏状态也是审计字段，按时间点还原时需要
+            try {
+                Map<String, Object> detail = PersonDiff.encode(PersonDiff.diff(before, PersonDiff.snapshot(p)));
+                operateLogService.log(
+                        OperateLog.OperateType.PERSON_EDIT,
+                        (Long) request.getAttribute("userId"),
+                        (String) request.getAttribute("displayName"),
+                        p.getId(),
+                        p.getName(),
+                        "PERSON",
+                        p.getFamilyId(),
+                        objectMapper.writeValueAsString(detail)
+                );
+            } catch (Exception e) {
+                log.error("记录操作日志失败", e);
+            }
+        }
         return R.ok();
     }
 
+    /**
+     * 查询后代，maxDepth 为最多向下的代数，可按世代范围筛选
+     */
+    @GetMapping("/{id}/descendants")
+    public R<List<LineageDTO>> descendants(@PathVariable Long id,
+                                           @RequestParam(defaultValue = "100") int maxDepth,
+                                           @RequestParam(required = false) Integer minGeneration,
+                                           @RequestParam(required = false) Integer maxGeneration) {
+        return R.ok(lineageService.descendants(id, maxDepth, minGeneration, maxGeneration));
+    }
+
+    /**
+     * 查询祖先，maxDepth 为最多向上的代数，可按世代范围筛选
+     */
+    @GetMapping("/{id}/ancestors")
+    public R<List<LineageDTO>> ancestors(@PathVariable Long id,
+                                         @RequestParam(defaultValue = "100") int maxDepth,
+                                         @RequestParam(required = false) Integer minGeneration,
+                                         @RequestParam(required = false) Integer maxGeneration) {
+        return R.ok(lineageService.ancestors(id, maxDepth, minGeneration, maxGeneration));
+    }
+
+    /**
+     * 计算本人对同家族其他人的称谓，to 为逗号分隔的人物ID，可一次传入整页亲属
+     */
+    @GetMapping("/{id}/kinship")
+    public R<List<KinshipDTO>> kinship(@PathVariable Long id, @RequestParam List<Long> to) {
+        if (to.size() > KinshipService.MAX_BATCH) {
+            return R.fail("单次最多查询 " + KinshipService.MAX_BATCH + " 人");
+        }
+        List<KinshipDTO> result = kinshipService.titles(id, to);
+        return result != null ? R.ok(result) : R.fail("人物不存在");
+    }
+
+    /**
+     * 重建家族的祖先/后代索引
+     */
+    @PostMapping("/lineage/rebuild")
+    public R<Integer> rebuildLineage(@RequestParam Long familyId, HttpServletRequest request) {
+        if (!"ADMIN".equals(request.getAttribute("role"))) {
+            return R.fail(403, "仅管理员可操作");
+        }
+        return R.ok(lineageService.rebuild(familyId));
+    }
+
+    /**
+     * 启动重复人物检测，后台执行，返回任务ID；不传 familyId 时扫描全部家族
+     */
+    @PostMapping("/duplicates/scan")
+    public R<DuplicateJobDTO> scanDuplicates(@RequestParam(required = false) Long familyId,
+                                             HttpServletRequest request) {
+        if (!"ADMIN".equals(request.getAttribute("role"))) {
+            return R.fail(403, "仅管理员可操作");
+        }
+        if (familyId != null && familyService.getById(familyId) == null) return R.fail("家族不存在");
+        DuplicateJobDTO job = duplicateDetectionService.createJob(familyId);
+        duplicateDetectionService.runAsync(job);
+        return R.ok(job);
+    }
+
+    /** 查询重复人物检测任务的进度 */
+    @GetMapping("/duplicates/jobs/{jobId}")
+    public R<DuplicateJobDTO> duplicateJob(@PathVariable String jobId) {
+        DuplicateJobDTO job = duplicateDetectionService.getJob(jobId);
+        return job != null ? R.ok(job) : R.fail("任务不存在");
+    }
+
+    /** 疑似重复人物审核队列，按得分降序 */
+    @GetMapping("/duplicates")
+    public R<PageResult<DuplicateCandidate>> duplicates(@RequestParam(required = false) Long familyId,
+                                                        @RequestParam(required = false) String status,
+                                                        @RequestParam(defaultValue = "1") int pageNum,
+                                                        @RequestParam(defaultValue = "20") int pageSize) {
+        return R.ok(duplicateDetectionService.page(familyId, status, pageNum, pageSize));
+    }
+
+    /** 审核疑似重复人物：MERGED 已合并 / DISMISSED 非重复 */
+    @PatchMapping("/duplicates/{id}")
+    public R<Void> reviewDuplicate(@PathVariable Long id, @RequestParam String status,
+                                   HttpServletRequest request) {
+        if (!"ADMIN".equals(request.getAttribute("role"))) {
+            return R.fail(403, "仅管理员可操作");
+        }
+        if (!DuplicateCandidate.Status.MERGED.equals(status) && !DuplicateCandidate.Status.DISMISSED.equals(status)) {
+            return R.fail("审核状态无效");
+        }
+        return duplicateDetectionService.review(id, status) ? R.ok() : R.fail("记录不存在");
+    }
+
+    /**
+     * 为已有人物与事件回填日期排序键
+     */
+    @PostMapping("/dates/backfill")
+    public R<Map<String, Integer>> backfillDateKeys(HttpServletRequest request) {
+        if (!"ADMIN".equals(request.getAttribute("role"))) {
+            return R.fail(403, "仅管理员可操作");
+        }
+        return R.ok(dateKeyBackfillService.backfill());
+    }
+
     @GetMapping("/tree")
-    public R<TreeNodeDTO> tree(@RequestParam(required = false) Long familyId) {
-        return R.ok(personService.buildTree(familyId));
+    public ResponseEntity<byte[]> tree(@RequestParam Long familyId,
+                                       @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        return cached(familyCacheService.getStreamed("tree", familyId,
+                out -> personService.writeTree(familyId, out)), ifNoneMatch);
+    }
+
+    /**
+     * 家族在 asOf 时刻的族谱树，由家族快照回放操作日志得到，不经过缓存
+     */
+    @GetMapping(value = "/tree", params = "asOf")
+    public R<TreeNodeDTO> treeAsOf(@RequestParam Long familyId,
+                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf) {
+        return R.ok(personService.buildTree(familySnapshotService.graphAt(familyId, asOf)));
+    }
+
+    /**
+     * 扁平列式族谱树，Accept 含 application/cbor 时返回 CBOR 编码，否则返回 JSON
+     */
+    @GetMapping("/tree/flat")
+    public ResponseEntity<byte[]> flatTree(@RequestParam Long familyId,
+                                           @RequestHeader(value = "Accept", required = false) String accept,
+                                           @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        boolean cbor = accept != null && accept.contains(CBOR_VALUE);
+        FamilyCacheService.CachedBody body = familyCacheService.getStreamed(cbor ? "flat-cbor" : "flat-json", familyId,
+                out -> personService.writeFlatTree(familyId, out, cbor));
+        return cached(body, ifNoneMatch, cbor ? MediaType.parseMediaType(CBOR_VALUE) : MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * 族谱树直写模式：不构建 TreeNodeDTO、不经过缓存，边遍历边写入响应，适合超大家族的一次性导出。
+     * 遍历的是读锁内复制出的家族图副本，慢客户端不会阻塞该家族的写操作
+     */
+    @GetMapping("/tree/stream")
+    public void treeStream(@RequestParam Long familyId,
+                           HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        personService.writeTree(familyId, response.getOutputStream());
     }
 
     @GetMapping("/stats")
-    public R<Map<String, Object>> stats(@RequestParam(required = false) Long familyId) {
-        return R.ok(personService.stats(familyId));
+    public ResponseEntity<byte[]> stats(@RequestParam Long familyId,
+                                        @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        return cached(familyCacheService.get("stats", familyId,
+                () -> R.ok(personService.stats(familyId))), ifNoneMatch);
+    }
+
+    /**
+     * 以某人为焦点的族谱树窗口，up/down 为向上/向下展开的代数
+     */
+    @GetMapping("/{id}/subtree")
+    public ResponseEntity<?> subtree(@PathVariable Long id,
+                                     @RequestParam(defaultValue = "0") int up,
+                                     @RequestParam(defaultValue = "2") int down,
+                                     @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        Person p = personService.getById(id);
+        if (p == null) return ResponseEntity.ok(R.fail("人物不存在"));
+        if (p.getFamilyId() == null) return ResponseEntity.ok(R.fail("人物未加入家族"));
+        return cached(familyCacheService.getUncached("subtree-" + id + "-" + up + "-" + down, p.getFamilyId(),
+                () -> R.ok(personService.subtree(p, up, down))), ifNoneMatch);
+    }
+
+    /**
+     * 输出缓存的响应体，ETag 命中时返回 304
+     */
+    private ResponseEntity<byte[]> cached(FamilyCacheService.CachedBody body, String ifNoneMatch) {
+        return cached(body, ifNoneMatch, MediaType.APPLICATION_JSON);
+    }
+
+    private ResponseEntity<byte[]> cached(FamilyCacheService.CachedBody body, String ifNoneMatch, MediaType contentType) {
+        if (body.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(body.getEtag())
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(body.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(contentType)
+                .body(body.getBody());
     }
 }
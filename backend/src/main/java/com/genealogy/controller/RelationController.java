@@ -1,12 +1,15 @@
 package com.genealogy.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.genealogy.dto.R;
 import com.genealogy.dto.RelationDTO;
 import com.genealogy.entity.OperateLog;
 import com.genealogy.entity.Person;
 import com.genealogy.entity.Relation;
+import com.genealogy.service.FamilyCacheService;
+import com.genealogy.service.FamilyGraphService;
+import com.genealogy.service.KinshipPathService;
+import com.genealogy.service.LineageService;
 import com.genealogy.service.OperateLogService;
 import com.genealogy.service.PersonService;
 import com.genealogy.service.RelationService;
@@ -17,9 +20,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/relation")
@@ -27,15 +30,22 @@ import java.util.Map;
 @Slf4j
 public class RelationController {
 
+    /** 批量导入单次条数上限 */
+    private static final int MAX_BATCH = 5000;
+
     private final RelationService relationService;
     private final PersonService personService;
+    private final FamilyGraphService familyGraphService;
+    private final FamilyCacheService familyCacheService;
+    private final LineageService lineageService;
+    private final KinshipPathService kinshipPathService;
     private final OperateLogService operateLogService;
     private final ObjectMapper objectMapper;
 
-    /** 查询全部关系 */
+    /** 查询关系，指定家族时只返回该家族的关系 */
     @GetMapping("/list")
-    public R<List<Relation>> list() {
-        return R.ok(relationService.list());
+    public R<List<Relation>> list(@RequestParam(required = false) Long familyId) {
+        return R.ok(familyId != null ? relationService.findByFamilyId(familyId) : relationService.list());
     }
 
     /** 查询某人的关系 */
@@ -44,25 +54,90 @@ public class RelationController {
         return R.ok(relationService.findByPersonId(personId));
     }
 
-    /** 新增关系 */
+    /** 新增关系，写入前校验自环、重复边、世代与成环 */
     @PostMapping
     public R<Relation> add(@Valid @RequestBody RelationDTO dto, HttpServletRequest request) {
         Relation entity = new Relation();
         BeanUtils.copyProperties(dto, entity);
-        relationService.save(entity);
 
-        // 记录日志
-        try {
-            Person fromPerson = personService.getById(dto.getFromId());
-            Person toPerson = personService.getById(dto.getToId());
+        Person fromPerson = personService.getById(dto.getFromId());
+        Person toPerson = personService.getById(dto.getToId());
+        // 从校验到更新祖先索引持有两人所在家族的写入锁，并发新增不会各自通过校验后共同成环
+        return familyGraphService.withWriteLock(familiesOf(Arrays.asList(fromPerson, toPerson)), () -> {
+            String error = relationService.validate(entity, fromPerson, toPerson);
+            if (error != null) return R.fail(error);
+
+            try (OperateLogService.AuditScope ignored = operateLogService.audited()) {
+                relationService.save(entity);
+                familyGraphService.addRelation(entity, fromPerson, toPerson);
+                lineageService.addRelation(entity);
+                kinshipPathService.addRelation(entity);
+                bumpFamilies(fromPerson, toPerson);
+
+                logAdd(entity, fromPerson, toPerson, request);
+            }
+            return R.ok(entity);
+        });
+    }
+
+    /**
+     * 批量导入关系：整批校验一次后一次写入，祖先索引按家族重建一次，而不是逐条增量维护
+     */
+    @PostMapping("/batch")
+    public R<Integer> addBatch(@RequestBody List<RelationDTO> dtos, HttpServletRequest request) {
+        if (dtos.size() > MAX_BATCH) return R.fail("单次最多导入 " + MAX_BATCH + " 条关系");
+
+        List<Relation> entities = new ArrayList<>(dtos.size());
+        Set<Long> personIds = new HashSet<>();
+        for (RelationDTO dto : dtos) {
+            Relation entity = new Relation();
+            BeanUtils.copyProperties(dto, entity);
+            entity.setId(null);
+            entities.add(entity);
+            if (dto.getFromId() != null) personIds.add(dto.getFromId());
+            if (dto.getToId() != null) personIds.add(dto.getToId());
+        }
+        Map<Long, Person> persons = personIds.isEmpty() ? Collections.emptyMap()
+                : personService.listByIds(personIds).stream()
+                        .collect(Collectors.toMap(Person::getId, Function.identity()));
+
+        return familyGraphService.withWriteLock(familiesOf(persons.values()), () -> {
+            String error = relationService.validateBatch(entities, persons);
+            if (error != null) return R.fail(error);
+
+            try (OperateLogService.AuditScope ignored = operateLogService.audited()) {
+                relationService.saveBatch(entities);
+
+                Set<Long> familyIds = new HashSet<>();
+                for (Relation entity : entities) {
+                    kinshipPathService.addRelation(entity);
+                    Person toPerson = persons.get(entity.getToId());
+                    Person fromPerson = persons.get(entity.getFromId());
+                    if (fromPerson.getFamilyId() != null) familyIds.add(fromPerson.getFamilyId());
+                    if (toPerson.getFamilyId() != null) familyIds.add(toPerson.getFamilyId());
+                }
+                for (Long familyId : familyIds) {
+                    familyGraphService.evict(familyId);
+                    lineageService.rebuild(familyId);
+                    familyCacheService.bump(familyId);
+                }
+                for (Relation entity : entities) {
+                    logAdd(entity, persons.get(entity.getFromId()), persons.get(entity.getToId()), request);
+                }
+            }
+            return R.ok(entities.size());
+        });
+    }
 
+    private void logAdd(Relation entity, Person fromPerson, Person toPerson, HttpServletRequest request) {
+        try {
             Map<String, Object> detail = new HashMap<>();
-            detail.put("fromId", dto.getFromId());
+            detail.put("fromId", entity.getFromId());
             detail.put("fromName", fromPerson != null ? fromPerson.getName() : "");
-            detail.put("toId", dto.getToId());
+            detail.put("toId", entity.getToId());
             detail.put("toName", toPerson != null ? toPerson.getName() : "");
-            detail.put("type", dto.getType());
-            detail.put("typeDesc", getRelationTypeDesc(dto.getType()));
+            detail.put("type", entity.getType());
+            detail.put("typeDesc", getRelationTypeDesc(entity.getType()));
 
             Long familyId = fromPerson != null ? fromPerson.getFamilyId() : null;
             operateLogService.log(
@@ -78,8 +153,20 @@ public class RelationController {
         } catch (Exception e) {
             log.error("记录操作日志失败", e);
         }
+    }
+
+    /** 人物所在的家族，未加入家族的人物记为 null */
+    private static Set<Long> familiesOf(Collection<Person> persons) {
+        Set<Long> familyIds = new HashSet<>();
+        for (Person p : persons) {
+            if (p != null) familyIds.add(p.getFamilyId());
+        }
+        return familyIds;
+    }
 
-        return R.ok(entity);
+    private void bumpFamilies(Person fromPerson, Person toPerson) {
+        if (fromPerson != null) familyCacheService.bump(fromPerson.getFamilyId());
+        if (toPerson != null) familyCacheService.bump(toPerson.getFamilyId());
     }
 
     private String getRelationTypeDesc(String type) {
@@ -111,22 +198,28 @@ public class RelationController {
 
         Long familyId = fromPerson != null ? fromPerson.getFamilyId() : null;
 
-        relationService.removeById(id);
-
-        // 记录日志
-        try {
-            operateLogService.log(
-                    OperateLog.OperateType.RELATION_DELETE,
-                    (Long) request.getAttribute("userId"),
-                    (String) request.getAttribute("displayName"),
-                    id,
-                    (fromPerson != null ? fromPerson.getName() : "") + " - " + (toPerson != null ? toPerson.getName() : ""),
-                    "RELATION",
-                    familyId,
-                    objectMapper.writeValueAsString(detail)
-            );
-        } catch (Exception e) {
-            log.error("记录操作日志失败", e);
+        try (OperateLogService.AuditScope ignored = operateLogService.audited()) {
+            relationService.removeById(id);
+            familyGraphService.removeRelation(relation, fromPerson, toPerson);
+            lineageService.removeRelation(relation);
+            kinshipPathService.removeRelation(relation);
+            bumpFamilies(fromPerson, toPerson);
+
+            // 记录日志
+            try {
+                operateLogService.log(
+                        OperateLog.OperateType.RELATION_DELETE,
+                        (Long) request.getAttribute("userId"),
+                        (String) request.getAttribute("displayName"),
+                        id,
+                        (fromPerson != null ? fromPerson.getName() : "") + " - " + (toPerson != null ? toPerson.getName() : ""),
+                        "RELATION",
+                        familyId,
+                        objectMapper.writeValueAsString(detail)
+                );
+            } catch (Exception e) {
+                log.error("记录操作日志失败", e);
+            }
         }
 
         return R.ok();
@@ -0,0 +1,27 @@
+package com.genealogy.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 游标分页返回结果，nextCursor 原样传回即可取下一页
+ */
+@Data
+public class CursorPage<T> {
+
+    private List<T> records;
+
+    /** 下一页游标，没有更多数据时为 null */
+    private String nextCursor;
+
+    private Boolean hasMore;
+
+    public static <T> CursorPage<T> of(List<T> records, String nextCursor) {
+        CursorPage<T> page = new CursorPage<>();
+        page.setRecords(records);
+        page.setNextCursor(nextCursor);
+        page.setHasMore(nextCursor != null);
+        return page;
+    }
+}
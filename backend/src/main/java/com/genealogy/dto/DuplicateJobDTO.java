@@ -0,0 +1,36 @@
+package com.genealogy.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 重复人物检测任务
+ */
+@Data
+public class DuplicateJobDTO {
+
+    private String jobId;
+
+    /** 为 null 时扫描全部家族 */
+    private Long familyId;
+
+    /** RUNNING / DONE / FAILED / TIMEOUT */
+    private String status;
+
+    /** 已扫描人数 */
+    private Long scanned;
+
+    /** 分块数 */
+    private Long blocks;
+
+    /** 实际比较的人物对数 */
+    private Long pairsCompared;
+
+    /** 达到阈值写入审核队列的人物对数 */
+    private Long candidates;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
@@ -0,0 +1,31 @@
+package com.genealogy.dto;
+
+import lombok.Data;
+
+/**
+ * 族谱树扁平列式表示 — 移动端使用
+ * 每个人物占一行，各数组下标一一对应；关系以行下标表示
+ */
+@Data
+public class FlatTreeDTO {
+
+    /** 人物ID（字符串，防止前端精度丢失） */
+    private String[] ids;
+
+    private String[] names;
+
+    /** 性别编码: 0=未知 1=男 2=女 */
+    private int[] genders;
+
+    /** 世代，未填写为 0 */
+    private int[] generations;
+
+    /** 族谱树上父节点的行下标，根节点为 -1 */
+    private int[] parents;
+
+    /** 配偶关系行下标对，依次为 [from0, to0, from1, to1, ...] */
+    private int[] spouses;
+
+    /** 根节点行下标，与嵌套格式的根节点选取规则一致 */
+    private int[] roots;
+}
@@ -0,0 +1,19 @@
+package com.genealogy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 世代重算的单条变更
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GenerationChangeDTO {
+
+    private Long personId;
+    private String name;
+    private Integer oldGeneration;
+    private Integer newGeneration;
+}
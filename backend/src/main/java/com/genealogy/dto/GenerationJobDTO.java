@@ -0,0 +1,38 @@
+package com.genealogy.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 世代重算任务
+ */
+@Data
+public class GenerationJobDTO {
+
+    private String jobId;
+    private Long familyId;
+
+    /** 仅计算变更，不写回数据库 */
+    private Boolean dryRun;
+
+    /** RUNNING / DONE / FAILED */
+    private String status;
+
+    /** 家族人数 */
+    private Integer total;
+
+    /** 世代发生变化的人数 */
+    private Integer changed;
+
+    /** 因关系成环而无法确定世代、保持原值的人数 */
+    private Integer skipped;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+
+    /** 变更明细 */
+    private List<GenerationChangeDTO> changes;
+}
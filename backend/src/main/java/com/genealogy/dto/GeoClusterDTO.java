@@ -0,0 +1,29 @@
+package com.genealogy.dto;
+
+import com.genealogy.entity.Event;
+import lombok.Data;
+
+/**
+ * 地图聚合点：同一 geohash 网格内的事件
+ */
+@Data
+public class GeoClusterDTO {
+
+    /** 网格 geohash 前缀 */
+    private String cell;
+
+    /** 网格内事件数 */
+    private Integer count;
+
+    /** 网格内事件的平均纬度 */
+    private Double latitude;
+
+    /** 网格内事件的平均经度 */
+    private Double longitude;
+
+    /** 网格内 ID 最小的事件 */
+    private Long eventId;
+
+    /** 网格内只有一个事件时附带事件详情 */
+    private Event event;
+}
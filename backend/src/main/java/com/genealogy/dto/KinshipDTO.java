@@ -0,0 +1,26 @@
+package com.genealogy.dto;
+
+import lombok.Data;
+
+/**
+ * 亲属称谓（从查询人的角度称呼对方）
+ */
+@Data
+public class KinshipDTO {
+
+    private Long personId;
+    private String name;
+    private String gender;
+
+    /** 称谓，无法确定时为 null */
+    private String title;
+
+    /** 查询人到最近共同祖先的代数，非血亲时为 null */
+    private Integer up;
+
+    /** 对方到最近共同祖先的代数，非血亲时为 null */
+    private Integer down;
+
+    /** 是否经由配偶得出的姻亲称谓 */
+    private Boolean inLaw;
+}
@@ -0,0 +1,18 @@
+package com.genealogy.dto;
+
+import lombok.Data;
+
+/**
+ * 祖先/后代查询结果
+ */
+@Data
+public class LineageDTO {
+
+    private Long id;
+    private String name;
+    private String gender;
+    private Integer generation;
+
+    /** 与查询人物相隔的代数（多条路径时取最近） */
+    private Integer depth;
+}
@@ -0,0 +1,41 @@
+package com.genealogy.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 迁徙流向：同一起点到同一终点的路段汇总（可再按年代或世代细分）
+ */
+@Data
+public class MigrationFlowDTO {
+
+    private String origin;
+    private Double originLat;
+    private Double originLng;
+
+    private String dest;
+    private Double destLat;
+    private Double destLng;
+
+    /** 按年代汇总时的年代 */
+    private Integer decade;
+
+    /** 按世代汇总时的世代 */
+    private Integer generation;
+
+    /** 路段数 */
+    private Integer count;
+
+    /** 涉及人数 */
+    private Integer personCount;
+
+    /** 代表人物（最多 3 位） */
+    private List<Long> personIds;
+    private List<String> personNames;
+
+    /** 代表人物ID，逗号分隔（查询中间结果） */
+    @JsonIgnore
+    private String sampleIds;
+}
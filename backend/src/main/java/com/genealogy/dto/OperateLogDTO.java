@@ -39,14 +39,22 @@ public class OperateLogDTO {
     @Data
     public static class QueryParams {
         private Long familyId;
+        /** 目标对象 ID，如人物 ID */
+        private Long targetId;
         private String operateType;
         private String targetType;
         private Long userId;
         private String keyword;
         private LocalDateTime startTime;
         private LocalDateTime endTime;
+        /** 是否同时查询已归档（超过保留期）的日志 */
+        private Boolean includeArchive;
         private Integer pageNum = 1;
         private Integer pageSize = 20;
+        /** 游标模式：上一页返回的 nextCursor，首页留空 */
+        private String cursor;
+        /** 游标模式的总数：为空不统计，approx 为查询计划估计值，exact 为精确计数 */
+        private String totalMode;
     }
 
     /**
@@ -59,4 +67,19 @@ public class OperateLogDTO {
         private Integer pageNum;
         private Integer pageSize;
     }
+
+    /**
+     * 游标分页返回结果，按 (操作时间, ID) 倒序
+     */
+    @Data
+    public static class CursorResult {
+        private List<OperateLogDTO> records;
+        /** 下一页游标，没有更多数据时为 null */
+        private String nextCursor;
+        private Boolean hasMore;
+        /** 总数，未请求时为 null */
+        private Long total;
+        /** total 是否为精确值 */
+        private Boolean totalExact;
+    }
 }
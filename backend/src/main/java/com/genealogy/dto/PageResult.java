@@ -0,0 +1,26 @@
+package com.genealogy.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 通用分页返回结果
+ */
+@Data
+public class PageResult<T> {
+
+    private List<T> records;
+    private Long total;
+    private Integer pageNum;
+    private Integer pageSize;
+
+    public static <T> PageResult<T> of(List<T> records, long total, int pageNum, int pageSize) {
+        PageResult<T> page = new PageResult<>();
+        page.setRecords(records);
+        page.setTotal(total);
+        page.setPageNum(pageNum);
+        page.setPageSize(pageSize);
+        return page;
+    }
+}
@@ -0,0 +1,21 @@
+package com.genealogy.dto;
+
+import lombok.Data;
+
+/**
+ * 亲缘路径中的一步
+ */
+@Data
+public class PathStepDTO {
+
+    private Long personId;
+    private String name;
+    private String gender;
+    private Long familyId;
+
+    /** 相对上一人的身份: parent / child / spouse，起点为 null */
+    private String relation;
+
+    /** 该步是否为收养关系 */
+    private Boolean adopted;
+}
@@ -0,0 +1,19 @@
+package com.genealogy.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 人物联想结果（选择器用的精简字段）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestDTO {
+
+    private Long id;
+    private String name;
+    private Integer generation;
+    private String gender;
+}
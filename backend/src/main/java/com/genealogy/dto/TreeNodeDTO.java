@@ -1,5 +1,6 @@
 package com.genealogy.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import java.util.List;
@@ -27,4 +28,12 @@ public class TreeNodeDTO {
 
     /** 子节点 */
     private List<TreeNodeDTO> children;
+
+    /** 树上子女数 — 仅窗口查询返回 */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer childCount;
+
+    /** 树上后代总数 — 仅窗口查询返回 */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer descendantCount;
 }
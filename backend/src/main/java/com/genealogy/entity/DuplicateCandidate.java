@@ -0,0 +1,55 @@
+package com.genealogy.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 疑似重复人物（审核队列中的一对人物）
+ */
+@Data
+@TableName("t_duplicate_candidate")
+public class DuplicateCandidate {
+
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+
+    /** ID 较小的人物 */
+    private Long personA;
+
+    /** ID 较大的人物 */
+    private Long personB;
+
+    /** 人物A所属家族 */
+    private Long familyId;
+
+    /** 相似度得分 0-100 */
+    private Integer score;
+
+    /** 命中依据，逗号分隔 */
+    private String reasons;
+
+    /** PENDING / MERGED / DISMISSED */
+    private String status;
+
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createdAt;
+
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updatedAt;
+
+    /** 人物A详情（查询审核队列时填充） */
+    @TableField(exist = false)
+    private Person personAInfo;
+
+    /** 人物B详情（查询审核队列时填充） */
+    @TableField(exist = false)
+    private Person personBInfo;
+
+    /** 审核状态 */
+    public static class Status {
+        public static final String PENDING = "PENDING";
+        public static final String MERGED = "MERGED";
+        public static final String DISMISSED = "DISMISSED";
+    }
+}
@@ -13,6 +13,9 @@ public class Event {
 
     private Long personId;
 
+    /** 所属人物的家族ID（冗余，保存时由人物带出，人物换家族时同步） */
+    private Long familyId;
+
     /** birth / death / marriage / migration / achievement / residence / other */
     private String type;
 
@@ -20,6 +23,12 @@ public class Event {
 
     private String eventDate;
 
+    /** 事件日期排序键 yyyymmdd（保存时由 eventDate 归一化生成，0 表示无法识别） */
+    private Integer eventSort;
+
+    /** 事件日期精度：day/month/year/decade/circa/lunar */
+    private String eventPrecision;
+
     private String description;
 
     /** 地理位置信息 */
@@ -0,0 +1,27 @@
+package com.genealogy.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+
+/**
+ * 事件空间索引（带经纬度的事件，按家族 + geohash 建索引）
+ */
+@Data
+@TableName("t_event_geo")
+public class EventGeo {
+
+    @TableId(type = IdType.INPUT)
+    private Long eventId;
+
+    /** 事件所属人物的家族 */
+    private Long familyId;
+
+    private Long personId;
+
+    /** 12 位 geohash */
+    private String geohash;
+
+    private Double latitude;
+
+    private Double longitude;
+}
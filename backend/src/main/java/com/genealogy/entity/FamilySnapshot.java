@@ -0,0 +1,32 @@
+package com.genealogy.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 家族快照：某一时刻家族全部人物的审计字段与关系，作为按时间点还原时回放操作日志的起点
+ */
+@Data
+@TableName("t_family_snapshot")
+public class FamilySnapshot {
+
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+
+    private Long familyId;
+
+    /** 快照时间（微秒精度） */
+    private LocalDateTime takenAt;
+
+    /** 回放水位：ID 不大于它的操作日志均已包含在快照中，回放只取其后的日志 */
+    private Long lastLogId;
+
+    private Integer personCount;
+
+    private Integer relationCount;
+
+    /** gzip 压缩的 JSON：{"persons":[...],"relations":[...]} */
+    private byte[] data;
+}
@@ -0,0 +1,39 @@
+package com.genealogy.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+
+/**
+ * 迁徙路段：某人相邻两个落脚点（出生/迁徙/定居事件）之间的一次迁移
+ */
+@Data
+@TableName("t_migration_leg")
+public class MigrationLeg {
+
+    @TableId(type = IdType.ASSIGN_ID)
+    private Long id;
+
+    private Long familyId;
+
+    private Long personId;
+
+    /** 该人的第几段路程，从 0 开始 */
+    private Integer seq;
+
+    /** 起点地名（无地名时为经纬度） */
+    private String origin;
+
+    private Double originLat;
+
+    private Double originLng;
+
+    /** 终点地名（无地名时为经纬度） */
+    private String dest;
+
+    private Double destLat;
+
+    private Double destLng;
+
+    /** 到达终点的年代（如 1850），日期未知时为空 */
+    private Integer decade;
+}
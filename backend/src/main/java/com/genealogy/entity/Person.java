@@ -23,6 +23,18 @@ public class Person {
 
     private String deathDate;
 
+    /** 出生日期排序键 yyyymmdd（保存时由 birthDate 归一化生成，0 表示无法识别） */
+    private Integer birthSort;
+
+    /** 出生日期精度：day/month/year/decade/circa/lunar */
+    private String birthPrecision;
+
+    /** 去世日期排序键 yyyymmdd */
+    private Integer deathSort;
+
+    /** 去世日期精度 */
+    private String deathPrecision;
+
     private String birthPlace;
 
     private String bio;
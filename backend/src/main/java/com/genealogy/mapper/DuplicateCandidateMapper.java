@@ -0,0 +1,22 @@
+package com.genealogy.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.genealogy.entity.DuplicateCandidate;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+public interface DuplicateCandidateMapper extends BaseMapper<DuplicateCandidate> {
+
+    /**
+     * 批量写入候选对，同一对人物已在队列中（含已审核）时保持原记录不变
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO t_duplicate_candidate (id, person_a, person_b, family_id, score, reasons, status) VALUES " +
+            "<foreach collection='list' item='c' separator=','>" +
+            "(#{c.id}, #{c.personA}, #{c.personB}, #{c.familyId}, #{c.score}, #{c.reasons}, #{c.status})" +
+            "</foreach>" +
+            "</script>")
+    int insertIgnoreBatch(@Param("list") List<DuplicateCandidate> list);
+}
@@ -0,0 +1,49 @@
+package com.genealogy.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.genealogy.dto.GeoClusterDTO;
+import com.genealogy.entity.EventGeo;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface EventGeoMapper extends BaseMapper<EventGeo> {
+
+    @Insert("INSERT INTO t_event_geo (event_id, family_id, person_id, geohash, latitude, longitude) " +
+            "VALUES (#{eventId}, #{familyId}, #{personId}, #{geohash}, #{latitude}, #{longitude}) " +
+            "ON DUPLICATE KEY UPDATE family_id = VALUES(family_id), person_id = VALUES(person_id), " +
+            "geohash = VALUES(geohash), latitude = VALUES(latitude), longitude = VALUES(longitude)")
+    int upsert(EventGeo geo);
+
+    @Delete("DELETE FROM t_event_geo WHERE person_id = #{personId}")
+    int deleteByPersonId(@Param("personId") Long personId);
+
+    /** 人物转入其他家族时同步其事件的家族 */
+    @Update("UPDATE t_event_geo SET family_id = #{familyId} WHERE person_id = #{personId}")
+    int updateFamilyByPersonId(@Param("personId") Long personId, @Param("familyId") Long familyId);
+
+    /**
+     * 视口内按 geohash 前缀聚合：patterns 为覆盖视口的网格前缀加 %（走 idx_family_geohash 前缀范围扫描），
+     * 经纬度条件裁掉网格超出视口的部分，再按 precision 位前缀分组
+     */
+    @Select("<script>" +
+            "SELECT LEFT(geohash, #{precision}) AS cell, COUNT(*) AS count, " +
+            "AVG(latitude) AS latitude, AVG(longitude) AS longitude, MIN(event_id) AS event_id " +
+            "FROM t_event_geo WHERE family_id = #{familyId} AND (" +
+            "<foreach collection='patterns' item='p' separator=' OR '>geohash LIKE #{p}</foreach>) " +
+            "AND latitude BETWEEN #{minLat} AND #{maxLat} AND longitude BETWEEN #{minLng} AND #{maxLng} " +
+            "GROUP BY cell" +
+            "</script>")
+    List<GeoClusterDTO> selectClusters(@Param("familyId") Long familyId,
+                                       @Param("patterns") Collection<String> patterns,
+                                       @Param("precision") int precision,
+                                       @Param("minLat") double minLat,
+                                       @Param("minLng") double minLng,
+                                       @Param("maxLat") double maxLat,
+                                       @Param("maxLng") double maxLng);
+}
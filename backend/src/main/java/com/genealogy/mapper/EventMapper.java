@@ -2,6 +2,77 @@ package com.genealogy.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.genealogy.entity.Event;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
+
+import java.util.List;
 
 public interface EventMapper extends BaseMapper<Event> {
+
+    /**
+     * 家族时间轴的一页：按 (event_sort, id) 升序，无日期的事件排在最前，走 idx_family_sort；
+     * afterId 为 null 时从头开始，否则取 (afterSort, afterId) 之后的记录；
+     * fromSort/toSort 为排序键区间（含端点），指定时不含无日期的事件
+     */
+    @Select("<script>" +
+            "SELECT * FROM t_event WHERE family_id = #{familyId} AND deleted = 0 " +
+            "<if test='fromSort != null'>AND event_sort &gt;= #{fromSort} </if>" +
+            "<if test='toSort != null'>AND event_sort &lt;= #{toSort} AND event_sort &gt; 0 </if>" +
+            "<if test='afterId != null'>" +
+            "<choose>" +
+            "<when test='afterSort == null'>" +
+            "AND (event_sort IS NOT NULL OR id &gt; #{afterId}) " +
+            "</when>" +
+            "<otherwise>" +
+            "AND (event_sort &gt; #{afterSort} OR (event_sort = #{afterSort} AND id &gt; #{afterId})) " +
+            "</otherwise>" +
+            "</choose>" +
+            "</if>" +
+            "ORDER BY event_sort, id LIMIT #{limit}" +
+            "</script>")
+    List<Event> selectTimelinePage(@Param("familyId") Long familyId,
+                                   @Param("fromSort") Integer fromSort,
+                                   @Param("toSort") Integer toSort,
+                                   @Param("afterSort") Integer afterSort,
+                                   @Param("afterId") Long afterId,
+                                   @Param("limit") int limit);
+
+    /**
+     * 家族时间轴游标，逐行从 MySQL 流式读取；需在事务内迭代
+     */
+    @Select("SELECT * FROM t_event WHERE family_id = #{familyId} AND deleted = 0 ORDER BY event_sort, id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<Event> cursorTimeline(@Param("familyId") Long familyId);
+
+    /** 日期排序键待回填的事件（有日期但尚无排序键），按 ID 分批 */
+    @Select("SELECT id, event_date FROM t_event " +
+            "WHERE id > #{afterId} AND event_date IS NOT NULL AND event_sort IS NULL ORDER BY id LIMIT #{limit}")
+    List<Event> selectDateKeyBackfill(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /** 批量写入日期排序键 */
+    @Update("<script>" +
+            "UPDATE t_event SET " +
+            "event_sort = CASE id <foreach collection='list' item='e'>WHEN #{e.id} THEN #{e.eventSort} </foreach>END, " +
+            "event_precision = CASE id <foreach collection='list' item='e'>WHEN #{e.id} THEN #{e.eventPrecision} </foreach>END " +
+            "WHERE id IN <foreach collection='list' item='e' open='(' separator=',' close=')'>#{e.id}</foreach>" +
+            "</script>")
+    int updateDateKeys(@Param("list") List<Event> list);
+
+    /**
+     * 家族中没有迁徙路段（带经纬度的落脚点不足两处）的人物的迁徙/定居事件，按日期排序；
+     * 这些人不出现在流向汇总中，族谱导出时逐人列出
+     */
+    @Select("SELECT * FROM t_event e WHERE e.family_id = #{familyId} AND e.deleted = 0 " +
+            "AND e.type IN ('migration', 'residence') AND e.latitude IS NOT NULL AND e.longitude IS NOT NULL " +
+            "AND NOT EXISTS (SELECT 1 FROM t_migration_leg l WHERE l.person_id = e.person_id) " +
+            "ORDER BY e.event_sort, e.id")
+    List<Event> selectUnroutedStays(@Param("familyId") Long familyId);
+
+    /** 人物换家族时同步其事件的家族ID */
+    @Update("UPDATE t_event SET family_id = #{familyId} WHERE person_id = #{personId}")
+    int updateFamilyByPerson(@Param("personId") Long personId, @Param("familyId") Long familyId);
 }
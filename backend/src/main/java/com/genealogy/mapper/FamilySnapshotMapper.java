@@ -0,0 +1,33 @@
+package com.genealogy.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.genealogy.entity.FamilySnapshot;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
+
+public interface FamilySnapshotMapper extends BaseMapper<FamilySnapshot> {
+
+    /** 不晚于给定时间的最近一份快照 */
+    @Select("SELECT * FROM t_family_snapshot WHERE family_id = #{familyId} AND taken_at <= #{asOf} " +
+            "ORDER BY taken_at DESC LIMIT 1")
+    FamilySnapshot selectLatestBefore(@Param("familyId") Long familyId, @Param("asOf") LocalDateTime asOf);
+
+    /** 晚于给定时间的最早一份快照 */
+    @Select("SELECT * FROM t_family_snapshot WHERE family_id = #{familyId} AND taken_at > #{asOf} " +
+            "ORDER BY taken_at LIMIT 1")
+    FamilySnapshot selectEarliestAfter(@Param("familyId") Long familyId, @Param("asOf") LocalDateTime asOf);
+
+    /** 最近一份快照（不含数据），没有快照时为 null */
+    @Select("SELECT id, family_id, taken_at, last_log_id, person_count, relation_count FROM t_family_snapshot " +
+            "WHERE family_id = #{familyId} ORDER BY taken_at DESC LIMIT 1")
+    FamilySnapshot selectLatest(@Param("familyId") Long familyId);
+
+    /** 删除家族最新 keep 份之外的快照 */
+    @Delete("DELETE FROM t_family_snapshot WHERE family_id = #{familyId} AND taken_at <= (" +
+            "SELECT taken_at FROM (SELECT taken_at FROM t_family_snapshot WHERE family_id = #{familyId} " +
+            "ORDER BY taken_at DESC LIMIT 1 OFFSET #{keep}) t)")
+    int deleteBeyond(@Param("familyId") Long familyId, @Param("keep") int keep);
+}
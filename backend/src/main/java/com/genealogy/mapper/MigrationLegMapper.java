@@ -0,0 +1,58 @@
+package com.genealogy.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.genealogy.dto.MigrationFlowDTO;
+import com.genealogy.entity.MigrationLeg;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+
+public interface MigrationLegMapper extends BaseMapper<MigrationLeg> {
+
+    @Insert("<script>" +
+            "INSERT INTO t_migration_leg (id, family_id, person_id, seq, origin, origin_lat, origin_lng, " +
+            "dest, dest_lat, dest_lng, decade) VALUES " +
+            "<foreach collection='list' item='l' separator=','>" +
+            "(#{l.id}, #{l.familyId}, #{l.personId}, #{l.seq}, #{l.origin}, #{l.originLat}, #{l.originLng}, " +
+            "#{l.dest}, #{l.destLat}, #{l.destLng}, #{l.decade})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<MigrationLeg> list);
+
+    @Delete("DELETE FROM t_migration_leg WHERE person_id = #{personId}")
+    int deleteByPersonId(@Param("personId") Long personId);
+
+    /** 人物转入其他家族 */
+    @Update("UPDATE t_migration_leg SET family_id = #{familyId} WHERE person_id = #{personId}")
+    int updateFamilyByPersonId(@Param("personId") Long personId, @Param("familyId") Long familyId);
+
+    /**
+     * 家族迁徙流向：按起点、终点汇总，by 为 decade / generation 时再按年代 / 世代细分；
+     * 代表人物取 ID 最小的 3 位
+     */
+    @Select("<script>" +
+            "SELECT l.origin, l.dest, AVG(l.origin_lat) AS origin_lat, AVG(l.origin_lng) AS origin_lng, " +
+            "AVG(l.dest_lat) AS dest_lat, AVG(l.dest_lng) AS dest_lng, " +
+            "<if test=\"by == 'decade'\">l.decade, </if>" +
+            "<if test=\"by == 'generation'\">p.generation, </if>" +
+            "COUNT(*) AS count, COUNT(DISTINCT l.person_id) AS person_count, " +
+            "SUBSTRING_INDEX(GROUP_CONCAT(DISTINCT l.person_id ORDER BY l.person_id), ',', 3) AS sample_ids " +
+            "FROM t_migration_leg l " +
+            "<if test=\"by == 'generation'\">JOIN t_person p ON p.id = l.person_id </if>" +
+            "WHERE l.family_id = #{familyId} " +
+            "GROUP BY l.origin, l.dest" +
+            "<if test=\"by == 'decade'\">, l.decade</if>" +
+            "<if test=\"by == 'generation'\">, p.generation</if> " +
+            "ORDER BY count DESC" +
+            "</script>")
+    List<MigrationFlowDTO> selectFlows(@Param("familyId") Long familyId, @Param("by") String by);
+
+    /** 有带经纬度落脚点事件的人物，用于全量重建 */
+    @Select("SELECT DISTINCT person_id FROM t_event WHERE deleted = 0 " +
+            "AND type IN ('birth', 'migration', 'residence') AND latitude IS NOT NULL AND longitude IS NOT NULL")
+    List<Long> selectPersonsWithStops();
+}
@@ -1,12 +1,63 @@
 package com.genealogy.mapper;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
 import com.genealogy.entity.OperateLog;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * 操作日志Mapper
  */
 @Mapper
 public interface OperateLogMapper extends BaseMapper<OperateLog> {
+
+    /**
+     * 多行批量写入，ID 与操作时间由调用方在入队时生成
+     */
+    @Insert("<script>" +
+            "INSERT INTO t_operate_log (id, operate_type, operate_type_desc, user_id, user_name, target_id, " +
+            "target_name, target_type, family_id, detail, created_at) VALUES " +
+            "<foreach collection='list' item='l' separator=','>" +
+            "(#{l.id}, #{l.operateType}, #{l.operateTypeDesc}, #{l.userId}, #{l.userName}, #{l.targetId}, " +
+            "#{l.targetName}, #{l.targetType}, #{l.familyId}, #{l.detail}, #{l.createdAt})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<OperateLog> list);
+
+    /** 查询计划，取 rows × filtered 作为符合条件的行数估计（不实际扫描） */
+    @Select("EXPLAIN SELECT id FROM t_operate_log ${ew.customSqlSegment}")
+    List<Map<String, Object>> explainCount(@Param(Constants.WRAPPER) Wrapper<OperateLog> wrapper);
+
+    /** 按月分区列表（name / bound），bound 为 'yyyy-MM-dd HH:mm:ss' 或 MAXVALUE；未分区时 name 为空 */
+    @Select("SELECT PARTITION_NAME AS name, PARTITION_DESCRIPTION AS bound FROM information_schema.PARTITIONS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 't_operate_log' ORDER BY PARTITION_ORDINAL_POSITION")
+    List<Map<String, Object>> selectPartitions();
+
+    /** 从末尾的 pmax 分区拆出一个新的月分区（分区名与边界由调用方生成并校验） */
+    @Update("ALTER TABLE t_operate_log REORGANIZE PARTITION pmax INTO (" +
+            "PARTITION ${name} VALUES LESS THAN ('${lessThan}'), PARTITION pmax VALUES LESS THAN (MAXVALUE))")
+    void splitMaxPartition(@Param("name") String name, @Param("lessThan") String lessThan);
+
+    @Update("ALTER TABLE t_operate_log DROP PARTITION ${name}")
+    void dropPartition(@Param("name") String name);
+
+    /** 流式读取单个分区，按时间升序；需在事务内迭代 */
+    @Select("SELECT * FROM t_operate_log PARTITION (${name}) ORDER BY created_at, id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<OperateLog> cursorPartition(@Param("name") String name);
+
+    /** 当前最大的日志 ID（主键首列，每个分区只读一行），作为家族快照的回放水位 */
+    @Select("SELECT COALESCE(MAX(id), 0) FROM t_operate_log")
+    long selectMaxId();
 }
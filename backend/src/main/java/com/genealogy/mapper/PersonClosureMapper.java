@@ -0,0 +1,123 @@
+package com.genealogy.mapper;
+
+import com.genealogy.dto.LineageDTO;
+import com.genealogy.entity.Relation;
+import org.apache.ibatis.annotations.*;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 亲缘闭包表 Mapper
+ * t_person_closure 中每行 (ancestor, depth, descendant) 记录两人之间该深度的亲子路径数，
+ * 每个人物都有一行 (自身, 0, 自身)。
+ */
+@Mapper
+public interface PersonClosureMapper {
+
+    /** 插入自身行 */
+    @Insert("INSERT IGNORE INTO t_person_closure (ancestor_id, depth, descendant_id, path_count) " +
+            "VALUES (#{personId}, 0, #{personId}, 1)")
+    int insertSelf(@Param("personId") Long personId);
+
+    /**
+     * 新增亲子边 parent → child：parent 的每个祖先到 child 的每个后代之间增加路径
+     */
+    @Insert("INSERT INTO t_person_closure (ancestor_id, depth, descendant_id, path_count) " +
+            "SELECT x.ancestor_id, x.depth, x.descendant_id, x.cnt FROM (" +
+            "  SELECT a.ancestor_id, a.depth + d.depth + 1 AS depth, d.descendant_id, " +
+            "         a.path_count * d.path_count AS cnt " +
+            "  FROM t_person_closure a JOIN t_person_closure d " +
+            "  ON a.descendant_id = #{parentId} AND d.ancestor_id = #{childId}" +
+            ") x " +
+            "ON DUPLICATE KEY UPDATE path_count = t_person_closure.path_count + x.cnt")
+    int addPaths(@Param("parentId") Long parentId, @Param("childId") Long childId);
+
+    /**
+     * 删除亲子边 parent → child：扣减经过该边的路径数（派生表含聚合，会先物化再更新）
+     */
+    @Update("UPDATE t_person_closure t JOIN (" +
+            "  SELECT a.ancestor_id, a.depth + d.depth + 1 AS depth, d.descendant_id, " +
+            "         SUM(a.path_count * d.path_count) AS cnt " +
+            "  FROM t_person_closure a JOIN t_person_closure d " +
+            "  ON a.descendant_id = #{parentId} AND d.ancestor_id = #{childId} " +
+            "  GROUP BY a.ancestor_id, a.depth + d.depth + 1, d.descendant_id" +
+            ") x ON t.ancestor_id = x.ancestor_id AND t.depth = x.depth AND t.descendant_id = x.descendant_id " +
+            "SET t.path_count = t.path_count - x.cnt")
+    int subtractPaths(@Param("parentId") Long parentId, @Param("childId") Long childId);
+
+    /** 清理 child 及其后代上路径数已归零的行 */
+    @Delete("DELETE t FROM t_person_closure t JOIN (" +
+            "  SELECT DISTINCT descendant_id FROM t_person_closure WHERE ancestor_id = #{childId}" +
+            ") d ON t.descendant_id = d.descendant_id " +
+            "WHERE t.path_count <= 0")
+    int deleteEmpty(@Param("childId") Long childId);
+
+    /** 删除与某人相关的全部行 */
+    @Delete("DELETE FROM t_person_closure WHERE ancestor_id = #{personId} OR descendant_id = #{personId}")
+    int deleteByPerson(@Param("personId") Long personId);
+
+    /** 删除某家族人物作为后代的全部行 */
+    @Delete("DELETE c FROM t_person_closure c JOIN t_person p ON p.id = c.descendant_id " +
+            "WHERE p.family_id = #{familyId}")
+    int deleteByFamily(@Param("familyId") Long familyId);
+
+    /** 按当前关系重建某家族人物作为后代的全部行：从家族成员向上枚举路径（深度上限100，防止脏数据成环） */
+    @Insert("INSERT INTO t_person_closure (ancestor_id, depth, descendant_id, path_count) " +
+            "WITH RECURSIVE paths (ancestor_id, depth, descendant_id) AS (" +
+            "  SELECT id, 0, id FROM t_person WHERE family_id = #{familyId} AND deleted = 0 " +
+            "  UNION ALL " +
+            "  SELECT r.from_id, p.depth + 1, p.descendant_id FROM paths p " +
+            "  JOIN t_relation r ON r.to_id = p.ancestor_id AND r.type <> 'spouse' AND r.deleted = 0 " +
+            "  WHERE p.depth < 100" +
+            ") " +
+            "SELECT ancestor_id, depth, descendant_id, COUNT(*) FROM paths " +
+            "GROUP BY ancestor_id, depth, descendant_id")
+    int rebuildFamily(@Param("familyId") Long familyId);
+
+    /** ancestorId 是否为 descendantId 的祖先（走 idx_descendant，只看该人的祖先行） */
+    @Select("SELECT COUNT(*) FROM t_person_closure " +
+            "WHERE descendant_id = #{descendantId} AND depth > 0 AND ancestor_id = #{ancestorId}")
+    int countAncestor(@Param("ancestorId") Long ancestorId, @Param("descendantId") Long descendantId);
+
+    /**
+     * 给定人物集合内两两之间的祖先→后代关系，结果以 fromId 为祖先、toId 为后代
+     */
+    @Select("<script>" +
+            "SELECT DISTINCT ancestor_id AS from_id, descendant_id AS to_id FROM t_person_closure " +
+            "WHERE depth > 0 " +
+            "AND descendant_id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "AND ancestor_id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<Relation> selectAncestorPairs(@Param("ids") Collection<Long> ids);
+
+    /** 查询后代 */
+    @Select("<script>" +
+            "SELECT p.id, p.name, p.gender, p.generation, MIN(c.depth) AS depth " +
+            "FROM t_person_closure c JOIN t_person p ON p.id = c.descendant_id " +
+            "WHERE c.ancestor_id = #{personId} AND c.depth BETWEEN 1 AND #{maxDepth} AND p.deleted = 0 " +
+            "<if test='minGeneration != null'>AND p.generation &gt;= #{minGeneration} </if>" +
+            "<if test='maxGeneration != null'>AND p.generation &lt;= #{maxGeneration} </if>" +
+            "GROUP BY p.id, p.name, p.gender, p.generation " +
+            "ORDER BY depth, p.generation, p.id" +
+            "</script>")
+    List<LineageDTO> selectDescendants(@Param("personId") Long personId,
+                                       @Param("maxDepth") int maxDepth,
+                                       @Param("minGeneration") Integer minGeneration,
+                                       @Param("maxGeneration") Integer maxGeneration);
+
+    /** 查询祖先 */
+    @Select("<script>" +
+            "SELECT p.id, p.name, p.gender, p.generation, MIN(c.depth) AS depth " +
+            "FROM t_person_closure c JOIN t_person p ON p.id = c.ancestor_id " +
+            "WHERE c.descendant_id = #{personId} AND c.depth BETWEEN 1 AND #{maxDepth} AND p.deleted = 0 " +
+            "<if test='minGeneration != null'>AND p.generation &gt;= #{minGeneration} </if>" +
+            "<if test='maxGeneration != null'>AND p.generation &lt;= #{maxGeneration} </if>" +
+            "GROUP BY p.id, p.name, p.gender, p.generation " +
+            "ORDER BY depth, p.generation, p.id" +
+            "</script>")
+    List<LineageDTO> selectAncestors(@Param("personId") Long personId,
+                                     @Param("maxDepth") int maxDepth,
+                                     @Param("minGeneration") Integer minGeneration,
+                                     @Param("maxGeneration") Integer maxGeneration);
+}
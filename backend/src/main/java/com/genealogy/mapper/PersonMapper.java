@@ -2,6 +2,54 @@ package com.genealogy.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.genealogy.entity.Person;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.List;
 
 public interface PersonMapper extends BaseMapper<Person> {
+
+    /**
+     * 流式扫描全部人物的检索字段（MySQL 逐行读取，不在内存中堆积结果集）
+     */
+    @Select("SELECT id, family_id, name, gender, generation, birth_place, bio FROM t_person WHERE deleted = 0")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Person.class)
+    void scanSearchFields(ResultHandler<Person> handler);
+
+    /**
+     * 查重扫描游标：按姓氏（首字，二进制比较）与世代排序，使同一分块的人物连续出现
+     * 需在事务内迭代，逐行从 MySQL 流式读取
+     */
+    @Select("<script>" +
+            "SELECT id, family_id, name, gender, generation, birth_date, death_date, birth_place " +
+            "FROM t_person WHERE deleted = 0 AND name IS NOT NULL AND name &lt;&gt; '' " +
+            "<if test='familyId != null'>AND family_id = #{familyId} </if>" +
+            "ORDER BY BINARY LEFT(name, 1), generation" +
+            "</script>")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<Person> cursorForDuplicateScan(@Param("familyId") Long familyId);
+
+    /** 日期排序键待回填的人物（有日期但尚无排序键），按 ID 分批 */
+    @Select("SELECT id, birth_date, death_date FROM t_person " +
+            "WHERE id > #{afterId} AND ((birth_date IS NOT NULL AND birth_sort IS NULL) " +
+            "OR (death_date IS NOT NULL AND death_sort IS NULL)) ORDER BY id LIMIT #{limit}")
+    List<Person> selectDateKeyBackfill(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /** 批量写入日期排序键，不触碰其他列与 updated_at */
+    @Update("<script>" +
+            "UPDATE t_person SET updated_at = updated_at, " +
+            "birth_sort = CASE id <foreach collection='list' item='p'>WHEN #{p.id} THEN #{p.birthSort} </foreach>END, " +
+            "birth_precision = CASE id <foreach collection='list' item='p'>WHEN #{p.id} THEN #{p.birthPrecision} </foreach>END, " +
+            "death_sort = CASE id <foreach collection='list' item='p'>WHEN #{p.id} THEN #{p.deathSort} </foreach>END, " +
+            "death_precision = CASE id <foreach collection='list' item='p'>WHEN #{p.id} THEN #{p.deathPrecision} </foreach>END " +
+            "WHERE id IN <foreach collection='list' item='p' open='(' separator=',' close=')'>#{p.id}</foreach>" +
+            "</script>")
+    int updateDateKeys(@Param("list") List<Person> list);
 }
@@ -2,6 +2,67 @@ package com.genealogy.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.genealogy.entity.Relation;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface RelationMapper extends BaseMapper<Relation> {
+
+    /**
+     * 查询某家族的全部关系（按起始人物所属家族，走 t_person.idx_family 与 t_relation.idx_from）
+     */
+    @Select("SELECT r.* FROM t_relation r JOIN t_person p ON p.id = r.from_id " +
+            "WHERE p.family_id = #{familyId} AND p.deleted = 0 AND r.deleted = 0 " +
+            "ORDER BY r.id")
+    List<Relation> selectByFamilyId(@Param("familyId") Long familyId);
+
+    /**
+     * 流式扫描全部关系（MySQL 逐行读取，不在内存中堆积结果集）
+     */
+    @Select("SELECT id, from_id, to_id, type FROM t_relation WHERE deleted = 0")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Relation.class)
+    void scanAll(ResultHandler<Relation> handler);
+
+    /** 两人之间（任意方向、任意类型）的现存关系数 */
+    @Select("SELECT COUNT(*) FROM t_relation WHERE deleted = 0 AND " +
+            "((from_id = #{a} AND to_id = #{b}) OR (from_id = #{b} AND to_id = #{a}))")
+    int countBetween(@Param("a") Long a, @Param("b") Long b);
+
+    /** 某人的亲生父母关系数 */
+    @Select("SELECT COUNT(*) FROM t_relation WHERE to_id = #{childId} AND type = 'parent-child' AND deleted = 0")
+    int countParents(@Param("childId") Long childId);
+
+    /** 两端都在给定人物集合内的现存关系 */
+    @Select("<script>" +
+            "SELECT id, from_id, to_id, type FROM t_relation WHERE deleted = 0 " +
+            "AND from_id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "AND to_id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<Relation> selectAmong(@Param("ids") Collection<Long> ids);
+
+    /** 指向给定人物的亲生父母关系 */
+    @Select("<script>" +
+            "SELECT id, from_id, to_id, type FROM t_relation WHERE deleted = 0 AND type = 'parent-child' " +
+            "AND to_id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<Relation> selectParentsOf(@Param("ids") Collection<Long> ids);
+
+    /** 任一端在给定人物集合内的现存关系 */
+    @Select("<script>" +
+            "SELECT id, from_id, to_id, type FROM t_relation WHERE deleted = 0 AND (" +
+            "from_id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "OR to_id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>)" +
+            "</script>")
+    List<Relation> selectTouching(@Param("ids") Collection<Long> ids);
+
+    /** 关系总数（用于预估图容量） */
+    @Select("SELECT COUNT(*) FROM t_relation WHERE deleted = 0")
+    long countAll();
 }
@@ -0,0 +1,126 @@
+package com.genealogy.service;
+
+/**
+ * 自由格式日期（1850-03-05、1850年3月、约1850、1850年代、农历1850年三月初五、一八五〇年 等）
+ * 归一化为可排序的数值键 yyyymmdd，未知的月/日记为 00，使只精确到年的日期排在同年具体日期之前
+ */
+public final class DateKey {
+
+    /** 精确到日 */
+    public static final String DAY = "day";
+    /** 精确到月 */
+    public static final String MONTH = "month";
+    /** 精确到年 */
+    public static final String YEAR = "year";
+    /** 年代（如 1850年代），键为该年代首年 */
+    public static final String DECADE = "decade";
+    /** 约数（约、左右、?、c.） */
+    public static final String CIRCA = "circa";
+    /** 农历日期，只取年份 */
+    public static final String LUNAR = "lunar";
+
+    private static final String CN_DIGITS = "〇零一二三四五六七八九";
+
+    private final int sort;
+    private final String precision;
+
+    private DateKey(int sort, String precision) {
+        this.sort = sort;
+        this.precision = precision;
+    }
+
+    public int sort() {
+        return sort;
+    }
+
+    public String precision() {
+        return precision;
+    }
+
+    /** 排序键，原文无法识别时为 0 */
+    public static int sortOf(DateKey key) {
+        return key != null ? key.sort : 0;
+    }
+
+    /** 精度，原文无法识别时为空串 */
+    public static String precisionOf(DateKey key) {
+        return key != null ? key.precision : "";
+    }
+
+    /** 年份转为区间下界键，如 1900 -> 19000000 */
+    public static int lowerBound(int year) {
+        return year * 10000;
+    }
+
+    /** 年份转为区间上界键，如 1950 -> 19501231 */
+    public static int upperBound(int year) {
+        return year * 10000 + 1231;
+    }
+
+    /**
+     * 解析日期，无法识别出年份时返回 null
+     */
+    public static DateKey parse(String raw) {
+        if (raw == null) return null;
+        String s = normalizeDigits(raw.trim());
+        if (s.isEmpty()) return null;
+
+        boolean lunar = s.contains("农历") || s.contains("阴历");
+        boolean circa = s.startsWith("约") || s.startsWith("c.") || s.startsWith("ca.")
+                || s.startsWith("~") || s.endsWith("左右") || s.endsWith("前后") || s.contains("?") || s.contains("？");
+
+        int[] nums = new int[3];
+        int count = 0;
+        int i = 0;
+        while (i < s.length() && count < 3) {
+            char c = s.charAt(i);
+            if (!Character.isDigit(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < s.length() && Character.isDigit(s.charAt(i))) i++;
+            String digits = s.substring(start, i);
+            // 第一个数字串必须是四位年份
+            if (count == 0 && digits.length() != 4) return null;
+            if (digits.length() > 4) break;
+            nums[count++] = Integer.parseInt(digits);
+        }
+        if (count == 0) return null;
+
+        int year = nums[0];
+        if (lunar) return new DateKey(lowerBound(year), LUNAR);
+        if (s.contains("年代") || s.matches("\\d{4}s.*")) return new DateKey(lowerBound(year - year % 10), DECADE);
+        if (circa) return new DateKey(lowerBound(year), CIRCA);
+
+        int month = count >= 2 ? nums[1] : 0;
+        int day = count >= 3 ? nums[2] : 0;
+        if (month < 1 || month > 12) return new DateKey(lowerBound(year), YEAR);
+        if (day < 1 || day > 31) return new DateKey(year * 10000 + month * 100, MONTH);
+        return new DateKey(year * 10000 + month * 100 + day, DAY);
+    }
+
+    /** 将中文数字（〇一二…九、十、廿）与全角数字转为阿拉伯数字，其余字符原样保留 */
+    private static String normalizeDigits(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            int d = CN_DIGITS.indexOf(c);
+            if (d >= 0) {
+                sb.append(d <= 1 ? '0' : (char) ('0' + d - 1));
+            } else if (c >= '０' && c <= '９') {
+                sb.append((char) ('0' + (c - '０')));
+            } else {
+                sb.append(c);
+            }
+        }
+        // 十/廿 只出现在月、日中：三十一 -> 31、十二 -> 12、二十 -> 20、十 -> 10、廿五 -> 25
+        return sb.toString()
+                .replaceAll("(\\d)十(\\d)", "$1$2")
+                .replaceAll("(\\d)十", "$10")
+                .replaceAll("十(\\d)", "1$1")
+                .replace("十", "10")
+                .replaceAll("廿(\\d)", "2$1")
+                .replace("廿", "20");
+    }
+}
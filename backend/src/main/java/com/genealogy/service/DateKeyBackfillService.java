@@ -0,0 +1,64 @@
+package com.genealogy.service;
+
+import com.genealogy.entity.Event;
+import com.genealogy.entity.Person;
+import com.genealogy.mapper.EventMapper;
+import com.genealogy.mapper.PersonMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 为已有人物与事件回填日期排序键（新写入的数据在保存时已生成）；
+ * 按主键分批读取与写回，可重复执行，只处理尚未生成排序键的行
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DateKeyBackfillService {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final PersonMapper personMapper;
+    private final EventMapper eventMapper;
+
+    /** 回填全部人物与事件，返回各自处理的行数 */
+    public Map<String, Integer> backfill() {
+        long start = System.currentTimeMillis();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        result.put("persons", backfillPersons());
+        result.put("events", backfillEvents());
+        log.info("日期排序键回填完成 {} 耗时={}ms", result, System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private int backfillPersons() {
+        int total = 0;
+        long afterId = Long.MIN_VALUE;
+        List<Person> batch;
+        while (!(batch = personMapper.selectDateKeyBackfill(afterId, BATCH_SIZE)).isEmpty()) {
+            batch.forEach(PersonService::fillDateKeys);
+            personMapper.updateDateKeys(batch);
+            total += batch.size();
+            afterId = batch.get(batch.size() - 1).getId();
+        }
+        return total;
+    }
+
+    private int backfillEvents() {
+        int total = 0;
+        long afterId = Long.MIN_VALUE;
+        List<Event> batch;
+        while (!(batch = eventMapper.selectDateKeyBackfill(afterId, BATCH_SIZE)).isEmpty()) {
+            batch.forEach(EventService::fillDateKey);
+            eventMapper.updateDateKeys(batch);
+            total += batch.size();
+            afterId = batch.get(batch.size() - 1).getId();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,439 @@
+package com.genealogy.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.genealogy.dto.DuplicateJobDTO;
+import com.genealogy.dto.PageResult;
+import com.genealogy.entity.DuplicateCandidate;
+import com.genealogy.entity.Person;
+import com.genealogy.entity.Relation;
+import com.genealogy.mapper.DuplicateCandidateMapper;
+import com.genealogy.mapper.PersonMapper;
+import com.genealogy.mapper.RelationMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 重复人物检测
+ * <p>
+ * 游标按 姓氏（首字）+ 世代 排序流式读取 t_person，相同分块键的人物连续出现，
+ * 每凑齐一个分块就交给线程池比较；分块内再按出生年份滑动窗口（±{@value #YEAR_WINDOW} 年）配对，
+ * 不做全量两两比较。得分达到阈值的人物对写入审核队列 t_duplicate_candidate。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DuplicateDetectionService {
+
+    /** 写入审核队列的最低得分 */
+    public static final int THRESHOLD = 60;
+
+    /** 出生年份滑动窗口 */
+    private static final int YEAR_WINDOW = 2;
+
+    /** 分块不超过该人数时，缺少出生年份的人物与块内所有人比较；否则只与同名者比较 */
+    private static final int FULL_COMPARE_LIMIT = 500;
+
+    /** IN 查询与批量写入的分片大小 */
+    private static final int CHUNK = 500;
+
+    /** 保留的历史任务数 */
+    private static final int MAX_JOBS = 50;
+
+    /** 游标读完后等待比较结束的最长时间 */
+    private static final long AWAIT_HOURS = 1;
+
+    private final PersonMapper personMapper;
+    private final RelationMapper relationMapper;
+    private final DuplicateCandidateMapper candidateMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<String, DuplicateJobDTO> jobs = new ConcurrentHashMap<>();
+    private final Deque<String> jobOrder = new ConcurrentLinkedDeque<>();
+
+    // ==================== 任务 ====================
+
+    /** 创建任务（尚未执行），familyId 为 null 时扫描全部家族 */
+    public DuplicateJobDTO createJob(Long familyId) {
+        DuplicateJobDTO job = new DuplicateJobDTO();
+        job.setJobId(UUID.randomUUID().toString().replace("-", ""));
+        job.setFamilyId(familyId);
+        job.setStatus("RUNNING");
+        job.setScanned(0L);
+        job.setBlocks(0L);
+        job.setPairsCompared(0L);
+        job.setCandidates(0L);
+        job.setStartedAt(LocalDateTime.now());
+        jobs.put(job.getJobId(), job);
+        jobOrder.addLast(job.getJobId());
+        while (jobOrder.size() > MAX_JOBS) {
+            String oldest = jobOrder.pollFirst();
+            if (oldest != null) jobs.remove(oldest);
+        }
+        return job;
+    }
+
+    public DuplicateJobDTO getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /** 在后台线程执行任务 */
+    @Async
+    public void runAsync(DuplicateJobDTO job) {
+        run(job);
+    }
+
+    /** 执行任务，异常记录在任务上 */
+    public void run(DuplicateJobDTO job) {
+        long start = System.currentTimeMillis();
+        Counters counters = new Counters();
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            scan(job.getFamilyId(), pool, new Semaphore(threads * 4), counters, job);
+            pool.shutdown();
+            if (!pool.awaitTermination(AWAIT_HOURS, TimeUnit.HOURS)) {
+                // 仍有分块未比较完，结果不完整，不能标记为完成
+                pool.shutdownNow();
+                counters.copyTo(job);
+                job.setStatus("TIMEOUT");
+                job.setError("比较未在 " + AWAIT_HOURS + " 小时内完成，审核队列可能不完整");
+                log.warn("重复人物检测超时 familyId={} 人数={} 分块={}",
+                        job.getFamilyId(), job.getScanned(), job.getBlocks());
+                return;
+            }
+            if (counters.error.get() != null) throw counters.error.get();
+            counters.copyTo(job);
+            job.setStatus("DONE");
+            log.info("重复人物检测 familyId={} 人数={} 分块={} 比较={} 候选={} 耗时={}ms",
+                    job.getFamilyId(), job.getScanned(), job.getBlocks(), job.getPairsCompared(),
+                    job.getCandidates(), System.currentTimeMillis() - start);
+        } catch (Throwable e) {
+            log.error("重复人物检测失败 familyId={}", job.getFamilyId(), e);
+            pool.shutdownNow();
+            counters.copyTo(job);
+            job.setStatus("FAILED");
+            job.setError(e.getMessage());
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+        }
+    }
+
+    /**
+     * 在只读事务内迭代游标，按分块键切块并提交到线程池；
+     * 信号量限制在途分块数，避免读取速度远快于比较速度时分块堆积
+     */
+    private void scan(Long familyId, ExecutorService pool, Semaphore inFlight, Counters counters, DuplicateJobDTO job) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.executeWithoutResult(status -> {
+            try (Cursor<Person> cursor = personMapper.cursorForDuplicateScan(familyId)) {
+                List<Person> block = new ArrayList<>();
+                String key = null;
+                for (Person p : cursor) {
+                    String k = blockKey(p);
+                    if (!k.equals(key) && !block.isEmpty()) {
+                        submit(block, pool, inFlight, counters);
+                        block = new ArrayList<>();
+                        job.setScanned(counters.scanned.get());
+                    }
+                    key = k;
+                    block.add(p);
+                    counters.scanned.incrementAndGet();
+                }
+                if (!block.isEmpty()) submit(block, pool, inFlight, counters);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void submit(List<Person> block, ExecutorService pool, Semaphore inFlight, Counters counters) {
+        counters.blocks.incrementAndGet();
+        if (block.size() < 2 || counters.error.get() != null) return;
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("重复人物检测被中断", e);
+        }
+        pool.execute(() -> {
+            try {
+                processBlock(block, counters);
+            } catch (Throwable t) {
+                counters.error.compareAndSet(null, t);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /** 分块键：姓名首字 + 世代，需与游标的排序一致 */
+    private String blockKey(Person p) {
+        String name = p.getName();
+        String surname = new String(Character.toChars(name.codePointAt(0)));
+        return surname + "|" + p.getGeneration();
+    }
+
+    // ==================== 分块比较 ====================
+
+    private void processBlock(List<Person> block, Counters counters) {
+        Map<Long, Set<String>> relatives = loadRelatives(block);
+
+        List<Person> known = new ArrayList<>();
+        List<Person> unknown = new ArrayList<>();
+        Map<Long, Integer> years = new HashMap<>();
+        for (Person p : block) {
+            Integer y = year(p.getBirthDate());
+            if (y != null) {
+                years.put(p.getId(), y);
+                known.add(p);
+            } else {
+                unknown.add(p);
+            }
+        }
+        known.sort(Comparator.comparingInt(p -> years.get(p.getId())));
+
+        List<DuplicateCandidate> found = new ArrayList<>();
+        for (int i = 0; i < known.size(); i++) {
+            int yi = years.get(known.get(i).getId());
+            for (int j = i + 1; j < known.size() && years.get(known.get(j).getId()) - yi <= YEAR_WINDOW; j++) {
+                compare(known.get(i), known.get(j), relatives, counters, found);
+            }
+        }
+        if (block.size() <= FULL_COMPARE_LIMIT) {
+            for (int i = 0; i < unknown.size(); i++) {
+                for (int j = i + 1; j < unknown.size(); j++) {
+                    compare(unknown.get(i), unknown.get(j), relatives, counters, found);
+                }
+                for (Person k : known) {
+                    compare(unknown.get(i), k, relatives, counters, found);
+                }
+            }
+        } else {
+            Map<String, List<Person>> byName = unknown.stream().collect(Collectors.groupingBy(Person::getName));
+            for (List<Person> same : byName.values()) {
+                for (int i = 0; i < same.size(); i++) {
+                    for (int j = i + 1; j < same.size(); j++) {
+                        compare(same.get(i), same.get(j), relatives, counters, found);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < found.size(); i += CHUNK) {
+            candidateMapper.insertIgnoreBatch(found.subList(i, Math.min(i + CHUNK, found.size())));
+        }
+        counters.candidates.addAndGet(found.size());
+    }
+
+    /**
+     * 块内人物的亲属标记：P+父母ID、C+子女ID、S+配偶ID
+     */
+    private Map<Long, Set<String>> loadRelatives(List<Person> block) {
+        Map<Long, Set<String>> relatives = new HashMap<>();
+        List<Long> ids = block.stream().map(Person::getId).collect(Collectors.toList());
+        for (int i = 0; i < ids.size(); i += CHUNK) {
+            for (Relation r : relationMapper.selectTouching(ids.subList(i, Math.min(i + CHUNK, ids.size())))) {
+                if ("spouse".equals(r.getType())) {
+                    relatives.computeIfAbsent(r.getFromId(), k -> new HashSet<>()).add("S" + r.getToId());
+                    relatives.computeIfAbsent(r.getToId(), k -> new HashSet<>()).add("S" + r.getFromId());
+                } else {
+                    relatives.computeIfAbsent(r.getToId(), k -> new HashSet<>()).add("P" + r.getFromId());
+                    relatives.computeIfAbsent(r.getFromId(), k -> new HashSet<>()).add("C" + r.getToId());
+                }
+            }
+        }
+        return relatives;
+    }
+
+    private void compare(Person a, Person b, Map<Long, Set<String>> relatives,
+                         Counters counters, List<DuplicateCandidate> found) {
+        counters.pairs.incrementAndGet();
+        Set<String> ra = relatives.getOrDefault(a.getId(), Collections.emptySet());
+        Set<String> rb = relatives.getOrDefault(b.getId(), Collections.emptySet());
+        List<String> reasons = new ArrayList<>();
+        int score = score(a, b, ra, rb, reasons);
+        if (score < THRESHOLD) return;
+
+        DuplicateCandidate c = new DuplicateCandidate();
+        c.setId(IdWorker.getId());
+        boolean aFirst = a.getId() < b.getId();
+        c.setPersonA(aFirst ? a.getId() : b.getId());
+        c.setPersonB(aFirst ? b.getId() : a.getId());
+        c.setFamilyId(aFirst ? a.getFamilyId() : b.getFamilyId());
+        c.setScore(Math.min(score, 100));
+        c.setReasons(String.join(",", reasons));
+        c.setStatus(DuplicateCandidate.Status.PENDING);
+        found.add(c);
+    }
+
+    /**
+     * 相似度得分：姓名 40、出生日期 20、卒年 10、出生地 10、共同父母每位 20（上限 30）、其他共同亲属每位 10（上限 20）；
+     * 性别不同或两人之间本身有直接关系时不视为重复
+     */
+    private int score(Person a, Person b, Set<String> ra, Set<String> rb, List<String> reasons) {
+        if (a.getGender() != null && b.getGender() != null && !a.getGender().equals(b.getGender())) return 0;
+        if (ra.contains("P" + b.getId()) || ra.contains("C" + b.getId()) || ra.contains("S" + b.getId())) return 0;
+
+        int score;
+        if (a.getName().equals(b.getName())) {
+            score = 40;
+            reasons.add("同名");
+        } else {
+            double sim = 1.0 - (double) editDistance(a.getName(), b.getName())
+                    / Math.max(a.getName().length(), b.getName().length());
+            if (sim < 0.5) return 0;
+            score = (int) Math.round(40 * sim);
+            reasons.add("姓名相似");
+        }
+
+        String ba = trim(a.getBirthDate()), bb = trim(b.getBirthDate());
+        if (ba != null && bb != null) {
+            Integer ya = year(ba), yb = year(bb);
+            if (ba.equals(bb)) {
+                score += 20;
+                reasons.add("出生日期相同");
+            } else if (ya != null && ya.equals(yb)) {
+                score += 12;
+                reasons.add("出生年份相同");
+            } else if (ya != null && yb != null && Math.abs(ya - yb) <= YEAR_WINDOW) {
+                score += 5;
+                reasons.add("出生年份相近");
+            } else {
+                score -= 20;
+            }
+        }
+
+        String da = trim(a.getDeathDate()), db = trim(b.getDeathDate());
+        if (da != null && da.equals(db)) {
+            score += 10;
+            reasons.add("卒年相同");
+        }
+
+        String pa = trim(a.getBirthPlace()), pb = trim(b.getBirthPlace());
+        if (pa != null && pb != null) {
+            if (pa.equals(pb)) {
+                score += 10;
+                reasons.add("出生地相同");
+            } else if (pa.contains(pb) || pb.contains(pa)) {
+                score += 5;
+                reasons.add("出生地相近");
+            }
+        }
+
+        int sharedParents = 0, sharedOthers = 0;
+        for (String r : ra) {
+            if (!rb.contains(r)) continue;
+            if (r.charAt(0) == 'P') sharedParents++;
+            else sharedOthers++;
+        }
+        if (sharedParents > 0) {
+            score += Math.min(30, sharedParents * 20);
+            reasons.add("父母相同");
+        }
+        if (sharedOthers > 0) {
+            score += Math.min(20, sharedOthers * 10);
+            reasons.add("亲属重合");
+        }
+        return score;
+    }
+
+    private int editDistance(String s, String t) {
+        int[] prev = new int[t.length() + 1];
+        int[] cur = new int[t.length() + 1];
+        for (int j = 0; j <= t.length(); j++) prev[j] = j;
+        for (int i = 1; i <= s.length(); i++) {
+            cur[0] = i;
+            for (int j = 1; j <= t.length(); j++) {
+                int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return prev[t.length()];
+    }
+
+    /** 日期中的年份，无法识别时返回 null */
+    private Integer year(String date) {
+        DateKey key = DateKey.parse(date);
+        return key != null ? key.sort() / 10000 : null;
+    }
+
+    private String trim(String s) {
+        if (s == null) return null;
+        s = s.trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    // ==================== 审核队列 ====================
+
+    /** 分页查询审核队列，按得分降序 */
+    public PageResult<DuplicateCandidate> page(Long familyId, String status, int pageNum, int pageSize) {
+        LambdaQueryWrapper<DuplicateCandidate> qw = new LambdaQueryWrapper<>();
+        if (familyId != null) qw.eq(DuplicateCandidate::getFamilyId, familyId);
+        qw.eq(DuplicateCandidate::getStatus, status != null ? status : DuplicateCandidate.Status.PENDING);
+        qw.orderByDesc(DuplicateCandidate::getScore).orderByAsc(DuplicateCandidate::getId);
+        Page<DuplicateCandidate> page = candidateMapper.selectPage(new Page<>(pageNum, pageSize), qw);
+
+        Set<Long> personIds = new HashSet<>();
+        for (DuplicateCandidate c : page.getRecords()) {
+            personIds.add(c.getPersonA());
+            personIds.add(c.getPersonB());
+        }
+        if (!personIds.isEmpty()) {
+            Map<Long, Person> persons = personMapper.selectBatchIds(personIds).stream()
+                    .collect(Collectors.toMap(Person::getId, Function.identity()));
+            for (DuplicateCandidate c : page.getRecords()) {
+                c.setPersonAInfo(persons.get(c.getPersonA()));
+                c.setPersonBInfo(persons.get(c.getPersonB()));
+            }
+        }
+        return PageResult.of(page.getRecords(), page.getTotal(), (int) page.getCurrent(), (int) page.getSize());
+    }
+
+    /** 审核：标记为已合并或忽略 */
+    public boolean review(Long id, String status) {
+        DuplicateCandidate c = candidateMapper.selectById(id);
+        if (c == null) return false;
+        c.setStatus(status);
+        candidateMapper.updateById(c);
+        return true;
+    }
+
+    /**
+     * 任务计数器，由扫描线程与比较线程共同更新
+     */
+    private static class Counters {
+        final AtomicLong scanned = new AtomicLong();
+        final AtomicLong blocks = new AtomicLong();
+        final AtomicLong pairs = new AtomicLong();
+        final AtomicLong candidates = new AtomicLong();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        void copyTo(DuplicateJobDTO job) {
+            job.setScanned(scanned.get());
+            job.setBlocks(blocks.get());
+            job.setPairsCompared(pairs.get());
+            job.setCandidates(candidates.get());
+        }
+    }
+}
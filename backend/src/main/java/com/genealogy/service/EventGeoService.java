@@ -0,0 +1,134 @@
+package com.genealogy.service;
+
+import com.genealogy.dto.GeoClusterDTO;
+import com.genealogy.entity.Event;
+import com.genealogy.entity.EventGeo;
+import com.genealogy.entity.Person;
+import com.genealogy.mapper.EventGeoMapper;
+import com.genealogy.mapper.EventMapper;
+import com.genealogy.mapper.PersonMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 迁徙地图的空间索引与聚合
+ * <p>
+ * 带经纬度的事件同步写入 t_event_geo（家族 + 12 位 geohash 索引）。查询时先求覆盖视口的网格前缀，
+ * 在索引上做前缀范围扫描，只触及视口内的事件，再按缩放级别对应的 geohash 位数在数据库内分组聚合。
+ */
+@Service
+@RequiredArgsConstructor
+public class EventGeoService {
+
+    /** 覆盖视口时允许的最多网格数，超出则改用更粗的网格 */
+    private static final int MAX_COVER_CELLS = 32;
+
+    /** 缩放级别（Leaflet 0-18）对应的聚合 geohash 位数，下标为缩放级别 */
+    private static final int[] ZOOM_PRECISION = {1, 1, 1, 2, 2, 3, 3, 3, 4, 4, 5, 5, 5, 6, 6, 7, 7, 8, 8};
+
+    private final EventGeoMapper eventGeoMapper;
+    private final EventMapper eventMapper;
+    private final PersonMapper personMapper;
+
+    // ==================== 索引维护 ====================
+
+    /** 事件保存/修改后同步索引，无经纬度时移出索引 */
+    public void sync(Event e) {
+        if (e.getId() == null) return;
+        Double lat = e.getLatitude(), lng = e.getLongitude();
+        if (lat == null || lng == null || Math.abs(lat) > 90 || Math.abs(lng) > 180) {
+            eventGeoMapper.deleteById(e.getId());
+            return;
+        }
+        Person p = personMapper.selectById(e.getPersonId());
+        if (p == null) {
+            eventGeoMapper.deleteById(e.getId());
+            return;
+        }
+        EventGeo geo = new EventGeo();
+        geo.setEventId(e.getId());
+        geo.setFamilyId(p.getFamilyId());
+        geo.setPersonId(e.getPersonId());
+        geo.setGeohash(Geohash.encode(lat, lng, Geohash.MAX_PRECISION));
+        geo.setLatitude(lat);
+        geo.setLongitude(lng);
+        eventGeoMapper.upsert(geo);
+    }
+
+    public void remove(Long eventId) {
+        eventGeoMapper.deleteById(eventId);
+    }
+
+    public void removeByPersonId(Long personId) {
+        eventGeoMapper.deleteByPersonId(personId);
+    }
+
+    /** 人物转入其他家族 */
+    public void moveFamily(Long personId, Long familyId) {
+        eventGeoMapper.updateFamilyByPersonId(personId, familyId);
+    }
+
+    // ==================== 查询 ====================
+
+    /** 缩放级别对应的聚合 geohash 位数 */
+    public static int precisionForZoom(int zoom) {
+        return ZOOM_PRECISION[Math.max(0, Math.min(zoom, ZOOM_PRECISION.length - 1))];
+    }
+
+    /**
+     * 视口内的聚合点
+     *
+     * @param bbox 西,南,东,北（即 Leaflet 的 toBBoxString()）
+     */
+    public List<GeoClusterDTO> clusters(Long familyId, String bbox, int zoom) {
+        double[] b = parseBbox(bbox);
+        double minLng = b[0], minLat = b[1], maxLng = b[2], maxLat = b[3];
+        int precision = precisionForZoom(zoom);
+
+        Set<String> cells = null;
+        for (int p = precision; p >= 1 && cells == null; p--) {
+            cells = Geohash.cover(minLat, minLng, maxLat, maxLng, p, MAX_COVER_CELLS);
+        }
+        if (cells == null) cells = Set.of("");
+        List<String> patterns = cells.stream().map(c -> c + "%").collect(Collectors.toList());
+
+        List<GeoClusterDTO> clusters = eventGeoMapper.selectClusters(
+                familyId, patterns, precision, minLat, minLng, maxLat, maxLng);
+
+        // 单个事件的网格附带事件详情，便于前端直接绘制标记
+        List<Long> singles = clusters.stream()
+                .filter(c -> c.getCount() == 1)
+                .map(GeoClusterDTO::getEventId)
+                .collect(Collectors.toList());
+        if (!singles.isEmpty()) {
+            Map<Long, Event> events = eventMapper.selectBatchIds(singles).stream()
+                    .collect(Collectors.toMap(Event::getId, Function.identity()));
+            for (GeoClusterDTO c : clusters) {
+                if (c.getCount() == 1) c.setEvent(events.get(c.getEventId()));
+            }
+        }
+        return clusters;
+    }
+
+    /** 解析 西,南,东,北，非法时抛出 IllegalArgumentException */
+    private double[] parseBbox(String bbox) {
+        String[] parts = bbox != null ? bbox.split(",") : new String[0];
+        if (parts.length != 4) throw new IllegalArgumentException("bbox 格式应为 西,南,东,北");
+        double[] b = new double[4];
+        try {
+            for (int i = 0; i < 4; i++) b[i] = Double.parseDouble(parts[i].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bbox 格式应为 西,南,东,北");
+        }
+        b[0] = Math.max(-180, b[0]);
+        b[1] = Math.max(-90, b[1]);
+        b[2] = Math.min(180, b[2]);
+        b[3] = Math.min(90, b[3]);
+        if (b[0] > b[2] || b[1] > b[3]) throw new IllegalArgumentException("bbox 范围无效");
+        return b;
+    }
+}
@@ -2,30 +2,168 @@ package com.genealogy.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genealogy.dto.CursorPage;
 import com.genealogy.entity.Event;
+import com.genealogy.entity.Person;
 import com.genealogy.mapper.EventMapper;
+import com.genealogy.mapper.PersonMapper;
+import lombok.RequiredArgsConstructor;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
 
 @Service
+@RequiredArgsConstructor
 public class EventService extends ServiceImpl<EventMapper, Event> {
 
+    /** 时间轴单页上限 */
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private final PersonMapper personMapper;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    private final EventGeoService eventGeoService;
+    private final MigrationFlowService migrationFlowService;
+
+    /** 保存前由事件日期生成排序键、由人物带出家族ID，保存后同步空间索引与迁徙路段 */
+    @Override
+    public boolean save(Event entity) {
+        fillDateKey(entity);
+        fillFamily(entity);
+        boolean ok = super.save(entity);
+        if (ok) {
+            eventGeoService.sync(entity);
+            if (MigrationFlowService.STOP_TYPES.contains(entity.getType())) {
+                migrationFlowService.refreshPerson(entity.getPersonId());
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * 更新前由事件日期生成排序键（日期为空时排序键同样不更新），更新后同步空间索引与迁徙路段；
+     * 事件改挂到其他人物时两人的路段都重算，家族ID随人物更新。
+     * 为 null 的字段不会写入（原值保留），因此同步按更新后重新读出的行进行
+     */
+    @Override
+    public boolean updateById(Event entity) {
+        fillDateKey(entity);
+        if (entity.getPersonId() != null) fillFamily(entity);
+        Event old = getById(entity.getId());
+        boolean ok = super.updateById(entity);
+        Event saved = ok ? getById(entity.getId()) : null;
+        if (saved != null) {
+            eventGeoService.sync(saved);
+            migrationFlowService.refreshPerson(saved.getPersonId());
+            if (old != null && !old.getPersonId().equals(saved.getPersonId())) {
+                migrationFlowService.refreshPerson(old.getPersonId());
+            }
+        }
+        return ok;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        Event old = getById(id);
+        boolean ok = super.removeById(id);
+        eventGeoService.remove((Long) id);
+        if (old != null && MigrationFlowService.STOP_TYPES.contains(old.getType())) {
+            migrationFlowService.refreshPerson(old.getPersonId());
+        }
+        return ok;
+    }
+
+    static void fillDateKey(Event e) {
+        if (e.getEventDate() != null) {
+            DateKey key = DateKey.parse(e.getEventDate());
+            e.setEventSort(DateKey.sortOf(key));
+            e.setEventPrecision(DateKey.precisionOf(key));
+        }
+    }
+
+    private void fillFamily(Event e) {
+        Person p = personMapper.selectById(e.getPersonId());
+        e.setFamilyId(p != null ? p.getFamilyId() : null);
+    }
+
     /**
      * 查询某人的所有事件（按日期排序）
      */
     public List<Event> findByPersonId(Long personId) {
         return list(new LambdaQueryWrapper<Event>()
                 .eq(Event::getPersonId, personId)
-                .orderByAsc(Event::getEventDate));
+                .orderByAsc(Event::getEventSort)
+                .orderByAsc(Event::getId));
     }
 
     /**
-     * 查询全部事件（时间轴用）
+     * 家族时间轴的一页，按 (日期排序键, ID) 游标分页；nextCursor 原样传回取下一页。
+     * fromYear/toYear 按年份过滤（含端点），走 idx_family_sort 范围扫描
      */
-    public List<Event> allSorted() {
-        return list(new LambdaQueryWrapper<Event>()
-                .orderByAsc(Event::getEventDate));
+    public CursorPage<Event> timelinePage(Long familyId, String cursor, int limit, Integer fromYear, Integer toYear) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Integer afterSort = null;
+        Long afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.indexOf(':');
+                afterId = Long.parseLong(raw.substring(0, sep));
+                afterSort = raw.charAt(sep + 1) == '-' ? null : Integer.parseInt(raw.substring(sep + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的游标");
+            }
+        }
+        Integer fromSort = fromYear != null ? DateKey.lowerBound(fromYear) : null;
+        Integer toSort = toYear != null ? DateKey.upperBound(toYear) : null;
+        List<Event> rows = baseMapper.selectTimelinePage(familyId, fromSort, toSort, afterSort, afterId, size + 1);
+        String next = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            Event last = rows.get(size - 1);
+            // id:-（无排序键）或 id:排序键
+            String raw = last.getId() + ":" + (last.getEventSort() == null ? "-" : last.getEventSort());
+            next = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+        return CursorPage.of(rows, next);
+    }
+
+    /**
+     * 以 NDJSON（每行一个事件）流式输出家族时间轴，逐行读取逐行写出，内存占用与事件数无关
+     */
+    public void writeTimeline(Long familyId, OutputStream out) throws IOException {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        try {
+            tx.executeWithoutResult(status -> {
+                try (Cursor<Event> cursor = baseMapper.cursorTimeline(familyId)) {
+                    for (Event e : cursor) {
+                        out.write(objectMapper.writeValueAsBytes(e));
+                        out.write('\n');
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    /** 人物换家族时同步其事件的家族ID */
+    public void moveFamily(Long personId, Long familyId) {
+        baseMapper.updateFamilyByPerson(personId, familyId);
     }
 
     /**
@@ -34,5 +172,7 @@ public class EventService extends ServiceImpl<EventMapper, Event> {
     public void removeByPersonId(Long personId) {
         remove(new LambdaQueryWrapper<Event>()
                 .eq(Event::getPersonId, personId));
+        eventGeoService.removeByPersonId(personId);
+        migrationFlowService.removePerson(personId);
     }
 }
@@ -0,0 +1,130 @@
+package com.genealogy.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 家族级响应缓存
+ * 每个家族维护一个单调递增的版本号，任何人物/关系/事件写操作都会递增版本；
+ * 族谱树、统计等接口的序列化结果按版本缓存，并以版本号生成 ETag。
+ */
+@Service
+@RequiredArgsConstructor
+public class FamilyCacheService {
+
+    private final ObjectMapper objectMapper;
+
+    /** 进程启动标识，避免重启后版本号从头开始导致 ETag 误命中 */
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Map<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /** familyId -> (接口名 -> 缓存内容) */
+    private final Map<Long, Map<String, CachedBody>> bodies = new ConcurrentHashMap<>();
+
+    /** 当前版本号 */
+    public long version(Long familyId) {
+        AtomicLong v = versions.get(familyId);
+        return v != null ? v.get() : 0L;
+    }
+
+    /** 家族数据变更，递增版本并丢弃旧缓存 */
+    public void bump(Long familyId) {
+        if (familyId == null) return;
+        versions.computeIfAbsent(familyId, k -> new AtomicLong()).incrementAndGet();
+        bodies.remove(familyId);
+    }
+
+    /** 全局数据重建后，递增所有已知家族的版本 */
+    public void bumpAll() {
+        versions.keySet().forEach(this::bump);
+        bodies.clear();
+    }
+
+    /**
+     * 获取缓存的序列化响应，版本过期时调用 loader 重新生成
+     * 未指定家族时不缓存，ETag 取内容摘要
+     */
+    public CachedBody get(String kind, Long familyId, Supplier<Object> loader) {
+        return getStreamed(kind, familyId, out -> objectMapper.writeValue(out, loader.get()));
+    }
+
+    /**
+     * 同 {@link #get}，响应体由 writer 直接写出，不经过中间对象
+     */
+    public CachedBody getStreamed(String kind, Long familyId, BodyWriter writer) {
+        if (familyId == null) {
+            byte[] body = render(writer);
+            return new CachedBody(0L, "\"" + kind + "-" + DigestUtils.md5DigestAsHex(body) + "\"", body);
+        }
+
+        // 先取版本再生成内容：生成期间若有写入，缓存项的版本已落后，下次请求会重新生成
+        long v = version(familyId);
+        Map<String, CachedBody> familyBodies = bodies.computeIfAbsent(familyId, k -> new ConcurrentHashMap<>());
+        CachedBody cached = familyBodies.get(kind);
+        if (cached != null && cached.getVersion() == v) return cached;
+
+        byte[] body = render(writer);
+        CachedBody fresh = new CachedBody(v, "\"" + kind + "-" + epoch + "-" + familyId + "-" + v + "\"", body);
+        familyBodies.merge(kind, fresh, (old, neu) -> old.getVersion() > neu.getVersion() ? old : neu);
+        return fresh;
+    }
+
+    /**
+     * 不缓存内容、只按家族版本生成 ETag，用于参数组合无界的接口（如按人物与层数的子树），
+     * 避免缓存随请求参数无限增长
+     */
+    public CachedBody getUncached(String kind, Long familyId, Supplier<Object> loader) {
+        long v = version(familyId);
+        byte[] body = render(out -> objectMapper.writeValue(out, loader.get()));
+        return new CachedBody(v, "\"" + kind + "-" + epoch + "-" + familyId + "-" + v + "\"", body);
+    }
+
+    private byte[] render(BodyWriter writer) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("序列化响应失败", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 响应体写出器
+     */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * 缓存的响应体
+     */
+    @Data
+    @AllArgsConstructor
+    public static class CachedBody {
+        private long version;
+        private String etag;
+        private byte[] body;
+
+        /** 请求头 If-None-Match 是否命中当前 ETag */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) return false;
+            return "*".equals(ifNoneMatch.trim()) || ifNoneMatch.contains(etag);
+        }
+    }
+}
@@ -0,0 +1,988 @@
+package com.genealogy.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.genealogy.dto.FlatTreeDTO;
+import com.genealogy.dto.TreeNodeDTO;
+import com.genealogy.entity.Person;
+import com.genealogy.entity.Relation;
+import org.springframework.beans.BeanUtils;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 家族亲缘图索引（常驻内存，一个家族一份）
+ * <p>
+ * 人物按加入顺序分配 int 下标，父母/子女/配偶边保存在原生 int 邻接数组中，
+ * 由写操作原地增量维护。删除人物只留下空槽，空槽过多时由 {@link FamilyGraphService} 丢弃重建。
+ * <p>
+ * 父母边与子女边的元素编码为 {@code 下标 << 1 | 是否收养}，配偶边为普通下标。
+ */
+public class FamilyGraph {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int[] EMPTY = new int[0];
+
+    private final Long familyId;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> indexOf = new HashMap<>();
+
+    /** 已分配的下标数（含已删除的空槽） */
+    private int size;
+    /** 存活人物数 */
+    private int liveCount;
+
+    private Person[] persons = new Person[INITIAL_CAPACITY];
+
+    /** 父母边，按添加顺序排列，最后一条为族谱树上的父节点 */
+    private int[][] parents = new int[INITIAL_CAPACITY][];
+    private int[] parentDeg = new int[INITIAL_CAPACITY];
+
+    /** 子女边 */
+    private int[][] children = new int[INITIAL_CAPACITY][];
+    private int[] childDeg = new int[INITIAL_CAPACITY];
+
+    /** 配偶边（from → to） */
+    private int[][] spouseOut = new int[INITIAL_CAPACITY][];
+    private int[] spouseOutDeg = new int[INITIAL_CAPACITY];
+
+    /** 配偶边（to ← from） */
+    private int[][] spouseIn = new int[INITIAL_CAPACITY][];
+    private int[] spouseInDeg = new int[INITIAL_CAPACITY];
+
+    /** 由本家族人物发起、对方不在本家族的配偶关系数（不进入图结构，只计入统计） */
+    private int[] externalSpouseDeg = new int[INITIAL_CAPACITY];
+
+    /** 树结构派生索引，结构变化时置空，下次查询时在读锁内重建 */
+    private volatile TreeIndex treeIndex;
+
+    /** 统计聚合，随人物/关系写入按增量维护；配偶数与原先按关系表统计一致，包含跨家族的配偶关系 */
+    private long maleCount, femaleCount, starredCount, spouseCount, externalSpouseCount;
+    /** 世代分布（世代为空的人物不计入） */
+    private final TreeMap<Integer, Long> generationCounts = new TreeMap<>();
+
+    /** 最近共同祖先倍增表，与 treeIndex 同时失效，仅在称谓查询时按需构建 */
+    private volatile LcaIndex lcaIndex;
+
+    public FamilyGraph(Long familyId) {
+        this.familyId = familyId;
+    }
+
+    /**
+     * 由人物与关系列表一次性构建，不属于本家族的关系会被忽略
+     */
+    public static FamilyGraph load(Long familyId, List<Person> persons, List<Relation> relations) {
+        FamilyGraph g = new FamilyGraph(familyId);
+        for (Person p : persons) {
+            g.doPutPerson(p);
+        }
+        for (Relation r : relations) {
+            if ("spouse".equals(r.getType()) && !g.indexOf.containsKey(r.getToId())) {
+                g.doAddExternalSpouse(r.getFromId(), 1);
+            } else {
+                g.doAddRelation(r.getFromId(), r.getToId(), r.getType());
+            }
+        }
+        return g;
+    }
+
+    public Long getFamilyId() {
+        return familyId;
+    }
+
+    /** 存活人物数 */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 已删除但尚未回收的空槽数 */
+    public int garbageCount() {
+        lock.readLock().lock();
+        try {
+            return size - liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(Long personId) {
+        lock.readLock().lock();
+        try {
+            return indexOf.containsKey(personId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 返回图内的人物快照（只读，不要修改） */
+    public Person getPerson(Long personId) {
+        lock.readLock().lock();
+        try {
+            Integer i = indexOf.get(personId);
+            return i != null ? persons[i] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 全部存活人物的快照（只读，不要修改），按加入顺序排列 */
+    public List<Person> persons() {
+        lock.readLock().lock();
+        try {
+            List<Person> result = new ArrayList<>(liveCount);
+            for (int i = 0; i < size; i++) {
+                if (persons[i] != null) result.add(persons[i]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== 增量维护 ====================
+
+    /** 新增或覆盖人物属性 */
+    public void putPerson(Person p) {
+        lock.writeLock().lock();
+        try {
+            doPutPerson(p);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 删除人物及其全部边 */
+    public void removePerson(Long personId) {
+        lock.writeLock().lock();
+        try {
+            Integer boxed = indexOf.remove(personId);
+            if (boxed == null) return;
+            int i = boxed;
+            count(persons[i], -1);
+            spouseCount -= spouseOutDeg[i] + spouseInDeg[i];
+            externalSpouseCount -= externalSpouseDeg[i];
+            externalSpouseDeg[i] = 0;
+            for (int k = 0; k < parentDeg[i]; k++) {
+                int p = node(parents[i][k]);
+                removeEdge(children, childDeg, p, i);
+            }
+            for (int k = 0; k < childDeg[i]; k++) {
+                int c = node(children[i][k]);
+                removeEdge(parents, parentDeg, c, i);
+            }
+            for (int k = 0; k < spouseOutDeg[i]; k++) {
+                removeEdge(spouseIn, spouseInDeg, spouseOut[i][k], i);
+            }
+            for (int k = 0; k < spouseInDeg[i]; k++) {
+                removeEdge(spouseOut, spouseOutDeg, spouseIn[i][k], i);
+            }
+            parents[i] = children[i] = spouseOut[i] = spouseIn[i] = EMPTY;
+            parentDeg[i] = childDeg[i] = spouseOutDeg[i] = spouseInDeg[i] = 0;
+            persons[i] = null;
+            liveCount--;
+            invalidateTree();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 新增关系边，已存在的相同边不重复添加 */
+    public void addRelation(Long fromId, Long toId, String type) {
+        lock.writeLock().lock();
+        try {
+            doAddRelation(fromId, toId, type);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 本家族人物与外家族人物之间的配偶关系增（delta=1）减（delta=-1），只影响统计 */
+    public void addExternalSpouse(Long fromId, int delta) {
+        lock.writeLock().lock();
+        try {
+            doAddExternalSpouse(fromId, delta);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 删除关系边 */
+    public void removeRelation(Long fromId, Long toId, String type) {
+        lock.writeLock().lock();
+        try {
+            Integer from = indexOf.get(fromId);
+            Integer to = indexOf.get(toId);
+            if (from == null || to == null) return;
+            if ("spouse".equals(type)) {
+                if (indexOfEdge(spouseOut, spouseOutDeg, from, to) < 0) return;
+                removeEdge(spouseOut, spouseOutDeg, from, to);
+                removeEdge(spouseIn, spouseInDeg, to, from);
+                spouseCount--;
+            } else {
+                removeEdge(children, childDeg, from, to);
+                removeEdge(parents, parentDeg, to, from);
+            }
+            invalidateTree();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 构建族谱树的根节点列表
+     * 根节点为没有父节点、且不是他人配偶的人物；若不存在，则退化为所有没有父节点的人物
+     */
+    public List<TreeNodeDTO> treeRoots() {
+        lock.readLock().lock();
+        try {
+            if (liveCount == 0) return Collections.emptyList();
+
+            TreeNodeDTO[] nodes = new TreeNodeDTO[size];
+            for (int i = 0; i < size; i++) {
+                if (persons[i] != null) nodes[i] = toNode(persons[i]);
+            }
+
+            List<TreeNodeDTO> roots = new ArrayList<>();
+            List<TreeNodeDTO> orphans = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (nodes[i] == null) continue;
+                for (int k = 0; k < spouseOutDeg[i]; k++) {
+                    nodes[i].getSpouses().add(nodes[spouseOut[i][k]]);
+                }
+                int parent = treeParent(i);
+                if (parent >= 0) {
+                    nodes[parent].getChildren().add(nodes[i]);
+                } else {
+                    orphans.add(nodes[i]);
+                    if (spouseInDeg[i] == 0) roots.add(nodes[i]);
+                }
+            }
+            return roots.isEmpty() ? orphans : roots;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 将族谱树直接写入 JsonGenerator，输出结构与 {@link #treeRoots()} 组装后的 TreeNodeDTO 序列化结果一致
+     * 按显式栈迭代遍历，不创建 TreeNodeDTO，也不会因世系过长而递归过深。
+     * 配偶节点与 TreeNodeDTO 序列化一样会展开其子树；若该配偶已在当前输出路径上（数据成环），
+     * 只输出不含配偶与子女的节点，避免无限展开。
+     * 输出期间持有读锁；写入网络连接时应在 {@link #treeCopy()} 得到的副本上调用，以免慢客户端阻塞写操作。
+     */
+    public void writeTree(JsonGenerator gen) throws IOException {
+        lock.readLock().lock();
+        try {
+            TreeIndex index = treeIndex();
+            int rootCount = 0, orphanCount = 0;
+            for (int i = 0; i < size; i++) {
+                if (persons[i] == null || treeParent(i) >= 0) continue;
+                orphanCount++;
+                if (spouseInDeg[i] == 0) rootCount++;
+            }
+            boolean useOrphans = rootCount == 0;
+            int count = useOrphans ? orphanCount : rootCount;
+
+            if (count == 0) {
+                gen.writeNull();
+                return;
+            }
+
+            boolean[] onPath = new boolean[size];
+            if (count == 1) {
+                for (int i = 0; i < size; i++) {
+                    if (isTreeRoot(i, useOrphans)) writeSubtree(gen, i, index, onPath);
+                }
+                return;
+            }
+
+            gen.writeStartObject();
+            gen.writeStringField("id", "0");
+            gen.writeStringField("name", "家族");
+            gen.writeStringField("gender", "male");
+            gen.writeNumberField("generation", 0);
+            gen.writeNullField("birthDate");
+            gen.writeNullField("deathDate");
+            gen.writeNullField("birthPlace");
+            gen.writeNullField("bio");
+            gen.writeNullField("avatarUrl");
+            gen.writeNullField("isStarred");
+            gen.writeArrayFieldStart("_spouses");
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("children");
+            for (int i = 0; i < size; i++) {
+                if (isTreeRoot(i, useOrphans)) writeSubtree(gen, i, index, onPath);
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 族谱树输出用的副本：在读锁内复制人物引用与树结构所需的邻接数组，耗时与内存只与人物数、关系数成正比，
+     * 远小于序列化结果。人物对象在写入时整体替换，引用可直接共享。副本不随原图更新，只用于 {@link #writeTree}
+     */
+    public FamilyGraph treeCopy() {
+        lock.readLock().lock();
+        try {
+            FamilyGraph g = new FamilyGraph(familyId);
+            g.treeIndex = treeIndex();
+            g.size = size;
+            g.liveCount = liveCount;
+            g.persons = Arrays.copyOf(persons, size);
+            g.parentDeg = Arrays.copyOf(parentDeg, size);
+            g.parents = copyEdges(parents, parentDeg, size);
+            g.spouseOutDeg = Arrays.copyOf(spouseOutDeg, size);
+            g.spouseOut = copyEdges(spouseOut, spouseOutDeg, size);
+            g.spouseInDeg = Arrays.copyOf(spouseInDeg, size);
+            return g;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int[][] copyEdges(int[][] edges, int[] deg, int size) {
+        int[][] copy = new int[size][];
+        for (int i = 0; i < size; i++) {
+            copy[i] = edges[i] != null ? Arrays.copyOf(edges[i], deg[i]) : EMPTY;
+        }
+        return copy;
+    }
+
+    /**
+     * 族谱树的扁平列式表示，行顺序与嵌套格式中同层节点的顺序一致
+     */
+    public FlatTreeDTO flatten() {
+        lock.readLock().lock();
+        try {
+            int n = liveCount;
+            int[] row = new int[size];
+            String[] ids = new String[n];
+            String[] names = new String[n];
+            int[] genders = new int[n];
+            int[] generations = new int[n];
+            int spouseEdges = 0;
+            int r = 0;
+            for (int i = 0; i < size; i++) {
+                Person p = persons[i];
+                if (p == null) continue;
+                row[i] = r;
+                ids[r] = String.valueOf(p.getId());
+                names[r] = p.getName();
+                genders[r] = "male".equals(p.getGender()) ? 1 : "female".equals(p.getGender()) ? 2 : 0;
+                generations[r] = p.getGeneration() != null ? p.getGeneration() : 0;
+                spouseEdges += spouseOutDeg[i];
+                r++;
+            }
+
+            int[] parentRows = new int[n];
+            int[] spouses = new int[spouseEdges * 2];
+            int[] roots = new int[n];
+            int[] orphans = new int[n];
+            int rootCount = 0, orphanCount = 0, s = 0;
+            for (int i = 0; i < size; i++) {
+                if (persons[i] == null) continue;
+                int parent = treeParent(i);
+                parentRows[row[i]] = parent >= 0 ? row[parent] : -1;
+                if (parent < 0) {
+                    orphans[orphanCount++] = row[i];
+                    if (spouseInDeg[i] == 0) roots[rootCount++] = row[i];
+                }
+                for (int k = 0; k < spouseOutDeg[i]; k++) {
+                    spouses[s++] = row[i];
+                    spouses[s++] = row[spouseOut[i][k]];
+                }
+            }
+
+            FlatTreeDTO flat = new FlatTreeDTO();
+            flat.setIds(ids);
+            flat.setNames(names);
+            flat.setGenders(genders);
+            flat.setGenerations(generations);
+            flat.setParents(parentRows);
+            flat.setSpouses(spouses);
+            flat.setRoots(rootCount > 0 ? Arrays.copyOf(roots, rootCount) : Arrays.copyOf(orphans, orphanCount));
+            return flat;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 以某人为焦点的族谱树窗口
+     * 从焦点向上取 up 代祖先、向下取 down 代后代；祖先的其他子女只返回折叠节点。
+     * 窗口内节点不含简介，并带有子女数与后代数，供前端按需展开。
+     *
+     * @return 窗口顶端节点，人物不在本家族时返回 null
+     */
+    public TreeNodeDTO window(Long personId, int up, int down) {
+        lock.readLock().lock();
+        try {
+            Integer focus = indexOf.get(personId);
+            if (focus == null) return null;
+            TreeIndex index = treeIndex();
+
+            int[] path = new int[up + 1];
+            path[0] = focus;
+            int levels = 0;
+            while (levels < up) {
+                int parent = treeParent(path[levels]);
+                if (parent < 0) break;
+                path[++levels] = parent;
+            }
+
+            TreeNodeDTO top = toWindowNode(path[levels], index);
+            TreeNodeDTO cur = top;
+            for (int l = levels; l > 0; l--) {
+                TreeNodeDTO next = null;
+                int node = path[l];
+                for (int k = index.childStart[node]; k < index.childStart[node + 1]; k++) {
+                    int c = index.childList[k];
+                    TreeNodeDTO child = toWindowNode(c, index);
+                    cur.getChildren().add(child);
+                    if (c == path[l - 1]) next = child;
+                }
+                cur = next;
+            }
+
+            // 焦点向下逐层展开
+            Deque<TreeNodeDTO> nodeQueue = new ArrayDeque<>();
+            Deque<int[]> posQueue = new ArrayDeque<>();
+            nodeQueue.add(cur);
+            posQueue.add(new int[]{focus, 0});
+            while (!nodeQueue.isEmpty()) {
+                TreeNodeDTO dto = nodeQueue.poll();
+                int[] pos = posQueue.poll();
+                if (pos[1] >= down) continue;
+                int node = pos[0];
+                for (int k = index.childStart[node]; k < index.childStart[node + 1]; k++) {
+                    int c = index.childList[k];
+                    TreeNodeDTO child = toWindowNode(c, index);
+                    dto.getChildren().add(child);
+                    nodeQueue.add(child);
+                    posQueue.add(new int[]{c, pos[1] + 1});
+                }
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 家族统计，直接读取增量维护的聚合值
+     */
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("total", liveCount);
+            result.put("maxGeneration", generationCounts.isEmpty() ? 0 : generationCounts.lastKey());
+            result.put("maleCount", maleCount);
+            result.put("femaleCount", femaleCount);
+            result.put("starredCount", starredCount);
+            result.put("spouseCount", spouseCount + externalSpouseCount);
+            result.put("generationDistribution", new HashMap<>(generationCounts));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 两人之间最近的血缘关联：A 向上 up 代、B 向上 down 代到达最近共同祖先
+     * 祖先链沿族谱树父节点上行；两端各允许先经过一位非树上父母（通常为母亲）再上行，
+     * 从而覆盖外祖父、舅舅、外甥等母系称谓。每次最近共同祖先查询为 O(log n)。
+     *
+     * @return 无共同祖先或人物不在本家族时返回 null
+     */
+    public Lineage lineage(Long fromId, Long toId) {
+        lock.readLock().lock();
+        try {
+            Integer a = indexOf.get(fromId);
+            Integer b = indexOf.get(toId);
+            if (a == null || b == null) return null;
+            LcaIndex index = lcaIndex();
+
+            int bestUp = -1, bestDown = -1, bestStartA = -1, bestStartB = -1;
+            for (int ka = -1; ka < parentDeg[a] - 1; ka++) {
+                int sa = ka < 0 ? a : node(parents[a][ka]);
+                int offA = ka < 0 ? 0 : 1;
+                for (int kb = -1; kb < parentDeg[b] - 1; kb++) {
+                    int sb = kb < 0 ? b : node(parents[b][kb]);
+                    int offB = kb < 0 ? 0 : 1;
+                    int l = index.lca(sa, sb);
+                    if (l < 0) continue;
+                    int up = offA + index.depth[sa] - index.depth[l];
+                    int down = offB + index.depth[sb] - index.depth[l];
+                    if (bestUp < 0 || up + down < bestUp + bestDown) {
+                        bestUp = up;
+                        bestDown = down;
+                        bestStartA = sa;
+                        bestStartB = sb;
+                    }
+                }
+            }
+            if (bestUp < 0) return null;
+
+            boolean near = bestUp <= Lineage.CHAIN_LIMIT && bestDown <= Lineage.CHAIN_LIMIT;
+            return new Lineage(bestUp, bestDown,
+                    near ? chain(a, bestStartA, bestUp) : null,
+                    near ? chain(b, bestStartB, bestDown) : null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 人物的全部配偶 */
+    public List<Person> spouses(Long personId) {
+        lock.readLock().lock();
+        try {
+            Integer i = indexOf.get(personId);
+            if (i == null) return Collections.emptyList();
+            List<Person> result = new ArrayList<>(spouseOutDeg[i] + spouseInDeg[i]);
+            for (int k = 0; k < spouseOutDeg[i]; k++) result.add(persons[spouseOut[i][k]]);
+            for (int k = 0; k < spouseInDeg[i]; k++) result.add(persons[spouseIn[i][k]]);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== 内部实现（调用方持有锁） ====================
+
+    private void doPutPerson(Person p) {
+        Person copy = new Person();
+        BeanUtils.copyProperties(p, copy);
+        Integer i = indexOf.get(p.getId());
+        if (i != null) {
+            count(persons[i], -1);
+            count(copy, 1);
+            persons[i] = copy;
+            return;
+        }
+        ensureCapacity(size + 1);
+        int idx = size++;
+        persons[idx] = copy;
+        count(copy, 1);
+        parents[idx] = children[idx] = spouseOut[idx] = spouseIn[idx] = EMPTY;
+        indexOf.put(p.getId(), idx);
+        liveCount++;
+        invalidateTree();
+    }
+
+    private void doAddRelation(Long fromId, Long toId, String type) {
+        Integer from = indexOf.get(fromId);
+        Integer to = indexOf.get(toId);
+        if (from == null || to == null) return;
+        if ("spouse".equals(type)) {
+            if (indexOfEdge(spouseOut, spouseOutDeg, from, to) >= 0) return;
+            appendEdge(spouseOut, spouseOutDeg, from, to);
+            appendEdge(spouseIn, spouseInDeg, to, from);
+            spouseCount++;
+        } else {
+            if (indexOfEdge(children, childDeg, from, to) >= 0) return;
+            boolean adopted = "adopted".equals(type);
+            appendEdge(children, childDeg, from, encode(to, adopted));
+            appendEdge(parents, parentDeg, to, encode(from, adopted));
+        }
+        invalidateTree();
+    }
+
+    private void doAddExternalSpouse(Long fromId, int delta) {
+        Integer from = indexOf.get(fromId);
+        if (from == null) return;
+        int deg = Math.max(0, externalSpouseDeg[from] + delta);
+        externalSpouseCount += deg - externalSpouseDeg[from];
+        externalSpouseDeg[from] = deg;
+    }
+
+    /** 将一个人物计入（sign=1）或移出（sign=-1）统计聚合 */
+    private void count(Person p, int sign) {
+        if ("male".equals(p.getGender())) maleCount += sign;
+        if ("female".equals(p.getGender())) femaleCount += sign;
+        if (Boolean.TRUE.equals(p.getIsStarred())) starredCount += sign;
+        Integer gen = p.getGeneration();
+        if (gen != null) {
+            generationCounts.merge(gen, (long) sign, (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    private void invalidateTree() {
+        treeIndex = null;
+        lcaIndex = null;
+    }
+
+    /** 族谱树上的父节点：最后添加的父母边，没有则为 -1 */
+    private int treeParent(int i) {
+        return parentDeg[i] > 0 ? node(parents[i][parentDeg[i] - 1]) : -1;
+    }
+
+    private boolean isTreeRoot(int i, boolean useOrphans) {
+        return persons[i] != null && treeParent(i) < 0 && (useOrphans || spouseInDeg[i] == 0);
+    }
+
+    /**
+     * 迭代输出一棵子树：每个栈帧记录人物下标、阶段（0=配偶，1=子女）与当前游标
+     */
+    private void writeSubtree(JsonGenerator gen, int root, TreeIndex index, boolean[] onPath) throws IOException {
+        int[] stackNode = new int[INITIAL_CAPACITY];
+        int[] stackStage = new int[INITIAL_CAPACITY];
+        int[] stackCursor = new int[INITIAL_CAPACITY];
+        int sp = 0;
+
+        writeNodeStart(gen, root);
+        onPath[root] = true;
+        stackNode[sp] = root;
+        stackStage[sp] = 0;
+        stackCursor[sp] = 0;
+        sp++;
+
+        while (sp > 0) {
+            int f = sp - 1;
+            int node = stackNode[f];
+            int next = -1;
+            if (stackStage[f] == 0) {
+                if (stackCursor[f] < spouseOutDeg[node]) {
+                    next = spouseOut[node][stackCursor[f]++];
+                } else {
+                    gen.writeEndArray();
+                    gen.writeArrayFieldStart("children");
+                    stackStage[f] = 1;
+                    stackCursor[f] = index.childStart[node];
+                    continue;
+                }
+            } else if (stackCursor[f] < index.childStart[node + 1]) {
+                next = index.childList[stackCursor[f]++];
+            } else {
+                gen.writeEndArray();
+                gen.writeEndObject();
+                onPath[node] = false;
+                sp--;
+                continue;
+            }
+
+            writeNodeStart(gen, next);
+            if (onPath[next]) {
+                gen.writeEndArray();
+                gen.writeArrayFieldStart("children");
+                gen.writeEndArray();
+                gen.writeEndObject();
+                continue;
+            }
+            if (sp == stackNode.length) {
+                stackNode = Arrays.copyOf(stackNode, sp * 2);
+                stackStage = Arrays.copyOf(stackStage, sp * 2);
+                stackCursor = Arrays.copyOf(stackCursor, sp * 2);
+            }
+            onPath[next] = true;
+            stackNode[sp] = next;
+            stackStage[sp] = 0;
+            stackCursor[sp] = 0;
+            sp++;
+        }
+    }
+
+    /** 输出节点的基本字段，并打开 _spouses 数组 */
+    private void writeNodeStart(JsonGenerator gen, int i) throws IOException {
+        Person p = persons[i];
+        gen.writeStartObject();
+        gen.writeStringField("id", String.valueOf(p.getId()));
+        gen.writeStringField("name", p.getName());
+        gen.writeStringField("gender", p.getGender());
+        if (p.getGeneration() != null) {
+            gen.writeNumberField("generation", p.getGeneration());
+        } else {
+            gen.writeNullField("generation");
+        }
+        gen.writeStringField("birthDate", p.getBirthDate());
+        gen.writeStringField("deathDate", p.getDeathDate());
+        gen.writeStringField("birthPlace", p.getBirthPlace());
+        gen.writeStringField("bio", p.getBio());
+        gen.writeStringField("avatarUrl", p.getAvatarUrl());
+        if (p.getIsStarred() != null) {
+            gen.writeBooleanField("isStarred", p.getIsStarred());
+        } else {
+            gen.writeNullField("isStarred");
+        }
+        gen.writeArrayFieldStart("_spouses");
+    }
+
+    /** 窗口节点：不含简介，带子女数与后代数，配偶为不带子女的精简节点 */
+    private TreeNodeDTO toWindowNode(int i, TreeIndex index) {
+        TreeNodeDTO node = toNode(persons[i]);
+        node.setBio(null);
+        node.setChildCount(index.childStart[i + 1] - index.childStart[i]);
+        node.setDescendantCount(index.descendants[i]);
+        for (int k = 0; k < spouseOutDeg[i]; k++) {
+            TreeNodeDTO spouse = toNode(persons[spouseOut[i][k]]);
+            spouse.setBio(null);
+            node.getSpouses().add(spouse);
+        }
+        return node;
+    }
+
+    /** 获取树结构派生索引，已失效时重建（调用方持有读锁或写锁） */
+    private TreeIndex treeIndex() {
+        TreeIndex index = treeIndex;
+        if (index == null) {
+            index = buildTreeIndex();
+            treeIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * 按树上父节点构建子女 CSR 与后代数，后代数用迭代后序遍历累加
+     * 成环的人物从根不可达，后代数保持为 0
+     */
+    private TreeIndex buildTreeIndex() {
+        int[] start = new int[size + 1];
+        int[] parentOf = new int[size];
+        for (int i = 0; i < size; i++) {
+            parentOf[i] = persons[i] != null ? treeParent(i) : -1;
+            if (parentOf[i] >= 0) start[parentOf[i] + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] list = new int[start[size]];
+        int[] fill = Arrays.copyOf(start, size);
+        for (int i = 0; i < size; i++) {
+            if (parentOf[i] >= 0) list[fill[parentOf[i]]++] = i;
+        }
+
+        int[] descendants = new int[size];
+        int[] stack = new int[size];
+        int[] cursor = new int[size];
+        for (int r = 0; r < size; r++) {
+            if (persons[r] == null || parentOf[r] >= 0) continue;
+            int sp = 0;
+            stack[sp++] = r;
+            while (sp > 0) {
+                int x = stack[sp - 1];
+                if (start[x] + cursor[x] < start[x + 1]) {
+                    stack[sp++] = list[start[x] + cursor[x]++];
+                } else {
+                    sp--;
+                    if (parentOf[x] >= 0) descendants[parentOf[x]] += descendants[x] + 1;
+                }
+            }
+        }
+        return new TreeIndex(start, list, descendants);
+    }
+
+    /** 获取倍增表，已失效时重建（调用方持有读锁或写锁） */
+    private LcaIndex lcaIndex() {
+        LcaIndex index = lcaIndex;
+        if (index == null) {
+            index = buildLcaIndex();
+            lcaIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * 从各根节点按层遍历求深度，再逐级倍增 jump[k][i] = jump[k-1][jump[k-1][i]]，O(n log n)
+     * 成环的人物从根不可达，深度保持为 -1，不参与查询
+     */
+    private LcaIndex buildLcaIndex() {
+        TreeIndex tree = treeIndex();
+        int[] depth = new int[size];
+        Arrays.fill(depth, -1);
+        int[] queue = new int[size];
+        int head = 0, tail = 0, maxDepth = 0;
+        for (int i = 0; i < size; i++) {
+            if (persons[i] != null && treeParent(i) < 0) {
+                depth[i] = 0;
+                queue[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int x = queue[head++];
+            for (int k = tree.childStart[x]; k < tree.childStart[x + 1]; k++) {
+                int c = tree.childList[k];
+                depth[c] = depth[x] + 1;
+                maxDepth = Math.max(maxDepth, depth[c]);
+                queue[tail++] = c;
+            }
+        }
+
+        int levels = 1;
+        while ((1 << levels) <= maxDepth) levels++;
+        int[][] jump = new int[levels][size];
+        for (int i = 0; i < size; i++) {
+            jump[0][i] = depth[i] > 0 ? treeParent(i) : i;
+        }
+        for (int k = 1; k < levels; k++) {
+            for (int i = 0; i < size; i++) {
+                jump[k][i] = jump[k - 1][jump[k - 1][i]];
+            }
+        }
+        return new LcaIndex(depth, jump);
+    }
+
+    /** 从本人出发的祖先链，start 不是本人时为经过的非树上父母 */
+    private Person[] chain(int self, int start, int length) {
+        Person[] result = new Person[length + 1];
+        result[0] = persons[self];
+        int cur = self;
+        for (int k = 1; k <= length; k++) {
+            cur = k == 1 && start != self ? start : treeParent(cur);
+            result[k] = persons[cur];
+        }
+        return result;
+    }
+
+    private TreeNodeDTO toNode(Person p) {
+        TreeNodeDTO node = new TreeNodeDTO();
+        node.setId(p.getId());
+        node.setName(p.getName());
+        node.setGender(p.getGender());
+        node.setGeneration(p.getGeneration());
+        node.setBirthDate(p.getBirthDate());
+        node.setDeathDate(p.getDeathDate());
+        node.setBirthPlace(p.getBirthPlace());
+        node.setBio(p.getBio());
+        node.setAvatarUrl(p.getAvatarUrl());
+        node.setIsStarred(p.getIsStarred());
+        node.setSpouses(new ArrayList<>());
+        node.setChildren(new ArrayList<>());
+        return node;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= persons.length) return;
+        int newCap = Math.max(capacity, persons.length * 2);
+        persons = Arrays.copyOf(persons, newCap);
+        parents = Arrays.copyOf(parents, newCap);
+        parentDeg = Arrays.copyOf(parentDeg, newCap);
+        children = Arrays.copyOf(children, newCap);
+        childDeg = Arrays.copyOf(childDeg, newCap);
+        spouseOut = Arrays.copyOf(spouseOut, newCap);
+        spouseOutDeg = Arrays.copyOf(spouseOutDeg, newCap);
+        spouseIn = Arrays.copyOf(spouseIn, newCap);
+        spouseInDeg = Arrays.copyOf(spouseInDeg, newCap);
+        externalSpouseDeg = Arrays.copyOf(externalSpouseDeg, newCap);
+    }
+
+    private static int encode(int node, boolean adopted) {
+        return node << 1 | (adopted ? 1 : 0);
+    }
+
+    /** 父母/子女边元素对应的人物下标 */
+    private static int node(int edge) {
+        return edge >>> 1;
+    }
+
+    /**
+     * 树结构派生索引：childList[childStart[i], childStart[i+1]) 为 i 在树上的子女（按下标顺序）
+     */
+    private static class TreeIndex {
+        final int[] childStart;
+        final int[] childList;
+        final int[] descendants;
+
+        TreeIndex(int[] childStart, int[] childList, int[] descendants) {
+            this.childStart = childStart;
+            this.childList = childList;
+            this.descendants = descendants;
+        }
+    }
+
+    /**
+     * 最近共同祖先倍增表：depth[i] 为树上深度，jump[k][i] 为 i 的第 2^k 代祖先（根指向自身）
+     */
+    private static class LcaIndex {
+        final int[] depth;
+        final int[][] jump;
+
+        LcaIndex(int[] depth, int[][] jump) {
+            this.depth = depth;
+            this.jump = jump;
+        }
+
+        /** 最近共同祖先下标，不在同一棵树上时返回 -1 */
+        int lca(int x, int y) {
+            if (depth[x] < 0 || depth[y] < 0) return -1;
+            if (depth[x] < depth[y]) {
+                int t = x;
+                x = y;
+                y = t;
+            }
+            int diff = depth[x] - depth[y];
+            for (int k = 0; diff > 0; k++, diff >>= 1) {
+                if ((diff & 1) != 0) x = jump[k][x];
+            }
+            if (x == y) return x;
+            for (int k = jump.length - 1; k >= 0; k--) {
+                if (jump[k][x] != jump[k][y]) {
+                    x = jump[k][x];
+                    y = jump[k][y];
+                }
+            }
+            return jump[0][x] == jump[0][y] ? jump[0][x] : -1;
+        }
+    }
+
+    /**
+     * 两人的血缘关联，链中第 0 个为本人，第 k 个为向上第 k 代（末尾为共同祖先）
+     * 关联超过 {@link #CHAIN_LIMIT} 代时不返回链，只保留代数
+     */
+    public static class Lineage {
+        public static final int CHAIN_LIMIT = 4;
+
+        public final int up;
+        public final int down;
+        public final Person[] fromChain;
+        public final Person[] toChain;
+
+        Lineage(int up, int down, Person[] fromChain, Person[] toChain) {
+            this.up = up;
+            this.down = down;
+            this.fromChain = fromChain;
+            this.toChain = toChain;
+        }
+    }
+
+    private static void appendEdge(int[][] adj, int[] deg, int i, int value) {
+        int[] list = adj[i];
+        if (deg[i] == list.length) {
+            list = Arrays.copyOf(list, Math.max(4, list.length * 2));
+            adj[i] = list;
+        }
+        list[deg[i]++] = value;
+    }
+
+    /**
+     * 在邻接表中查找目标人物，父母/子女边按解码后的下标比较
+     */
+    private int indexOfEdge(int[][] adj, int[] deg, int i, int target) {
+        boolean encoded = adj == parents || adj == children;
+        int[] list = adj[i];
+        for (int k = 0; k < deg[i]; k++) {
+            int v = encoded ? node(list[k]) : list[k];
+            if (v == target) return k;
+        }
+        return -1;
+    }
+
+    /** 删除一条边，保持其余边的相对顺序 */
+    private void removeEdge(int[][] adj, int[] deg, int i, int target) {
+        int k = indexOfEdge(adj, deg, i, target);
+        if (k < 0) return;
+        int[] list = adj[i];
+        System.arraycopy(list, k + 1, list, k, deg[i] - k - 1);
+        deg[i]--;
+    }
+}
@@ -0,0 +1,235 @@
+package com.genealogy.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.genealogy.entity.Person;
+import com.genealogy.entity.Relation;
+import com.genealogy.mapper.FamilyMapper;
+import com.genealogy.mapper.PersonMapper;
+import com.genealogy.mapper.RelationMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * 家族亲缘图索引管理
+ * 每个家族首次访问时从数据库加载一次，之后由各写接口原地增量更新。
+ * 加载在映射表的原子操作之外进行，同一家族的并发访问等待同一次加载；加载期间有写入时，
+ * 结果只返回给等待者而不常驻，下次访问重新加载。不存在的家族不常驻
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FamilyGraphService {
+
+    private final FamilyMapper familyMapper;
+    private final PersonMapper personMapper;
+    private final RelationMapper relationMapper;
+
+    private final Map<Long, FamilyGraph> graphs = new ConcurrentHashMap<>();
+
+    /** 正在加载的家族 */
+    private final Map<Long, Loading> loading = new ConcurrentHashMap<>();
+
+    /** 关系写入锁的分段数，家族按 ID 散列到分段，锁的数量不随家族数增长 */
+    private static final int WRITE_STRIPES = 64;
+    private final ReentrantLock[] writeStripes = new ReentrantLock[WRITE_STRIPES];
+
+    {
+        for (int i = 0; i < WRITE_STRIPES; i++) writeStripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * 获取家族图索引，未加载时从数据库加载；家族不存在时返回不常驻的空图
+     */
+    public FamilyGraph get(Long familyId) {
+        if (familyId == null) throw new IllegalArgumentException("未指定家族");
+        FamilyGraph graph = graphs.get(familyId);
+        if (graph != null) return graph;
+
+        Loading mine = new Loading();
+        Loading running = loading.putIfAbsent(familyId, mine);
+        if (running != null) return running.await();
+        try {
+            graph = graphs.get(familyId);
+            if (graph == null) {
+                boolean exists = familyMapper.selectById(familyId) != null;
+                graph = exists ? load(familyId) : new FamilyGraph(familyId);
+                FamilyGraph loaded = graph;
+                // 与写操作的 stale 标记在同一个映射项上原子进行：要么写操作看到已常驻的图并应用到图上，
+                // 要么图因 stale 不常驻
+                loading.compute(familyId, (k, l) -> {
+                    if (exists && l == mine && !mine.stale) graphs.put(familyId, loaded);
+                    return l;
+                });
+            }
+            mine.future.complete(graph);
+            return graph;
+        } catch (RuntimeException e) {
+            mine.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(familyId, mine);
+        }
+    }
+
+    /** 家族图是否常驻；不存在的家族和加载期间被写入的结果不常驻 */
+    public boolean isResident(Long familyId) {
+        return familyId != null && graphs.containsKey(familyId);
+    }
+
+    /**
+     * 持有给定家族（可含 null，表示未加入家族的人物）的关系写入锁执行 action：从校验到写库、更新祖先索引，
+     * 同一家族的其他关系写入等待，避免并发写入各自通过校验后共同造成成环或第三位亲生父母。
+     * 多个家族按分段序号依次加锁，不会死锁
+     */
+    public <T> T withWriteLock(Collection<Long> familyIds, Supplier<T> action) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (Long familyId : familyIds) stripes.add(Math.floorMod(Objects.hashCode(familyId), WRITE_STRIPES));
+        for (int i : stripes) writeStripes[i].lock();
+        try {
+            return action.get();
+        } finally {
+            for (int i : stripes) writeStripes[i].unlock();
+        }
+    }
+
+    /** 丢弃家族图索引，下次访问时重新加载 */
+    public void evict(Long familyId) {
+        if (familyId == null) return;
+        markStale(familyId);
+        graphs.remove(familyId);
+    }
+
+    // ==================== 写操作同步 ====================
+
+    /** 人物新增或修改（所属家族未变） */
+    public void putPerson(Person p) {
+        if (p.getFamilyId() == null) return;
+        update(p.getFamilyId(), g -> {
+            g.putPerson(p);
+            return g;
+        });
+    }
+
+    /** 人物修改，可能换了家族 */
+    public void updatePerson(Long oldFamilyId, Person p) {
+        if (Objects.equals(oldFamilyId, p.getFamilyId())) {
+            putPerson(p);
+            return;
+        }
+        // 跨家族移动会带走关系边，直接让两边重新加载
+        evict(oldFamilyId);
+        evict(p.getFamilyId());
+    }
+
+    /** 人物删除 */
+    public void removePerson(Person p) {
+        if (p.getFamilyId() == null) return;
+        update(p.getFamilyId(), g -> {
+            g.removePerson(p.getId());
+            // 空槽多于存活人物时丢弃，下次访问重新紧凑加载
+            return g.garbageCount() > g.size() ? null : g;
+        });
+    }
+
+    /** 关系新增，仅同一家族内的关系进入图索引；跨家族的配偶关系计入发起方家族的统计 */
+    public void addRelation(Relation r, Person from, Person to) {
+        Long familyId = sameFamily(from, to);
+        if (familyId == null) {
+            externalSpouse(r, from, to, 1);
+            return;
+        }
+        update(familyId, g -> {
+            g.addRelation(r.getFromId(), r.getToId(), r.getType());
+            return g;
+        });
+    }
+
+    /** 关系删除 */
+    public void removeRelation(Relation r, Person from, Person to) {
+        Long familyId = sameFamily(from, to);
+        if (familyId == null) {
+            externalSpouse(r, from, to, -1);
+            return;
+        }
+        update(familyId, g -> {
+            g.removeRelation(r.getFromId(), r.getToId(), r.getType());
+            return g;
+        });
+    }
+
+    private void externalSpouse(Relation r, Person from, Person to, int delta) {
+        if (!"spouse".equals(r.getType()) || from == null || from.getFamilyId() == null) return;
+        if (to != null && Objects.equals(from.getFamilyId(), to.getFamilyId())) return;
+        update(from.getFamilyId(), g -> {
+            g.addExternalSpouse(r.getFromId(), delta);
+            return g;
+        });
+    }
+
+    /**
+     * 将写操作应用到已常驻的图，返回 null 时丢弃该图；先标记正在进行的加载，使其结果不常驻
+     */
+    private void update(Long familyId, UnaryOperator<FamilyGraph> fn) {
+        markStale(familyId);
+        graphs.computeIfPresent(familyId, (k, g) -> fn.apply(g));
+    }
+
+    private void markStale(Long familyId) {
+        loading.computeIfPresent(familyId, (k, l) -> {
+            l.stale = true;
+            return l;
+        });
+    }
+
+    private Long sameFamily(Person from, Person to) {
+        if (from == null || to == null) return null;
+        return Objects.equals(from.getFamilyId(), to.getFamilyId()) ? from.getFamilyId() : null;
+    }
+
+    // ==================== 加载 ====================
+
+    private FamilyGraph load(Long familyId) {
+        long start = System.currentTimeMillis();
+        List<Person> persons = personMapper.selectList(
+                new LambdaQueryWrapper<Person>().eq(Person::getFamilyId, familyId));
+
+        List<Relation> relations = relationMapper.selectByFamilyId(familyId);
+
+        FamilyGraph graph = FamilyGraph.load(familyId, persons, relations);
+        log.info("加载家族图索引 familyId={} 人物={} 关系={} 耗时={}ms",
+                familyId, persons.size(), relations.size(), System.currentTimeMillis() - start);
+        return graph;
+    }
+
+    /** 一次进行中的加载：并发访问同一家族的线程等待同一个结果 */
+    private static class Loading {
+        final CompletableFuture<FamilyGraph> future = new CompletableFuture<>();
+        /** 加载期间发生了写操作，结果可能缺少该写入 */
+        volatile boolean stale;
+
+        FamilyGraph await() {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待家族图加载被中断", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,517 @@
+package com.genealogy.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genealogy.dto.OperateLogDTO;
+import com.genealogy.entity.Family;
+import com.genealogy.entity.FamilySnapshot;
+import com.genealogy.entity.OperateLog;
+import com.genealogy.entity.Person;
+import com.genealogy.entity.Relation;
+import com.genealogy.mapper.FamilyMapper;
+import com.genealogy.mapper.FamilySnapshotMapper;
+import com.genealogy.mapper.OperateLogMapper;
+import com.genealogy.mapper.PersonMapper;
+import com.genealogy.mapper.RelationMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 家族快照与按时间点还原
+ * <p>
+ * 启动时为每个家族保存基线快照，之后定时为操作较多的家族保存压缩快照（人物审计字段 + 关系），
+ * 快照记录日志 ID 水位。还原某一时刻的家族时，从该时刻之前最近的快照正向回放水位之后的人物/关系日志；
+ * 该时刻早于全部快照时，从之后最近的快照逆向撤销水位以内的日志。回放的日志条数不超过
+ * 两份快照之间的操作数，由 genealogy.snapshot.every-ops 控制。
+ * <p>
+ * 每个家族只保留最新 genealogy.snapshot.keep 份快照。生成世代等不记日志的批量修改只在下一份快照中体现。
+ */
+@Slf4j
+@Service
+public class FamilySnapshotService {
+
+    private static final Set<String> REPLAY_TYPES = Set.of(
+            OperateLog.OperateType.PERSON_ADD, OperateLog.OperateType.PERSON_EDIT, OperateLog.OperateType.PERSON_DELETE,
+            OperateLog.OperateType.RELATION_ADD, OperateLog.OperateType.RELATION_DELETE);
+
+    private static final Set<String> PERSON_TYPES = Set.of(
+            OperateLog.OperateType.PERSON_ADD, OperateLog.OperateType.PERSON_EDIT, OperateLog.OperateType.PERSON_DELETE);
+
+    /**
+     * 按时间缩小回放查询范围时向快照时间之前多留的余量：水位之后的日志都在快照读取之后创建，
+     * 余量只用于容忍时钟回拨
+     */
+    private static final Duration REPLAY_MARGIN = Duration.ofMinutes(1);
+
+    private final FamilySnapshotMapper snapshotMapper;
+    private final FamilyMapper familyMapper;
+    private final PersonMapper personMapper;
+    private final RelationMapper relationMapper;
+    private final OperateLogMapper operateLogMapper;
+    private final OperateLogArchive operateLogArchive;
+    private final OperateLogService operateLogService;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    private final int everyOps;
+    private final int keep;
+
+    public FamilySnapshotService(FamilySnapshotMapper snapshotMapper,
+                                 FamilyMapper familyMapper,
+                                 PersonMapper personMapper,
+                                 RelationMapper relationMapper,
+                                 OperateLogMapper operateLogMapper,
+                                 OperateLogArchive operateLogArchive,
+                                 OperateLogService operateLogService,
+                                 PlatformTransactionManager transactionManager,
+                                 ObjectMapper objectMapper,
+                                 @Value("${genealogy.snapshot.every-ops:200}") int everyOps,
+                                 @Value("${genealogy.snapshot.keep:50}") int keep) {
+        this.snapshotMapper = snapshotMapper;
+        this.familyMapper = familyMapper;
+        this.personMapper = personMapper;
+        this.relationMapper = relationMapper;
+        this.operateLogMapper = operateLogMapper;
+        this.operateLogArchive = operateLogArchive;
+        this.operateLogService = operateLogService;
+        this.transactionManager = transactionManager;
+        this.objectMapper = objectMapper;
+        this.everyOps = Math.max(1, everyOps);
+        this.keep = Math.max(1, keep);
+    }
+
+    // ==================== 快照 ====================
+
+    /**
+     * 应用启动后为尚无快照的家族保存基线快照，使按时间点查询总有快照可用
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureBaselines() {
+        int taken = 0;
+        for (Family f : familyMapper.selectList(new LambdaQueryWrapper<>())) {
+            try {
+                if (snapshotMapper.selectLatest(f.getId()) == null) {
+                    take(f.getId());
+                    taken++;
+                }
+            } catch (Exception e) {
+                log.error("家族基线快照失败 familyId={}", f.getId(), e);
+            }
+        }
+        if (taken > 0) log.info("家族基线快照完成 数量={}", taken);
+    }
+
+    /**
+     * 为尚无快照、或上次快照后操作数达到 every-ops 的家族保存快照，并删除最新 keep 份之外的快照
+     */
+    @Scheduled(cron = "${genealogy.snapshot.cron:0 */10 * * * *}")
+    public void snapshotDue() {
+        int taken = 0;
+        for (Family f : familyMapper.selectList(new LambdaQueryWrapper<>())) {
+            try {
+                FamilySnapshot last = snapshotMapper.selectLatest(f.getId());
+                if (last == null || operateLogMapper.selectCount(new LambdaQueryWrapper<OperateLog>()
+                        .eq(OperateLog::getFamilyId, f.getId())
+                        .ge(OperateLog::getCreatedAt, last.getTakenAt().minus(REPLAY_MARGIN))
+                        .gt(OperateLog::getId, last.getLastLogId())) >= everyOps) {
+                    take(f.getId());
+                    taken++;
+                    snapshotMapper.deleteBeyond(f.getId(), keep);
+                }
+            } catch (Exception e) {
+                log.error("家族快照失败 familyId={}", f.getId(), e);
+            }
+        }
+        if (taken > 0) log.info("家族快照完成 数量={}", taken);
+    }
+
+    /** 立即保存家族快照 */
+    public FamilySnapshot take(Long familyId) {
+        FamilySnapshot snapshot = capture(familyId);
+        snapshotMapper.insert(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 读取家族当前状态（不保存）。在 {@link OperateLogService#quiesced} 内进行：进行中的修改都已提交日志并写完队列，
+     * 新的修改等待读取结束。读到的数据恰好包含 ID 不超过水位的日志对应的修改，之后的修改日志 ID 都大于水位，
+     * 正向回放取水位之后的日志、逆向撤销取水位以内的日志，不重不漏
+     */
+    private FamilySnapshot capture(Long familyId) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        tx.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        return operateLogService.quiesced(() -> tx.execute(status -> {
+            LocalDateTime takenAt = LocalDateTime.now();
+            long lastLogId = operateLogMapper.selectMaxId();
+            FamilyState state = new FamilyState();
+            for (Person p : personMapper.selectList(new LambdaQueryWrapper<Person>().eq(Person::getFamilyId, familyId))) {
+                state.persons.put(p.getId(), PersonDiff.snapshot(p));
+            }
+            for (Relation r : relationMapper.selectByFamilyId(familyId)) {
+                state.relations.put(r.getId(), r);
+            }
+
+            FamilySnapshot snapshot = new FamilySnapshot();
+            snapshot.setFamilyId(familyId);
+            snapshot.setTakenAt(takenAt);
+            snapshot.setLastLogId(lastLogId);
+            snapshot.setPersonCount(state.persons.size());
+            snapshot.setRelationCount(state.relations.size());
+            snapshot.setData(encode(state));
+            return snapshot;
+        }));
+    }
+
+    // ==================== 还原 ====================
+
+    /**
+     * 某人在给定时刻的状态，当时尚未创建或已删除时返回 null
+     */
+    public Person personAt(Long personId, LocalDateTime asOf) {
+        Long familyId = familyAt(personId, asOf);
+        if (familyId == null) return null;
+        Map<String, Object> state = stateAt(familyId, asOf).persons.get(personId);
+        return state != null ? toPerson(personId, state) : null;
+    }
+
+    /**
+     * 家族在给定时刻的亲缘图（临时构建，不缓存）
+     */
+    public FamilyGraph graphAt(Long familyId, LocalDateTime asOf) {
+        FamilyState state = stateAt(familyId, asOf);
+        List<Person> persons = new ArrayList<>(state.persons.size());
+        for (Map.Entry<Long, Map<String, Object>> e : state.persons.entrySet()) {
+            persons.add(toPerson(e.getKey(), e.getValue()));
+        }
+        return FamilyGraph.load(familyId, persons, new ArrayList<>(state.relations.values()));
+    }
+
+    /**
+     * 从 asOf 之前最近的快照正向回放水位之后、asOf 之前的日志；没有更早的快照时，从之后最近的快照
+     * 逆向撤销 asOf 之后、水位以内的日志。家族还没有快照时读取当前状态逆向撤销，不保存快照
+     */
+    private FamilyState stateAt(Long familyId, LocalDateTime asOf) {
+        long start = System.currentTimeMillis();
+        FamilySnapshot base = snapshotMapper.selectLatestBefore(familyId, asOf);
+        boolean forward = base != null;
+        if (!forward) {
+            base = snapshotMapper.selectEarliestAfter(familyId, asOf);
+            if (base == null) base = capture(familyId);
+        }
+        FamilyState state = decode(base.getData());
+
+        List<OperateLog> logs = forward
+                ? replayLogs(familyId, base.getTakenAt().minus(REPLAY_MARGIN), asOf, base.getLastLogId(), null)
+                : replayLogs(familyId, asOf, null, null, base.getLastLogId());
+        for (int i = 0; i < logs.size(); i++) {
+            OperateLog l = forward ? logs.get(i) : logs.get(logs.size() - 1 - i);
+            try {
+                if (forward) {
+                    applyForward(state, familyId, l);
+                } else {
+                    applyBackward(state, familyId, l);
+                }
+            } catch (RuntimeException e) {
+                log.warn("回放日志失败 id={}: {}", l.getId(), e.getMessage());
+            }
+        }
+        log.debug("还原家族 familyId={} asOf={} 快照={} 方向={} 回放={} 耗时={}ms", familyId, asOf,
+                base.getTakenAt(), forward ? "正向" : "逆向", logs.size(), System.currentTimeMillis() - start);
+        return state;
+    }
+
+    /**
+     * 时间在 (from, to]（to 为 null 时不限）且 ID 在 (afterId, upToId]（为 null 时不限）内的人物/关系日志，
+     * 按 ID（即写入顺序）升序；窗口早于热表保留期的部分取自归档
+     */
+    private List<OperateLog> replayLogs(Long familyId, LocalDateTime from, LocalDateTime to, Long afterId, Long upToId) {
+        Map<Long, OperateLog> logs = new HashMap<>();
+        for (OperateLog l : operateLogMapper.selectList(new LambdaQueryWrapper<OperateLog>()
+                .eq(OperateLog::getFamilyId, familyId)
+                .gt(OperateLog::getCreatedAt, from)
+                .le(to != null, OperateLog::getCreatedAt, to)
+                .gt(afterId != null, OperateLog::getId, afterId)
+                .le(upToId != null, OperateLog::getId, upToId)
+                .in(OperateLog::getOperateType, REPLAY_TYPES))) {
+            logs.put(l.getId(), l);
+        }
+        OperateLogDTO.QueryParams params = new OperateLogDTO.QueryParams();
+        params.setFamilyId(familyId);
+        params.setStartTime(from);
+        params.setEndTime(to);
+        try {
+            for (OperateLog l : operateLogArchive.query(params, 0, Integer.MAX_VALUE)) {
+                if (!l.getCreatedAt().isAfter(from) || !REPLAY_TYPES.contains(l.getOperateType())) continue;
+                if (afterId != null && l.getId() <= afterId) continue;
+                if (upToId != null && l.getId() > upToId) continue;
+                logs.putIfAbsent(l.getId(), l);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取归档日志失败", e);
+        }
+        List<OperateLog> sorted = new ArrayList<>(logs.values());
+        sorted.sort(Comparator.comparing(OperateLog::getId));
+        return sorted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyForward(FamilyState state, Long familyId, OperateLog l) {
+        Map<String, Object> d = parse(l.getDetail());
+        Long id = l.getTargetId();
+        switch (l.getOperateType()) {
+            case OperateLog.OperateType.PERSON_ADD:
+                Map<String, Object> added = new LinkedHashMap<>(d);
+                added.putIfAbsent("familyId", familyId);
+                state.persons.put(id, added);
+                break;
+            case OperateLog.OperateType.PERSON_EDIT:
+                Map<String, Object> p = state.persons.get(id);
+                if (p == null && d.get("state") instanceof Map) {
+                    // 从其他家族转入
+                    p = new LinkedHashMap<>((Map<String, Object>) d.get("state"));
+                    state.persons.put(id, p);
+                } else if (p != null && PersonDiff.isEncoded(d)) {
+                    PersonDiff.applyForward(p, (Map<String, Object>) d.get("changes"));
+                } else if (p != null && d.get("after") instanceof Map) {
+                    p.putAll((Map<String, Object>) d.get("after"));
+                }
+                // 转出到其他家族
+                if (p != null && !inFamily(p, familyId)) state.removePerson(id);
+                break;
+            case OperateLog.OperateType.PERSON_DELETE:
+                state.removePerson(id);
+                break;
+            case OperateLog.OperateType.RELATION_ADD:
+                state.relations.put(id, toRelation(id, d));
+                break;
+            case OperateLog.OperateType.RELATION_DELETE:
+                state.relations.remove(id);
+                break;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyBackward(FamilyState state, Long familyId, OperateLog l) {
+        Map<String, Object> d = parse(l.getDetail());
+        Long id = l.getTargetId();
+        switch (l.getOperateType()) {
+            case OperateLog.OperateType.PERSON_ADD:
+                state.removePerson(id);
+                break;
+            case OperateLog.OperateType.PERSON_EDIT:
+                Map<String, Object> p = state.persons.get(id);
+                if (p == null && d.get("state") instanceof Map) {
+                    // 已转出到其他家族：由编辑后的完整状态撤销出编辑前的状态
+                    p = new LinkedHashMap<>((Map<String, Object>) d.get("state"));
+                    state.persons.put(id, p);
+                }
+                if (p == null) break;
+                if (PersonDiff.isEncoded(d)) {
+                    PersonDiff.applyBackward(p, (Map<String, Object>) d.get("changes"));
+                } else if (d.get("before") instanceof Map) {
+                    p.putAll((Map<String, Object>) d.get("before"));
+                }
+                // 编辑前不属于本家族（由其他家族转入）
+                if (!inFamily(p, familyId)) state.removePerson(id);
+                break;
+            case OperateLog.OperateType.PERSON_DELETE:
+                Map<String, Object> deleted = new LinkedHashMap<>(d);
+                Object relations = deleted.remove("relations");
+                deleted.putIfAbsent("familyId", familyId);
+                state.persons.put(id, deleted);
+                if (relations instanceof List) {
+                    for (Object r : (List<Object>) relations) {
+                        Map<String, Object> m = (Map<String, Object>) r;
+                        Long rid = Long.valueOf(m.get("id").toString());
+                        state.relations.put(rid, toRelation(rid, m));
+                    }
+                }
+                break;
+            case OperateLog.OperateType.RELATION_ADD:
+                state.relations.remove(id);
+                break;
+            case OperateLog.OperateType.RELATION_DELETE:
+                state.relations.put(id, toRelation(id, d));
+                break;
+        }
+    }
+
+    private static boolean inFamily(Map<String, Object> person, Long familyId) {
+        Object f = person.get("familyId");
+        return f == null || familyId.toString().equals(f.toString());
+    }
+
+    /**
+     * 人物在给定时刻所属的家族，由其人物日志推出：取该时刻之前最后一条日志的家族（已删除时为 null）；
+     * 该时刻之前没有日志时看之后的第一条：新增说明当时尚未创建，转家族的编辑取转出前的家族。
+     * 热表中没有时查归档，都没有任何日志时取当前所属家族
+     */
+    @SuppressWarnings("unchecked")
+    private Long familyAt(Long personId, LocalDateTime asOf) {
+        OperateLog last = operateLogMapper.selectOne(personLogs(personId)
+                .le(OperateLog::getCreatedAt, asOf)
+                .orderByDesc(OperateLog::getCreatedAt, OperateLog::getId)
+                .last("LIMIT 1"));
+        if (last == null) {
+            // 归档中的日志都早于热表：热表中该时刻之前没有日志时，最后一条在归档中
+            OperateLogDTO.QueryParams params = OperateLogService.targetParams(personId, null);
+            params.setEndTime(asOf);
+            last = archivedPersonLogs(params).stream().findFirst().orElse(null);
+        }
+        if (last != null) {
+            if (OperateLog.OperateType.PERSON_DELETE.equals(last.getOperateType())) return null;
+            Map<String, Object> d = parse(last.getDetail());
+            if (d.get("state") instanceof Map) {
+                Object f = ((Map<String, Object>) d.get("state")).get("familyId");
+                if (f != null) return Long.valueOf(f.toString());
+            }
+            return last.getFamilyId();
+        }
+        // 该时刻之前没有任何日志：之后的第一条若在归档中，说明热表中没有更早的
+        OperateLogDTO.QueryParams params = OperateLogService.targetParams(personId, null);
+        params.setStartTime(asOf);
+        List<OperateLog> archived = archivedPersonLogs(params);
+        OperateLog next = archived.stream().filter(l -> l.getCreatedAt().isAfter(asOf))
+                .reduce((a, b) -> b).orElse(null);
+        if (next == null) {
+            next = operateLogMapper.selectOne(personLogs(personId)
+                    .gt(OperateLog::getCreatedAt, asOf)
+                    .orderByAsc(OperateLog::getCreatedAt, OperateLog::getId)
+                    .last("LIMIT 1"));
+        }
+        if (next != null) {
+            if (OperateLog.OperateType.PERSON_ADD.equals(next.getOperateType())) return null;
+            Map<String, Object> d = parse(next.getDetail());
+            if (PersonDiff.isEncoded(d) && ((Map<String, Object>) d.get("changes")).get("familyId") instanceof List) {
+                Object f = ((List<Object>) ((Map<String, Object>) d.get("changes")).get("familyId")).get(0);
+                return f != null ? Long.valueOf(f.toString()) : null;
+            }
+            return next.getFamilyId();
+        }
+        Person p = personMapper.selectById(personId);
+        return p != null ? p.getFamilyId() : null;
+    }
+
+    /** 归档中某人的人物日志，按时间倒序 */
+    private List<OperateLog> archivedPersonLogs(OperateLogDTO.QueryParams params) {
+        params.setTargetType("PERSON");
+        List<OperateLog> logs = operateLogService.archived(params, Integer.MAX_VALUE);
+        logs.removeIf(l -> !PERSON_TYPES.contains(l.getOperateType()));
+        return logs;
+    }
+
+    private static LambdaQueryWrapper<OperateLog> personLogs(Long personId) {
+        return new LambdaQueryWrapper<OperateLog>()
+                .eq(OperateLog::getTargetId, personId)
+                .in(OperateLog::getOperateType, PERSON_TYPES);
+    }
+
+    // ==================== 编解码 ====================
+
+    private byte[] encode(FamilyState state) {
+        List<Map<String, Object>> persons = new ArrayList<>(state.persons.size());
+        for (Map.Entry<Long, Map<String, Object>> e : state.persons.entrySet()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", e.getKey());
+            m.putAll(e.getValue());
+            persons.add(m);
+        }
+        List<Map<String, Object>> relations = new ArrayList<>(state.relations.size());
+        for (Relation r : state.relations.values()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", r.getId());
+            m.put("fromId", r.getFromId());
+            m.put("toId", r.getToId());
+            m.put("type", r.getType());
+            relations.add(m);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(out, Map.of("persons", persons, "relations", relations));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private FamilyState decode(byte[] data) {
+        Map<String, List<Map<String, Object>>> raw;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            raw = objectMapper.readValue(in, new TypeReference<Map<String, List<Map<String, Object>>>>() {
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("家族快照损坏", e);
+        }
+        FamilyState state = new FamilyState();
+        for (Map<String, Object> m : raw.getOrDefault("persons", List.of())) {
+            Long id = Long.valueOf(m.remove("id").toString());
+            state.persons.put(id, m);
+        }
+        for (Map<String, Object> m : raw.getOrDefault("relations", List.of())) {
+            Long id = Long.valueOf(m.get("id").toString());
+            state.relations.put(id, toRelation(id, m));
+        }
+        return state;
+    }
+
+    private Map<String, Object> parse(String detail) {
+        if (detail == null || detail.isBlank()) return new LinkedHashMap<>();
+        try {
+            return objectMapper.readValue(detail, new TypeReference<LinkedHashMap<String, Object>>() {
+            });
+        } catch (IOException e) {
+            log.warn("解析日志详情失败: {}", e.getMessage());
+            return new LinkedHashMap<>();
+        }
+    }
+
+    private static Person toPerson(Long id, Map<String, Object> state) {
+        Person p = new Person();
+        PersonDiff.copyTo(state, p);
+        p.setId(id);
+        return p;
+    }
+
+    private static Relation toRelation(Long id, Map<String, Object> m) {
+        Relation r = new Relation();
+        r.setId(id);
+        r.setFromId(Long.valueOf(m.get("fromId").toString()));
+        r.setToId(Long.valueOf(m.get("toId").toString()));
+        r.setType((String) m.get("type"));
+        return r;
+    }
+
+    /**
+     * 回放中的家族状态：人物 ID -> 审计字段，关系 ID -> 关系
+     */
+    private static class FamilyState {
+        private final Map<Long, Map<String, Object>> persons = new LinkedHashMap<>();
+        private final Map<Long, Relation> relations = new LinkedHashMap<>();
+
+        /** 删除人物及其全部关系 */
+        void removePerson(Long id) {
+            persons.remove(id);
+            relations.values().removeIf(r -> id.equals(r.getFromId()) || id.equals(r.getToId()));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.genealogy.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.genealogy.dto.GenerationChangeDTO;
+import com.genealogy.dto.GenerationJobDTO;
+import com.genealogy.entity.Family;
+import com.genealogy.entity.Person;
+import com.genealogy.entity.Relation;
+import com.genealogy.mapper.RelationMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * 世代重算服务
+ * 按亲子关系对整个家族做一次拓扑排序（Kahn），子女世代 = 父母世代最大值 + 1；
+ * 没有父母、但配偶有父母的人物（嫁入/入赘）取配偶的世代；真正的始祖保留手工录入的世代（为空时取 1）。
+ * 变更按批写回，结果以任务形式保存变更明细。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class GenerationService {
+
+    /** 写回时每批更新的行数 */
+    private static final int BATCH_SIZE = 1000;
+
+    /** 保留的历史任务数 */
+    private static final int MAX_JOBS = 50;
+
+    private final PersonService personService;
+    private final FamilyService familyService;
+    private final RelationMapper relationMapper;
+    private final FamilyGraphService familyGraphService;
+    private final FamilyCacheService familyCacheService;
+    private final PersonSuggestService personSuggestService;
+
+    private final Map<String, GenerationJobDTO> jobs = new ConcurrentHashMap<>();
+    private final Deque<String> jobOrder = new ConcurrentLinkedDeque<>();
+
+    /** 创建任务（尚未执行） */
+    public GenerationJobDTO createJob(Long familyId, boolean dryRun) {
+        GenerationJobDTO job = new GenerationJobDTO();
+        job.setJobId(UUID.randomUUID().toString().replace("-", ""));
+        job.setFamilyId(familyId);
+        job.setDryRun(dryRun);
+        job.setStatus("RUNNING");
+        job.setStartedAt(LocalDateTime.now());
+        jobs.put(job.getJobId(), job);
+        jobOrder.addLast(job.getJobId());
+        while (jobOrder.size() > MAX_JOBS) {
+            String oldest = jobOrder.pollFirst();
+            if (oldest != null) jobs.remove(oldest);
+        }
+        return job;
+    }
+
+    public GenerationJobDTO getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /** 在后台线程执行任务 */
+    @Async
+    public void runAsync(GenerationJobDTO job) {
+        run(job);
+    }
+
+    /**
+     * 定时重算全部家族，cron 由 genealogy.generation.cron 配置，默认关闭
+     */
+    @Scheduled(cron = "${genealogy.generation.cron:-}")
+    public void recomputeAll() {
+        for (Family f : familyService.list()) {
+            GenerationJobDTO job = createJob(f.getId(), false);
+            run(job);
+        }
+    }
+
+    /** 执行任务，异常记录在任务上 */
+    public void run(GenerationJobDTO job) {
+        long start = System.currentTimeMillis();
+        try {
+            recompute(job);
+            job.setStatus("DONE");
+            log.info("世代重算 familyId={} 人数={} 变更={} 成环跳过={} 耗时={}ms",
+                    job.getFamilyId(), job.getTotal(), job.getChanged(), job.getSkipped(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("世代重算失败 familyId={}", job.getFamilyId(), e);
+            job.setStatus("FAILED");
+            job.setError(e.getMessage());
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+        }
+    }
+
+    private void recompute(GenerationJobDTO job) {
+        Long familyId = job.getFamilyId();
+        List<Person> persons = personService.list(new LambdaQueryWrapper<Person>()
+                .select(Person::getId, Person::getName, Person::getGeneration)
+                .eq(Person::getFamilyId, familyId));
+        List<Relation> relations = relationMapper.selectByFamilyId(familyId);
+
+        int[] computed = compute(persons, relations);
+
+        List<GenerationChangeDTO> changes = new ArrayList<>();
+        List<Person> updates = new ArrayList<>();
+        int skipped = 0;
+        for (int i = 0; i < persons.size(); i++) {
+            Person p = persons.get(i);
+            if (computed[i] == Integer.MIN_VALUE) {
+                skipped++;
+                continue;
+            }
+            if (Objects.equals(p.getGeneration(), computed[i])) continue;
+            changes.add(new GenerationChangeDTO(p.getId(), p.getName(), p.getGeneration(), computed[i]));
+            Person update = new Person();
+            update.setId(p.getId());
+            update.setGeneration(computed[i]);
+            updates.add(update);
+        }
+
+        if (!job.getDryRun() && !updates.isEmpty()) {
+            personService.updateBatchById(updates, BATCH_SIZE);
+            familyGraphService.evict(familyId);
+            personSuggestService.evict(familyId);
+            familyCacheService.bump(familyId);
+        }
+        job.setTotal(persons.size());
+        job.setChanged(changes.size());
+        job.setSkipped(skipped);
+        job.setChanges(changes);
+    }
+
+    /**
+     * 带权最长路径拓扑排序：亲子边权重 1，配偶（有父母）→ 配偶（无父母）边权重 0
+     *
+     * @return 与 persons 对应的新世代，成环无法确定的为 Integer.MIN_VALUE
+     */
+    private int[] compute(List<Person> persons, List<Relation> relations) {
+        int n = persons.size();
+        Map<Long, Integer> indexOf = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            indexOf.put(persons.get(i).getId(), i);
+        }
+
+        // 只保留两端都在本家族的边，先标记谁有父母
+        int m = relations.size();
+        int[] from = new int[m];
+        int[] to = new int[m];
+        boolean[] spouse = new boolean[m];
+        boolean[] hasParent = new boolean[n];
+        int edges = 0;
+        for (Relation r : relations) {
+            Integer a = indexOf.get(r.getFromId());
+            Integer b = indexOf.get(r.getToId());
+            if (a == null || b == null || a.equals(b)) continue;
+            from[edges] = a;
+            to[edges] = b;
+            spouse[edges] = "spouse".equals(r.getType());
+            if (!spouse[edges]) hasParent[b] = true;
+            edges++;
+        }
+
+        // 建 CSR 邻接：out[start[u], start[u+1]) 为 u 的出边，weight 为世代增量
+        int[] start = new int[n + 1];
+        int[] src = new int[edges];
+        int[] dst = new int[edges];
+        int[] w = new int[edges];
+        int kept = 0;
+        for (int e = 0; e < edges; e++) {
+            int a = from[e], b = to[e];
+            if (spouse[e]) {
+                if (hasParent[a] == hasParent[b]) continue;
+                if (hasParent[b]) {
+                    int t = a;
+                    a = b;
+                    b = t;
+                }
+                src[kept] = a;
+                dst[kept] = b;
+                w[kept] = 0;
+            } else {
+                src[kept] = a;
+                dst[kept] = b;
+                w[kept] = 1;
+            }
+            start[a + 1]++;
+            kept++;
+        }
+        for (int i = 0; i < n; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] out = new int[kept];
+        int[] outW = new int[kept];
+        int[] fill = Arrays.copyOf(start, n);
+        int[] inDegree = new int[n];
+        for (int e = 0; e < kept; e++) {
+            int k = fill[src[e]]++;
+            out[k] = dst[e];
+            outW[k] = w[e];
+            inDegree[dst[e]]++;
+        }
+
+        int[] gen = new int[n];
+        Arrays.fill(gen, Integer.MIN_VALUE);
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for (int i = 0; i < n; i++) {
+            if (inDegree[i] == 0) {
+                Integer anchor = persons.get(i).getGeneration();
+                gen[i] = anchor != null ? anchor : 1;
+                queue[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int u = queue[head++];
+            for (int k = start[u]; k < start[u + 1]; k++) {
+                int v = out[k];
+                gen[v] = Math.max(gen[v], gen[u] + outW[k]);
+                if (--inDegree[v] == 0) queue[tail++] = v;
+            }
+        }
+        // 未出队的人物位于环上或环的下游，保持原值
+        for (int i = 0; i < n; i++) {
+            if (inDegree[i] > 0) gen[i] = Integer.MIN_VALUE;
+        }
+        return gen;
+    }
+}
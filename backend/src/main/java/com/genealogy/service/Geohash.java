@@ -0,0 +1,85 @@
+package com.genealogy.service;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohash 编码：前缀相同的编码落在同一网格内，可用 B+ 树索引做前缀范围扫描
+ */
+final class Geohash {
+
+    /** 存储精度（约 3.7cm × 1.9cm） */
+    static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+    }
+
+    static String encode(double lat, double lng, int precision) {
+        double minLat = -90, maxLat = 90, minLng = -180, maxLng = 180;
+        StringBuilder sb = new StringBuilder(precision);
+        boolean even = true;
+        int bit = 0, ch = 0;
+        while (sb.length() < precision) {
+            if (even) {
+                double mid = (minLng + maxLng) / 2;
+                if (lng >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLng = mid;
+                } else {
+                    ch <<= 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch <<= 1;
+                    maxLat = mid;
+                }
+            }
+            even = !even;
+            if (++bit == 5) {
+                sb.append(BASE32[ch]);
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return sb.toString();
+    }
+
+    /** 该精度下单个网格的经度跨度 */
+    static double cellWidth(int precision) {
+        return 360.0 / (1L << ((5 * precision + 1) / 2));
+    }
+
+    /** 该精度下单个网格的纬度跨度 */
+    static double cellHeight(int precision) {
+        return 180.0 / (1L << (5 * precision / 2));
+    }
+
+    /**
+     * 覆盖矩形区域的网格集合；网格数超过 maxCells 时返回 null
+     */
+    static Set<String> cover(double minLat, double minLng, double maxLat, double maxLng, int precision, int maxCells) {
+        double w = cellWidth(precision), h = cellHeight(precision);
+        // 对齐到网格边界，逐格取中心点编码
+        double lat0 = Math.floor((minLat + 90) / h) * h - 90;
+        double lng0 = Math.floor((minLng + 180) / w) * w - 180;
+        long rows = (long) Math.ceil((maxLat - lat0) / h);
+        long cols = (long) Math.ceil((maxLng - lng0) / w);
+        if (rows * cols > maxCells) return null;
+        Set<String> cells = new LinkedHashSet<>();
+        for (long r = 0; r < Math.max(rows, 1); r++) {
+            double lat = Math.min(lat0 + (r + 0.5) * h, 90);
+            for (long c = 0; c < Math.max(cols, 1); c++) {
+                double lng = Math.min(lng0 + (c + 0.5) * w, 180);
+                cells.add(encode(lat, lng, precision));
+            }
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,143 @@
+package com.genealogy.service;
+
+import com.genealogy.dto.PathStepDTO;
+import com.genealogy.entity.Person;
+import com.genealogy.entity.Relation;
+import com.genealogy.mapper.PersonMapper;
+import com.genealogy.mapper.RelationMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 亲缘路径查找服务
+ * 全库关系图在首次查询时流式加载到内存，之后由关系/人物写接口增量维护
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KinshipPathService {
+
+    /** 跳数上限 */
+    public static final int MAX_HOPS = 20;
+
+    private final RelationMapper relationMapper;
+    private final PersonMapper personMapper;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile RelationGraph graph;
+
+    /**
+     * 查找两人之间最短的亲缘路径，可跨家族
+     *
+     * @return 路径步骤，不连通或超出跳数上限时返回 null
+     */
+    public List<PathStepDTO> findPath(Long fromId, Long toId, int maxHops) {
+        RelationGraph g = ensureLoaded();
+        List<RelationGraph.Step> steps;
+        lock.readLock().lock();
+        try {
+            steps = g.shortestPath(fromId, toId, Math.max(1, Math.min(maxHops, MAX_HOPS)));
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (steps == null) return null;
+
+        List<Long> ids = steps.stream().map(s -> s.personId).collect(Collectors.toList());
+        Map<Long, Person> persons = personMapper.selectBatchIds(ids).stream()
+                .collect(Collectors.toMap(Person::getId, Function.identity()));
+
+        List<PathStepDTO> result = new ArrayList<>();
+        for (RelationGraph.Step s : steps) {
+            PathStepDTO dto = new PathStepDTO();
+            dto.setPersonId(s.personId);
+            Person p = persons.get(s.personId);
+            if (p != null) {
+                dto.setName(p.getName());
+                dto.setGender(p.getGender());
+                dto.setFamilyId(p.getFamilyId());
+            }
+            if (s.kind >= 0) {
+                dto.setRelation(relationName(s.kind & ~RelationGraph.ADOPTED));
+                dto.setAdopted((s.kind & RelationGraph.ADOPTED) != 0);
+            }
+            result.add(dto);
+        }
+        return result;
+    }
+
+    // ==================== 写操作同步 ====================
+    // 先取写锁再判断是否已加载：加载期间的写操作等待扫描结束后再应用，不会因扫描读不到而丢失
+
+    public void addRelation(Relation r) {
+        lock.writeLock().lock();
+        try {
+            if (graph == null) return;
+            graph.addRelation(r.getFromId(), r.getToId(), r.getType());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeRelation(Relation r) {
+        lock.writeLock().lock();
+        try {
+            if (graph == null) return;
+            graph.removeRelation(r.getFromId(), r.getToId(), r.getType());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removePerson(Long personId) {
+        lock.writeLock().lock();
+        try {
+            if (graph == null) return;
+            graph.removePerson(personId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== 加载 ====================
+
+    /**
+     * 首次使用时加载；加载期间持有写锁，并发的写操作在扫描结束后应用，
+     * 提交较早的写操作可能被重复应用，图的加边是幂等的
+     */
+    private RelationGraph ensureLoaded() {
+        RelationGraph g = graph;
+        if (g != null) return g;
+        lock.writeLock().lock();
+        try {
+            if (graph == null) {
+                long start = System.currentTimeMillis();
+                long expected = relationMapper.countAll();
+                RelationGraph loaded = new RelationGraph((int) Math.min(expected, Integer.MAX_VALUE / 4));
+                relationMapper.scanAll(ctx -> {
+                    Relation r = ctx.getResultObject();
+                    loaded.addRelation(r.getFromId(), r.getToId(), r.getType());
+                });
+                graph = loaded;
+                log.info("加载全库关系图 人物={} 关系={} 耗时={}ms",
+                        loaded.nodeCount(), loaded.edgeCount(), System.currentTimeMillis() - start);
+            }
+            return graph;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private String relationName(int direction) {
+        switch (direction) {
+            case RelationGraph.PARENT: return "parent";
+            case RelationGraph.CHILD: return "child";
+            default: return "spouse";
+        }
+    }
+}
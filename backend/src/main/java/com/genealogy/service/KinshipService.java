@@ -0,0 +1,253 @@
+package com.genealogy.service;
+
+import com.genealogy.dto.KinshipDTO;
+import com.genealogy.entity.Person;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 亲属称谓计算
+ * 血亲称谓由家族图上的最近共同祖先（倍增表）得出：查询人向上 up 代、对方向上 down 代相遇，
+ * 再按祖先链上各人的性别区分堂/表、内/外；姻亲称谓经由双方配偶换算一次。
+ */
+@Service
+@RequiredArgsConstructor
+public class KinshipService {
+
+    /** 单次批量查询的人数上限 */
+    public static final int MAX_BATCH = 500;
+
+    private static final String[] ANCESTOR = {"", "", "祖", "曾祖", "高祖", "天祖", "烈祖", "太祖", "远祖", "鼻祖"};
+    private static final String[] DESCENDANT = {"", "", "孙", "曾孙", "玄孙", "来孙", "晜孙", "仍孙", "云孙", "耳孙"};
+
+    /** 血亲的配偶 */
+    private static final Map<String, String> SPOUSE_OF = new HashMap<>();
+
+    /** 配偶的血亲，[0] 为丈夫称呼妻子一方，[1] 为妻子称呼丈夫一方 */
+    private static final Map<String, String[]> SPOUSE_RELATIVE = new HashMap<>();
+
+    static {
+        String[][] spouseOf = {
+                {"父亲", "母亲"}, {"母亲", "父亲"},
+                {"祖父", "祖母"}, {"祖母", "祖父"}, {"外祖父", "外祖母"}, {"外祖母", "外祖父"},
+                {"曾祖父", "曾祖母"}, {"曾祖母", "曾祖父"},
+                {"哥哥", "嫂子"}, {"弟弟", "弟媳"}, {"姐姐", "姐夫"}, {"妹妹", "妹夫"},
+                {"儿子", "儿媳"}, {"女儿", "女婿"}, {"孙子", "孙媳"}, {"孙女", "孙女婿"},
+                {"外孙", "外孙媳"}, {"外孙女", "外孙女婿"},
+                {"伯父", "伯母"}, {"叔父", "婶母"}, {"姑母", "姑父"}, {"舅父", "舅母"}, {"姨母", "姨父"},
+                {"侄子", "侄媳"}, {"侄女", "侄女婿"}, {"外甥", "外甥媳"}, {"外甥女", "外甥女婿"},
+                {"堂兄", "堂嫂"}, {"堂弟", "堂弟媳"}, {"堂姐", "堂姐夫"}, {"堂妹", "堂妹夫"},
+                {"表兄", "表嫂"}, {"表弟", "表弟媳"}, {"表姐", "表姐夫"}, {"表妹", "表妹夫"},
+        };
+        for (String[] e : spouseOf) SPOUSE_OF.put(e[0], e[1]);
+
+        String[][] spouseRelative = {
+                {"父亲", "岳父", "公公"}, {"母亲", "岳母", "婆婆"},
+                {"哥哥", "内兄", "大伯子"}, {"弟弟", "内弟", "小叔子"},
+                {"姐姐", "大姨子", "大姑子"}, {"妹妹", "小姨子", "小姑子"},
+                {"儿子", "继子", "继子"}, {"女儿", "继女", "继女"},
+        };
+        for (String[] e : spouseRelative) SPOUSE_RELATIVE.put(e[0], new String[]{e[1], e[2]});
+    }
+
+    private final FamilyGraphService familyGraphService;
+    private final PersonService personService;
+
+    /**
+     * 批量计算 fromId 对多人的称谓，仅限同一家族；不在本家族的人物返回 title 为 null 的结果，
+     * 查询人未加入家族时全部如此
+     *
+     * @return 查询人不存在时返回 null
+     */
+    public List<KinshipDTO> titles(Long fromId, List<Long> toIds) {
+        Person from = personService.getById(fromId);
+        if (from == null) return null;
+        if (from.getFamilyId() == null) {
+            List<KinshipDTO> result = new ArrayList<>(toIds.size());
+            for (Long toId : toIds) {
+                KinshipDTO dto = new KinshipDTO();
+                dto.setPersonId(toId);
+                result.add(dto);
+            }
+            return result;
+        }
+        FamilyGraph graph = familyGraphService.get(from.getFamilyId());
+
+        List<Person> fromSpouses = graph.spouses(fromId);
+        List<KinshipDTO> result = new ArrayList<>(toIds.size());
+        for (Long toId : toIds) {
+            KinshipDTO dto = new KinshipDTO();
+            dto.setPersonId(toId);
+            Person to = graph.getPerson(toId);
+            if (to != null) {
+                dto.setName(to.getName());
+                dto.setGender(to.getGender());
+                resolve(graph, from, to, fromSpouses, dto);
+            }
+            result.add(dto);
+        }
+        return result;
+    }
+
+    private void resolve(FamilyGraph graph, Person a, Person b, List<Person> aSpouses, KinshipDTO dto) {
+        FamilyGraph.Lineage lineage = graph.lineage(a.getId(), b.getId());
+        if (lineage != null) {
+            dto.setUp(lineage.up);
+            dto.setDown(lineage.down);
+            dto.setTitle(blood(lineage, b));
+            dto.setInLaw(false);
+            return;
+        }
+
+        for (Person s : aSpouses) {
+            if (s.getId().equals(b.getId())) {
+                dto.setTitle(male(b) ? "丈夫" : "妻子");
+                dto.setInLaw(true);
+                return;
+            }
+        }
+
+        // 对方是本人血亲的配偶
+        FamilyGraph.Lineage best = null;
+        Person via = null;
+        for (Person s : graph.spouses(b.getId())) {
+            FamilyGraph.Lineage l = graph.lineage(a.getId(), s.getId());
+            if (l != null && (best == null || l.up + l.down < best.up + best.down)) {
+                best = l;
+                via = s;
+            }
+        }
+        if (best != null) {
+            String t = blood(best, via);
+            dto.setTitle(SPOUSE_OF.getOrDefault(t, t + "的配偶"));
+            dto.setInLaw(true);
+            return;
+        }
+
+        // 对方是本人配偶的血亲
+        for (Person s : aSpouses) {
+            FamilyGraph.Lineage l = graph.lineage(s.getId(), b.getId());
+            if (l != null && (best == null || l.up + l.down < best.up + best.down)) {
+                best = l;
+            }
+        }
+        if (best != null) {
+            String t = blood(best, b);
+            String[] titles = SPOUSE_RELATIVE.get(t);
+            dto.setTitle(titles != null ? titles[male(a) ? 0 : 1] : (male(a) ? "妻子的" : "丈夫的") + t);
+            dto.setInLaw(true);
+        }
+    }
+
+    /**
+     * 血亲称谓，target 为被称呼的人；a、b 分别为查询人与对方的祖先链
+     */
+    private String blood(FamilyGraph.Lineage l, Person target) {
+        int up = l.up, down = l.down;
+        Person[] a = l.fromChain;
+        Person[] b = l.toChain;
+        boolean m = male(target);
+
+        if (up == 0 && down == 0) return "本人";
+        if (down == 0) {
+            if (up == 1) return m ? "父亲" : "母亲";
+            if (up >= ANCESTOR.length) return "远祖";
+            String outer = a != null && !male(a[1]) ? "外" : "";
+            return outer + ANCESTOR[up] + (m ? "父" : "母");
+        }
+        if (up == 0) {
+            if (down == 1) return m ? "儿子" : "女儿";
+            if (down >= DESCENDANT.length) return "后裔";
+            String outer = b != null && !male(b[down - 1]) ? "外" : "";
+            return outer + DESCENDANT[down] + (m ? "" : "女");
+        }
+        if (a == null || b == null) return generic(up, down);
+
+        if (up == 1 && down == 1) return sibling("", target, a[0]);
+        if (up == 1) {
+            boolean viaBrother = male(b[down - 1]);
+            String base = viaBrother ? "侄" : "外甥";
+            if (down == 2) return viaBrother ? (m ? "侄子" : "侄女") : (m ? "外甥" : "外甥女");
+            if (down == 3) return base + "孙" + (m ? "" : "女");
+        }
+        if (down == 1) {
+            Person p = a[up - 1];
+            if (up == 2) {
+                if (male(p)) return m ? elder("伯父", "叔父", "叔伯", target, p) : "姑母";
+                return m ? "舅父" : "姨母";
+            }
+            if (up == 3) {
+                String outer = male(a[1]) ? "" : "外";
+                if (male(p)) return outer + (m ? elder("伯祖父", "叔祖父", "叔伯祖父", target, p) : "姑祖母");
+                return outer + (m ? "舅祖父" : "姨祖母");
+            }
+        }
+        if (up == 2 && down == 2) {
+            return sibling(male(a[1]) && male(b[1]) ? "堂" : "表", target, a[0]);
+        }
+        if (up == 2 && down == 3) {
+            String prefix = male(a[1]) && male(b[2]) ? "堂" : "表";
+            return prefix + (male(b[1]) ? (m ? "侄" : "侄女") : (m ? "外甥" : "外甥女"));
+        }
+        if (up == 3 && down == 2) {
+            Person parent = a[1];
+            if (!male(parent)) return m ? "表舅" : "表姨";
+            if (male(a[2]) && male(b[1])) return m ? elder("堂伯", "堂叔", "堂叔伯", target, parent) : "堂姑";
+            return m ? elder("表伯", "表叔", "表叔伯", target, parent) : "表姑";
+        }
+        if (up == 3 && down == 3) {
+            boolean paternal = male(a[1]) && male(a[2]) && male(b[1]) && male(b[2]);
+            return sibling(paternal ? "从堂" : "从表", target, a[0]);
+        }
+        return generic(up, down);
+    }
+
+    /** 同辈称谓，按出生日期区分兄/弟、姐/妹，无法比较时合称 */
+    private String sibling(String prefix, Person target, Person self) {
+        int cmp = compareAge(target, self);
+        if (male(target)) {
+            if (prefix.isEmpty()) return cmp < 0 ? "哥哥" : cmp > 0 ? "弟弟" : "兄弟";
+            return prefix + (cmp < 0 ? "兄" : cmp > 0 ? "弟" : "兄弟");
+        }
+        if (prefix.isEmpty()) return cmp < 0 ? "姐姐" : cmp > 0 ? "妹妹" : "姐妹";
+        return prefix + (cmp < 0 ? "姐" : cmp > 0 ? "妹" : "姐妹");
+    }
+
+    /** 比参照人年长用 older，年幼用 younger，无法比较时用合称 either */
+    private String elder(String older, String younger, String either, Person target, Person reference) {
+        int cmp = compareAge(target, reference);
+        return cmp < 0 ? older : cmp > 0 ? younger : either;
+    }
+
+    /** 远房血亲，只给出辈分差 */
+    private String generic(int up, int down) {
+        int diff = up - down;
+        if (diff == 0) return "同辈族亲";
+        return (diff > 0 ? "长" : "晚") + Math.abs(diff) + "辈族亲";
+    }
+
+    /**
+     * 按出生日期排序键比较年龄，x 更年长返回负数；任一方日期缺失或无法识别时返回 0，
+     * 同年时仅在双方都精确到日时比较月日
+     */
+    private int compareAge(Person x, Person y) {
+        int kx = birthKey(x);
+        int ky = birthKey(y);
+        if (kx == 0 || ky == 0) return 0;
+        int cmp = Integer.compare(kx / 10000, ky / 10000);
+        if (cmp != 0 || kx % 100 == 0 || ky % 100 == 0) return cmp;
+        return Integer.compare(kx, ky);
+    }
+
+    /** 出生日期排序键，尚未回填时现场解析 */
+    private int birthKey(Person p) {
+        if (p.getBirthSort() != null) return p.getBirthSort();
+        return DateKey.sortOf(DateKey.parse(p.getBirthDate()));
+    }
+
+    private boolean male(Person p) {
+        return "male".equals(p.getGender());
+    }
+}
@@ -0,0 +1,95 @@
+package com.genealogy.service;
+
+import com.genealogy.dto.LineageDTO;
+import com.genealogy.entity.Relation;
+import com.genealogy.mapper.PersonClosureMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * 祖先/后代查询服务
+ * 基于闭包表 t_person_closure，亲子/收养关系的增删由写接口同步维护，配偶关系不参与
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LineageService {
+
+    /** 查询代数上限 */
+    public static final int MAX_DEPTH = 100;
+
+    private final PersonClosureMapper closureMapper;
+
+    /**
+     * 查询后代，可按相隔代数与世代筛选
+     */
+    public List<LineageDTO> descendants(Long personId, int maxDepth, Integer minGeneration, Integer maxGeneration) {
+        return closureMapper.selectDescendants(personId, clamp(maxDepth), minGeneration, maxGeneration);
+    }
+
+    /**
+     * 查询祖先，可按相隔代数与世代筛选
+     */
+    public List<LineageDTO> ancestors(Long personId, int maxDepth, Integer minGeneration, Integer maxGeneration) {
+        return closureMapper.selectAncestors(personId, clamp(maxDepth), minGeneration, maxGeneration);
+    }
+
+    // ==================== 写操作同步 ====================
+
+    /** 新增人物 */
+    public void addPerson(Long personId) {
+        closureMapper.insertSelf(personId);
+    }
+
+    /** 新增关系 */
+    @Transactional
+    public void addRelation(Relation r) {
+        if (!isLineage(r)) return;
+        closureMapper.insertSelf(r.getFromId());
+        closureMapper.insertSelf(r.getToId());
+        closureMapper.addPaths(r.getFromId(), r.getToId());
+    }
+
+    /** 删除关系 */
+    @Transactional
+    public void removeRelation(Relation r) {
+        if (!isLineage(r)) return;
+        closureMapper.subtractPaths(r.getFromId(), r.getToId());
+        closureMapper.deleteEmpty(r.getToId());
+    }
+
+    /**
+     * 删除人物：先逐条扣减经过其亲子关系的路径，再删除与其相关的行
+     */
+    @Transactional
+    public void removePerson(Long personId, List<Relation> relations) {
+        for (Relation r : relations) {
+            removeRelation(r);
+        }
+        closureMapper.deleteByPerson(personId);
+    }
+
+    /**
+     * 按当前关系重建某家族的闭包行（批量导入或数据修复后使用）
+     */
+    @Transactional
+    public int rebuild(Long familyId) {
+        long start = System.currentTimeMillis();
+        closureMapper.deleteByFamily(familyId);
+        int rows = closureMapper.rebuildFamily(familyId);
+        log.info("重建亲缘闭包 familyId={} 行数={} 耗时={}ms", familyId, rows, System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    private boolean isLineage(Relation r) {
+        return !"spouse".equals(r.getType());
+    }
+
+    private int clamp(int depth) {
+        return Math.max(1, Math.min(depth, MAX_DEPTH));
+    }
+}
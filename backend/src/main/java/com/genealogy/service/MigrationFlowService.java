@@ -0,0 +1,144 @@
+package com.genealogy.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.genealogy.dto.MigrationFlowDTO;
+import com.genealogy.entity.Event;
+import com.genealogy.entity.MigrationLeg;
+import com.genealogy.entity.Person;
+import com.genealogy.mapper.EventMapper;
+import com.genealogy.mapper.MigrationLegMapper;
+import com.genealogy.mapper.PersonMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 迁徙流向聚合
+ * <p>
+ * 每人的落脚点（带经纬度的出生/迁徙/定居事件）按时间排序，相邻两点构成一段路程，存入 t_migration_leg；
+ * 事件变更时只重算该人的路段。流向接口在家族的路段上按 起点-终点（及年代/世代）分组汇总，
+ * 结果随家族版本缓存。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MigrationFlowService {
+
+    /** 作为落脚点的事件类型 */
+    public static final Set<String> STOP_TYPES = Set.of("birth", "migration", "residence");
+
+    /** 汇总维度 */
+    public static final Set<String> GROUP_BY = Set.of("place", "decade", "generation");
+
+    private final MigrationLegMapper legMapper;
+    private final EventMapper eventMapper;
+    private final PersonMapper personMapper;
+    private final FamilyGraphService familyGraphService;
+
+    // ==================== 路段维护 ====================
+
+    /** 重算某人的全部路段 */
+    public void refreshPerson(Long personId) {
+        if (personId == null) return;
+        legMapper.deleteByPersonId(personId);
+        Person person = personMapper.selectById(personId);
+        if (person == null) return;
+
+        List<Event> stops = eventMapper.selectList(new LambdaQueryWrapper<Event>()
+                .eq(Event::getPersonId, personId)
+                .in(Event::getType, STOP_TYPES)
+                .isNotNull(Event::getLatitude)
+                .isNotNull(Event::getLongitude));
+        if (stops.size() < 2) return;
+        stops.sort(Comparator.comparingLong(MigrationFlowService::stopOrder).thenComparing(Event::getId));
+
+        List<MigrationLeg> legs = new ArrayList<>();
+        Event from = stops.get(0);
+        for (int i = 1; i < stops.size(); i++) {
+            Event to = stops.get(i);
+            String origin = place(from), dest = place(to);
+            if (origin.equals(dest)) continue;
+            MigrationLeg leg = new MigrationLeg();
+            leg.setId(IdWorker.getId());
+            leg.setFamilyId(person.getFamilyId());
+            leg.setPersonId(personId);
+            leg.setSeq(legs.size());
+            leg.setOrigin(origin);
+            leg.setOriginLat(from.getLatitude());
+            leg.setOriginLng(from.getLongitude());
+            leg.setDest(dest);
+            leg.setDestLat(to.getLatitude());
+            leg.setDestLng(to.getLongitude());
+            Integer sort = to.getEventSort();
+            leg.setDecade(sort != null && sort > 0 ? sort / 100000 * 10 : null);
+            legs.add(leg);
+            from = to;
+        }
+        if (!legs.isEmpty()) legMapper.insertBatch(legs);
+    }
+
+    public void removePerson(Long personId) {
+        legMapper.deleteByPersonId(personId);
+    }
+
+    /** 人物转入其他家族 */
+    public void moveFamily(Long personId, Long familyId) {
+        legMapper.updateFamilyByPersonId(personId, familyId);
+    }
+
+    /** 按现有事件重建全部路段，返回处理的人数 */
+    public int rebuild() {
+        long start = System.currentTimeMillis();
+        List<Long> personIds = legMapper.selectPersonsWithStops();
+        legMapper.delete(new LambdaQueryWrapper<>());
+        for (Long personId : personIds) {
+            refreshPerson(personId);
+        }
+        log.info("迁徙路段重建完成 人数={} 耗时={}ms", personIds.size(), System.currentTimeMillis() - start);
+        return personIds.size();
+    }
+
+    /**
+     * 落脚点顺序：有日期的按日期；无日期的出生事件排在最前，其余无日期事件排在最后
+     */
+    private static long stopOrder(Event e) {
+        Integer sort = e.getEventSort();
+        if (sort != null && sort > 0) return sort;
+        return "birth".equals(e.getType()) ? Long.MIN_VALUE : Long.MAX_VALUE;
+    }
+
+    /** 地点标识：优先地名，否则为保留两位小数的经纬度 */
+    private static String place(Event e) {
+        String location = e.getLocation();
+        if (location != null && !location.isBlank()) return location.trim();
+        return String.format(Locale.ROOT, "%.2f,%.2f", e.getLatitude(), e.getLongitude());
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 家族迁徙流向，by 为 place / decade / generation
+     */
+    public List<MigrationFlowDTO> flows(Long familyId, String by) {
+        List<MigrationFlowDTO> flows = legMapper.selectFlows(familyId, by);
+        FamilyGraph graph = familyGraphService.get(familyId);
+        for (MigrationFlowDTO f : flows) {
+            List<Long> ids = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            if (f.getSampleIds() != null && !f.getSampleIds().isEmpty()) {
+                for (String s : f.getSampleIds().split(",")) {
+                    Long id = Long.valueOf(s);
+                    Person p = graph.getPerson(id);
+                    ids.add(id);
+                    names.add(p != null ? p.getName() : "");
+                }
+            }
+            f.setPersonIds(ids);
+            f.setPersonNames(names);
+        }
+        return flows;
+    }
+}
@@ -0,0 +1,396 @@
+package com.genealogy.service;
+
+import com.baomidou.mybatisplus.core.toolkit.Sequence;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.genealogy.dto.OperateLogDTO;
+import com.genealogy.entity.OperateLog;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 操作日志冷归档
+ * <p>
+ * 每个过期分区归档为一对只追加文件：{@code <分区>.ndjson.gz} 由若干独立压缩的 gzip 块拼接而成，
+ * 每块 {@value #BLOCK_ROWS} 行 NDJSON（按时间升序）；{@code <分区>.idx} 为稀疏时间索引，
+ * 每行记录一个块的偏移、长度、行数、时间范围，以及块内各家族、操作人、操作类型、目标类型的行数。
+ * 查询时按索引跳过时间范围外或不含所查家族/操作人/类型的块，只解压可能命中的块；
+ * 计数在单一筛选条件下直接由索引得出。索引文件最后写入，存在即表示归档完整。
+ */
+@Slf4j
+@Component
+public class OperateLogArchive {
+
+    private static final int BLOCK_ROWS = 1000;
+    private static final String DATA_SUFFIX = ".ndjson.gz";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    /** 日志 ID 的生成时间与操作时间之间容许的偏差 */
+    private static final Duration ID_TIME_MARGIN = Duration.ofMinutes(1);
+
+    /** 计数结果缓存条数；归档只追加，新分区归档后清空 */
+    private static final int COUNT_CACHE_SIZE = 256;
+
+    private final ObjectMapper objectMapper;
+    private final Path dir;
+
+    /** 分区名 -> 块索引，按分区名（即时间）排序 */
+    private final ConcurrentSkipListMap<String, List<Block>> indexes = new ConcurrentSkipListMap<>();
+
+    /** 筛选条件 -> 归档中的行数，按访问顺序淘汰 */
+    private final Map<String, Long> countCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > COUNT_CACHE_SIZE;
+                }
+            });
+
+    public OperateLogArchive(ObjectMapper objectMapper,
+                             @Value("${genealogy.audit.archive-dir:./data/operate-log-archive}") String dir) {
+        this.objectMapper = objectMapper;
+        this.dir = Paths.get(dir);
+    }
+
+    // ==================== 写入 ====================
+
+    /** 分区是否已完整归档 */
+    public boolean exists(String partition) {
+        return Files.exists(dir.resolve(partition + INDEX_SUFFIX));
+    }
+
+    /**
+     * 将一个分区的日志（按时间升序）写成归档，返回行数；先写临时文件，完成后依次改名
+     */
+    public long write(String partition, Iterable<OperateLog> rows) throws IOException {
+        Files.createDirectories(dir);
+        Path data = dir.resolve(partition + DATA_SUFFIX);
+        Path index = dir.resolve(partition + INDEX_SUFFIX);
+        Path dataTmp = dir.resolve(partition + DATA_SUFFIX + ".tmp");
+        Path indexTmp = dir.resolve(partition + INDEX_SUFFIX + ".tmp");
+
+        List<Block> blocks = new ArrayList<>();
+        long total = 0;
+        try (FileOutputStream fos = new FileOutputStream(dataTmp.toFile());
+             BufferedOutputStream out = new BufferedOutputStream(fos)) {
+            List<OperateLog> buf = new ArrayList<>(BLOCK_ROWS);
+            long offset = 0;
+            for (OperateLog row : rows) {
+                buf.add(row);
+                if (buf.size() == BLOCK_ROWS) {
+                    offset += writeBlock(out, buf, offset, blocks);
+                    total += buf.size();
+                    buf.clear();
+                }
+            }
+            if (!buf.isEmpty()) {
+                writeBlock(out, buf, offset, blocks);
+                total += buf.size();
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(indexTmp, StandardCharsets.UTF_8)) {
+            for (Block b : blocks) {
+                w.write(objectMapper.writeValueAsString(b));
+                w.newLine();
+            }
+        }
+        Files.move(dataTmp, data, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexes.put(partition, blocks);
+        countCache.clear();
+        return total;
+    }
+
+    private long writeBlock(OutputStream out, List<OperateLog> rows, long offset, List<Block> blocks) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer w = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            for (OperateLog row : rows) {
+                w.write(objectMapper.writeValueAsString(row));
+                w.write('\n');
+            }
+        }
+        byte[] block = bytes.toByteArray();
+        out.write(block);
+        Block b = new Block(offset, block.length, rows.size(),
+                rows.get(0).getCreatedAt(), rows.get(rows.size() - 1).getCreatedAt(),
+                new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+        for (OperateLog row : rows) {
+            if (row.getFamilyId() != null) b.getFamilyCounts().merge(row.getFamilyId(), 1, Integer::sum);
+            if (row.getUserId() != null) b.getUserCounts().merge(row.getUserId(), 1, Integer::sum);
+            if (row.getOperateType() != null) b.getOperateTypeCounts().merge(row.getOperateType(), 1, Integer::sum);
+            if (row.getTargetType() != null) b.getTargetTypeCounts().merge(row.getTargetType(), 1, Integer::sum);
+        }
+        blocks.add(b);
+        return block.length;
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 统计归档中符合条件的日志数，结果按筛选条件缓存；
+     * 整块落在时间范围内且至多一个家族/操作人/类型条件时直接取索引中的行数，不解压
+     */
+    public long count(OperateLogDTO.QueryParams params) throws IOException {
+        ConcurrentSkipListMap<String, List<Block>> partitions = partitions();
+        String key = countKey(params);
+        Long cached = countCache.get(key);
+        if (cached != null) return cached;
+        long total = 0;
+        for (Map.Entry<String, List<Block>> e : partitions.entrySet()) {
+            for (Block b : e.getValue()) {
+                if (!mayMatch(b, params)) continue;
+                Integer n = indexedCount(b, params);
+                if (n != null) {
+                    total += n;
+                    continue;
+                }
+                for (OperateLog row : readBlock(e.getKey(), b)) {
+                    if (matches(row, params)) total++;
+                }
+            }
+        }
+        countCache.put(key, total);
+        return total;
+    }
+
+    /**
+     * 按时间倒序取符合条件的日志，跳过前 skip 条，最多 limit 条
+     */
+    public List<OperateLog> query(OperateLogDTO.QueryParams params, long skip, int limit) throws IOException {
+        List<OperateLog> result = new ArrayList<>();
+        if (limit <= 0) return result;
+        for (Map.Entry<String, List<Block>> e : partitions().descendingMap().entrySet()) {
+            List<Block> blocks = e.getValue();
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Block b = blocks.get(i);
+                if (!mayMatch(b, params)) continue;
+                // 整块都在跳过范围内且行数可由索引得出时不解压
+                Integer n = indexedCount(b, params);
+                if (n != null && skip >= n) {
+                    skip -= n;
+                    continue;
+                }
+                List<OperateLog> rows = readBlock(e.getKey(), b);
+                for (int j = rows.size() - 1; j >= 0; j--) {
+                    OperateLog row = rows.get(j);
+                    if (!matches(row, params)) continue;
+                    if (skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                    result.add(row);
+                    if (result.size() >= limit) return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按 (操作时间, ID) 倒序取 (beforeTime, beforeId) 之前符合条件的日志，最多 limit 条；
+     * beforeTime 为 null 时从最新的归档日志开始。供游标分页在热表取完后继续翻页
+     */
+    public List<OperateLog> queryBefore(OperateLogDTO.QueryParams params, LocalDateTime beforeTime, Long beforeId,
+                                        int limit) throws IOException {
+        List<OperateLog> result = new ArrayList<>();
+        if (limit <= 0) return result;
+        for (Map.Entry<String, List<Block>> e : partitions().descendingMap().entrySet()) {
+            List<Block> blocks = e.getValue();
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                Block b = blocks.get(i);
+                if (beforeTime != null && b.getMinTime().isAfter(beforeTime)) continue;
+                if (!mayMatch(b, params)) continue;
+                List<OperateLog> rows = readBlock(e.getKey(), b);
+                for (int j = rows.size() - 1; j >= 0; j--) {
+                    OperateLog row = rows.get(j);
+                    if (beforeTime != null && !isBefore(row, beforeTime, beforeId)) continue;
+                    if (!matches(row, params)) continue;
+                    result.add(row);
+                    if (result.size() >= limit) return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按 ID 查找归档日志：ID 含生成时的时间戳，只解压该时间前后的块
+     */
+    public OperateLog findById(Long id) throws IOException {
+        LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(Sequence.parseIdTimestamp(id)), ZoneId.systemDefault());
+        OperateLogDTO.QueryParams params = new OperateLogDTO.QueryParams();
+        params.setStartTime(t.minus(ID_TIME_MARGIN));
+        params.setEndTime(t.plus(ID_TIME_MARGIN));
+        for (Map.Entry<String, List<Block>> e : partitions().entrySet()) {
+            for (Block b : e.getValue()) {
+                if (!overlaps(b, params)) continue;
+                for (OperateLog row : readBlock(e.getKey(), b)) {
+                    if (id.equals(row.getId())) return row;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isBefore(OperateLog row, LocalDateTime time, Long id) {
+        int c = row.getCreatedAt().compareTo(time);
+        return c < 0 || (c == 0 && row.getId() < id);
+    }
+
+    private static String countKey(OperateLogDTO.QueryParams p) {
+        return p.getFamilyId() + "|" + p.getTargetId() + "|" + p.getOperateType() + "|" + p.getTargetType() + "|" + p.getUserId()
+                + "|" + p.getKeyword() + "|" + p.getStartTime() + "|" + p.getEndTime();
+    }
+
+    /** 已归档的分区，首次访问时从磁盘加载索引 */
+    private ConcurrentSkipListMap<String, List<Block>> partitions() throws IOException {
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + INDEX_SUFFIX)) {
+                for (Path f : files) {
+                    String name = f.getFileName().toString();
+                    String partition = name.substring(0, name.length() - INDEX_SUFFIX.length());
+                    if (indexes.containsKey(partition)) continue;
+                    List<Block> blocks = new ArrayList<>();
+                    for (String line : Files.readAllLines(f, StandardCharsets.UTF_8)) {
+                        if (!line.isBlank()) blocks.add(objectMapper.readValue(line, Block.class));
+                    }
+                    indexes.put(partition, blocks);
+                    countCache.clear();
+                }
+            }
+        }
+        return indexes;
+    }
+
+    private List<OperateLog> readBlock(String partition, Block b) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(b.getLength());
+        try (FileChannel ch = FileChannel.open(dir.resolve(partition + DATA_SUFFIX), StandardOpenOption.READ)) {
+            long pos = b.getOffset();
+            while (buf.hasRemaining()) {
+                int n = ch.read(buf, pos);
+                if (n < 0) throw new EOFException("归档文件不完整: " + partition);
+                pos += n;
+            }
+        }
+        List<OperateLog> rows = new ArrayList<>(b.getCount());
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(buf.array())), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (!line.isEmpty()) rows.add(objectMapper.readValue(line, OperateLog.class));
+            }
+        }
+        return rows;
+    }
+
+    private boolean overlaps(Block b, OperateLogDTO.QueryParams p) {
+        if (p.getStartTime() != null && b.getMaxTime().isBefore(p.getStartTime())) return false;
+        return p.getEndTime() == null || !b.getMinTime().isAfter(p.getEndTime());
+    }
+
+    /** 块是否可能含有符合条件的日志：时间范围重叠，且所查的家族/操作人/类型在块中出现过 */
+    private boolean mayMatch(Block b, OperateLogDTO.QueryParams p) {
+        if (!overlaps(b, p)) return false;
+        return present(b.getFamilyCounts(), p.getFamilyId())
+                && present(b.getUserCounts(), p.getUserId())
+                && present(b.getOperateTypeCounts(), StringUtils.hasText(p.getOperateType()) ? p.getOperateType() : null)
+                && present(b.getTargetTypeCounts(), StringUtils.hasText(p.getTargetType()) ? p.getTargetType() : null);
+    }
+
+    /** 未筛选或块没有该维度的汇总（旧索引）时视为可能出现 */
+    private static <K> boolean present(Map<K, Integer> counts, K key) {
+        return key == null || counts == null || counts.containsKey(key);
+    }
+
+    /**
+     * 不解压即可得出的块内命中行数：块整体落在时间范围内、无关键词、至多一个维度条件且块带有该维度的汇总；
+     * 否则返回 null
+     */
+    private Integer indexedCount(Block b, OperateLogDTO.QueryParams p) {
+        if (StringUtils.hasText(p.getKeyword()) || p.getTargetId() != null || !within(b, p)) return null;
+        Map<?, Integer> counts = null;
+        Object key = null;
+        int filters = 0;
+        if (p.getFamilyId() != null) {
+            filters++;
+            counts = b.getFamilyCounts();
+            key = p.getFamilyId();
+        }
+        if (p.getUserId() != null) {
+            filters++;
+            counts = b.getUserCounts();
+            key = p.getUserId();
+        }
+        if (StringUtils.hasText(p.getOperateType())) {
+            filters++;
+            counts = b.getOperateTypeCounts();
+            key = p.getOperateType();
+        }
+        if (StringUtils.hasText(p.getTargetType())) {
+            filters++;
+            counts = b.getTargetTypeCounts();
+            key = p.getTargetType();
+        }
+        if (filters == 0) return b.getCount();
+        if (filters > 1 || counts == null) return null;
+        return counts.getOrDefault(key, 0);
+    }
+
+    private boolean within(Block b, OperateLogDTO.QueryParams p) {
+        if (p.getStartTime() != null && b.getMinTime().isBefore(p.getStartTime())) return false;
+        return p.getEndTime() == null || !b.getMaxTime().isAfter(p.getEndTime());
+    }
+
+    /** 与 OperateLogService.pageQuery 相同的筛选条件 */
+    private boolean matches(OperateLog l, OperateLogDTO.QueryParams p) {
+        if (p.getFamilyId() != null && !p.getFamilyId().equals(l.getFamilyId())) return false;
+        if (p.getTargetId() != null && !p.getTargetId().equals(l.getTargetId())) return false;
+        if (StringUtils.hasText(p.getOperateType()) && !p.getOperateType().equals(l.getOperateType())) return false;
+        if (StringUtils.hasText(p.getTargetType()) && !p.getTargetType().equals(l.getTargetType())) return false;
+        if (p.getUserId() != null && !p.getUserId().equals(l.getUserId())) return false;
+        if (p.getStartTime() != null && l.getCreatedAt().isBefore(p.getStartTime())) return false;
+        if (p.getEndTime() != null && l.getCreatedAt().isAfter(p.getEndTime())) return false;
+        if (StringUtils.hasText(p.getKeyword())) {
+            return l.getTargetName() != null && l.getTargetName().contains(p.getKeyword());
+        }
+        return true;
+    }
+
+    /**
+     * 稀疏索引项：一个压缩块；各维度的行数在旧版本写出的索引中为 null
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Block {
+        private long offset;
+        private int length;
+        private int count;
+        private LocalDateTime minTime;
+        private LocalDateTime maxTime;
+        private Map<Long, Integer> familyCounts;
+        private Map<Long, Integer> userCounts;
+        private Map<String, Integer> operateTypeCounts;
+        private Map<String, Integer> targetTypeCounts;
+    }
+}
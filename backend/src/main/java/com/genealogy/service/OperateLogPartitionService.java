@@ -0,0 +1,143 @@
+package com.genealogy.service;
+
+import com.genealogy.entity.OperateLog;
+import com.genealogy.mapper.OperateLogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 操作日志按月分区维护
+ * <p>
+ * t_operate_log 按 created_at 做 RANGE COLUMNS 分区：p0 为初始分区，pYYYYMM 为各月，pmax 兜底。
+ * 定时任务预建未来几个月的分区，并把超过保留期的分区写入冷归档后整个删除，热表大小保持稳定。
+ */
+@Slf4j
+@Service
+public class OperateLogPartitionService {
+
+    private static final String MAX_PARTITION = "pmax";
+    private static final Pattern PARTITION_NAME = Pattern.compile("p\\d{1,6}");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final DateTimeFormatter BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final OperateLogMapper operateLogMapper;
+    private final OperateLogArchive archive;
+    private final PlatformTransactionManager transactionManager;
+    private final int retentionMonths;
+    private final int premakeMonths;
+
+    public OperateLogPartitionService(OperateLogMapper operateLogMapper,
+                                      OperateLogArchive archive,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${genealogy.audit.retention-months:12}") int retentionMonths,
+                                      @Value("${genealogy.audit.premake-months:3}") int premakeMonths) {
+        this.operateLogMapper = operateLogMapper;
+        this.archive = archive;
+        this.transactionManager = transactionManager;
+        this.retentionMonths = Math.max(1, retentionMonths);
+        this.premakeMonths = Math.max(1, premakeMonths);
+    }
+
+    @Scheduled(cron = "${genealogy.audit.partition-cron:0 30 3 * * *}")
+    public void scheduledMaintain() {
+        try {
+            maintain();
+        } catch (Exception e) {
+            log.error("操作日志分区维护失败", e);
+        }
+    }
+
+    /**
+     * 预建分区并归档过期分区，返回 created / archived 分区名与归档行数
+     */
+    public synchronized Map<String, Object> maintain() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<String[]> partitions = partitions();
+        if (partitions.isEmpty()) {
+            log.warn("t_operate_log 未分区，跳过维护（请先执行 migration_partition_operate_log.sql）");
+            result.put("partitioned", false);
+            return result;
+        }
+        result.put("created", ensurePartitions(partitions));
+        result.put("archived", archiveExpired(partitions()));
+        return result;
+    }
+
+    /** 逐月拆分 pmax，直到覆盖未来 premakeMonths 个月 */
+    private List<String> ensurePartitions(List<String[]> partitions) {
+        List<String> created = new ArrayList<>();
+        LocalDate lastBound = null;
+        for (String[] p : partitions) {
+            if (!MAX_PARTITION.equals(p[0])) lastBound = LocalDateTime.parse(p[1], BOUND).toLocalDate();
+        }
+        LocalDate target = LocalDate.now().withDayOfMonth(1).plusMonths(premakeMonths + 1L);
+        LocalDate month = lastBound != null ? lastBound.withDayOfMonth(1) : LocalDate.now().withDayOfMonth(1);
+        while (month.isBefore(target)) {
+            LocalDate next = month.plusMonths(1);
+            String name = "p" + month.format(MONTH);
+            operateLogMapper.splitMaxPartition(name, next.atStartOfDay().format(BOUND));
+            created.add(name);
+            month = next;
+        }
+        if (!created.isEmpty()) log.info("操作日志新建分区 {}", created);
+        return created;
+    }
+
+    /** 上界不晚于保留期起点的分区：写入冷归档后删除 */
+    private Map<String, Long> archiveExpired(List<String[]> partitions) {
+        Map<String, Long> archived = new LinkedHashMap<>();
+        LocalDateTime cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths).atStartOfDay();
+        for (String[] p : partitions) {
+            String name = p[0];
+            if (MAX_PARTITION.equals(name)) continue;
+            if (LocalDateTime.parse(p[1], BOUND).isAfter(cutoff)) break;
+            long rows = archive.exists(name) ? 0 : export(name);
+            operateLogMapper.dropPartition(name);
+            archived.put(name, rows);
+            log.info("操作日志分区已归档并删除 {} 行数={}", name, rows);
+        }
+        return archived;
+    }
+
+    private long export(String partition) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        Long rows = tx.execute(status -> {
+            try (Cursor<OperateLog> cursor = operateLogMapper.cursorPartition(partition)) {
+                return archive.write(partition, cursor);
+            } catch (IOException e) {
+                throw new UncheckedIOException("归档分区失败: " + partition, e);
+            }
+        });
+        return rows != null ? rows : 0;
+    }
+
+    /** 当前分区 [名称, 上界]，按位置排序；未分区时为空 */
+    private List<String[]> partitions() {
+        List<String[]> list = new ArrayList<>();
+        for (Map<String, Object> row : operateLogMapper.selectPartitions()) {
+            Object name = row.get("name");
+            if (name == null) continue;
+            String n = name.toString();
+            if (!MAX_PARTITION.equals(n) && !PARTITION_NAME.matcher(n).matches()) {
+                throw new IllegalStateException("无法识别的分区: " + n);
+            }
+            String bound = String.valueOf(row.get("bound")).replace("'", "");
+            list.add(new String[]{n, bound});
+        }
+        return list;
+    }
+}
@@ -1,10 +1,14 @@
 package com.genealogy.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.genealogy.dto.OperateLogDTO;
 import com.genealogy.entity.OperateLog;
+import com.genealogy.entity.Person;
 import com.genealogy.mapper.OperateLogMapper;
 import com.genealogy.mapper.PersonMapper;
 import lombok.RequiredArgsConstructor;
@@ -12,8 +16,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -24,10 +33,45 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class OperateLogService extends ServiceImpl<OperateLogMapper, OperateLog> {
 
+    /** 游标分页单页上限 */
+    public static final int MAX_PAGE_SIZE = 200;
+
     private final PersonMapper personMapper;
+    private final OperateLogWriter operateLogWriter;
+    private final OperateLogArchive operateLogArchive;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 需记日志的修改从写库到提交日志期间持有读锁，家族快照读取期间持有写锁：
+     * 快照读取时不存在已提交但尚未生成日志的修改，日志 ID 水位与读到的数据一致
+     */
+    private final ReentrantReadWriteLock auditGate = new ReentrantReadWriteLock();
+
+    /**
+     * 开始一次需记日志的修改，在修改的日志全部提交后关闭：
+     * <pre>try (OperateLogService.AuditScope ignored = operateLogService.audited()) { 写库; log(...); }</pre>
+     */
+    public AuditScope audited() {
+        auditGate.readLock().lock();
+        return () -> auditGate.readLock().unlock();
+    }
+
+    /**
+     * 等进行中的修改提交日志、写完日志队列后执行 action，期间新的修改等待。
+     * 此后生成的日志 ID 都大于此刻表中的最大 ID（单实例内 ID 单调递增）
+     */
+    public <T> T quiesced(Supplier<T> action) {
+        auditGate.writeLock().lock();
+        try {
+            operateLogWriter.flush();
+            return action.get();
+        } finally {
+            auditGate.writeLock().unlock();
+        }
+    }
 
     /**
-     * 记录操作日志
+     * 记录操作日志：放入异步写入队列后立即返回，不在请求线程写库
      */
     public void log(String operateType, Long userId, String userName,
                     Long targetId, String targetName, String targetType,
@@ -42,7 +86,9 @@ public class OperateLogService extends ServiceImpl<OperateLogMapper, OperateLog>
         log.setTargetType(targetType);
         log.setFamilyId(familyId);
         log.setDetail(detail);
-        save(log);
+        log.setId(IdWorker.getId());
+        log.setCreatedAt(LocalDateTime.now());
+        operateLogWriter.submit(log);
     }
 
     /**
@@ -51,6 +97,169 @@ public class OperateLogService extends ServiceImpl<OperateLogMapper, OperateLog>
     public OperateLogDTO.PageResult pageQuery(OperateLogDTO.QueryParams params) {
         Page<OperateLog> page = new Page<>(params.getPageNum(), params.getPageSize());
 
+        LambdaQueryWrapper<OperateLog> qw = buildQuery(params);
+
+        qw.orderByDesc(OperateLog::getCreatedAt);
+
+        Page<OperateLog> resultPage = page(page, qw);
+
+        List<OperateLogDTO> records = resultPage.getRecords().stream()
+                .map(this::toDTO)
+                .collect(Collectors.toList());
+
+        OperateLogDTO.PageResult result = new OperateLogDTO.PageResult();
+        result.setRecords(records);
+        result.setTotal(resultPage.getTotal());
+        result.setPageNum((int) resultPage.getCurrent());
+        result.setPageSize((int) resultPage.getSize());
+
+        if (Boolean.TRUE.equals(params.getIncludeArchive())) {
+            appendArchived(params, result);
+        }
+        return result;
+    }
+
+    /**
+     * 归档日志均早于热表，按时间倒序接在热表结果之后：本页未取满时从归档补足
+     */
+    private void appendArchived(OperateLogDTO.QueryParams params, OperateLogDTO.PageResult result) {
+        long hotTotal = result.getTotal();
+        long offset = (long) (result.getPageNum() - 1) * result.getPageSize();
+        int remaining = result.getPageSize() - result.getRecords().size();
+        try {
+            if (remaining > 0) {
+                long skip = Math.max(0, offset - hotTotal);
+                for (OperateLog log : operateLogArchive.query(params, skip, remaining)) {
+                    result.getRecords().add(toDTO(log));
+                }
+            }
+            result.setTotal(hotTotal + operateLogArchive.count(params));
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取归档日志失败", e);
+        }
+    }
+
+    /**
+     * 按 (操作时间, ID) 倒序游标分页：每页从上一页末行在复合索引上定位，不做 OFFSET 扫描，
+     * 与翻页深度无关；totalMode 为 approx 时总数取自查询计划估计，exact 时精确计数。
+     * includeArchive 时热表取完后接着从归档翻页，游标标记已进入归档，此后的页不再查询热表
+     */
+    public OperateLogDTO.CursorResult cursorQuery(OperateLogDTO.QueryParams params) {
+        int size = Math.max(1, Math.min(params.getPageSize() != null ? params.getPageSize() : 20, MAX_PAGE_SIZE));
+        boolean includeArchive = Boolean.TRUE.equals(params.getIncludeArchive());
+        LambdaQueryWrapper<OperateLog> qw = buildQuery(params);
+
+        OperateLogDTO.CursorResult result = new OperateLogDTO.CursorResult();
+        if ("exact".equals(params.getTotalMode())) {
+            result.setTotal(count(qw) + archivedCount(params, includeArchive));
+            result.setTotalExact(true);
+        } else if ("approx".equals(params.getTotalMode())) {
+            result.setTotal(estimateCount(qw) + archivedCount(params, includeArchive));
+            result.setTotalExact(false);
+        } else if (params.getTotalMode() != null && !params.getTotalMode().isBlank()) {
+            throw new IllegalArgumentException("未知的统计方式: " + params.getTotalMode());
+        }
+
+        LocalDateTime time = null;
+        Long id = null;
+        boolean inArchive = false;
+        if (StringUtils.hasText(params.getCursor())) {
+            Object[] c = decodeCursor(params.getCursor());
+            time = (LocalDateTime) c[0];
+            id = (Long) c[1];
+            inArchive = (Boolean) c[2];
+        }
+
+        List<OperateLog> rows = new ArrayList<>();
+        if (!inArchive) {
+            if (time != null) {
+                LocalDateTime t = time;
+                long i = id;
+                // 冗余的 created_at <= time 让优化器按索引范围扫描
+                qw.le(OperateLog::getCreatedAt, t)
+                        .and(w -> w.lt(OperateLog::getCreatedAt, t)
+                                .or(x -> x.eq(OperateLog::getCreatedAt, t).lt(OperateLog::getId, i)));
+            }
+            qw.orderByDesc(OperateLog::getCreatedAt, OperateLog::getId);
+            qw.last("LIMIT " + (size + 1));
+            rows.addAll(list(qw));
+        }
+
+        String next = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            OperateLog last = rows.get(size - 1);
+            next = encodeCursor(last.getCreatedAt(), last.getId(), false);
+        } else if (includeArchive) {
+            // 热表已取完：从上一行（或游标）之前接着取归档，多取一条判断是否还有下一页
+            if (!rows.isEmpty()) {
+                OperateLog last = rows.get(rows.size() - 1);
+                time = last.getCreatedAt();
+                id = last.getId();
+            }
+            int need = size - rows.size();
+            try {
+                List<OperateLog> archived = operateLogArchive.queryBefore(params, time, id, need + 1);
+                if (archived.size() > need) {
+                    archived = archived.subList(0, need);
+                    OperateLog last = need > 0 ? archived.get(need - 1) : rows.get(rows.size() - 1);
+                    next = encodeCursor(last.getCreatedAt(), last.getId(), need > 0);
+                }
+                rows.addAll(archived);
+            } catch (IOException e) {
+                throw new UncheckedIOException("读取归档日志失败", e);
+            }
+        }
+        result.setRecords(rows.stream().map(this::toDTO).collect(Collectors.toList()));
+        result.setNextCursor(next);
+        result.setHasMore(next != null);
+        return result;
+    }
+
+    private long archivedCount(OperateLogDTO.QueryParams params, boolean includeArchive) {
+        if (!includeArchive) return 0;
+        try {
+            return operateLogArchive.count(params);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取归档日志失败", e);
+        }
+    }
+
+    /** EXPLAIN 给出的 rows × filtered% */
+    private long estimateCount(LambdaQueryWrapper<OperateLog> qw) {
+        List<Map<String, Object>> plan = getBaseMapper().explainCount(qw);
+        if (plan.isEmpty()) return 0;
+        Map<String, Object> row = plan.get(0);
+        Object rows = row.get("rows");
+        Object filtered = row.get("filtered");
+        double n = rows instanceof Number ? ((Number) rows).doubleValue() : 0;
+        double pct = filtered instanceof Number ? ((Number) filtered).doubleValue() : 100;
+        return Math.round(n * pct / 100);
+    }
+
+    /** 游标：id:操作时间 的 URL 安全 Base64，已进入归档时 id 前加 a */
+    private String encodeCursor(LocalDateTime createdAt, Long id, boolean archived) {
+        String raw = (archived ? "a" : "") + id + ":" + createdAt;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** 返回 {操作时间, id, 是否已进入归档} */
+    private Object[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            boolean archived = raw.startsWith("a");
+            if (archived) raw = raw.substring(1);
+            int sep = raw.indexOf(':');
+            return new Object[]{LocalDateTime.parse(raw.substring(sep + 1)), Long.parseLong(raw.substring(0, sep)), archived};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+    }
+
+    /**
+     * 分页与游标查询共用的筛选条件
+     */
+    private LambdaQueryWrapper<OperateLog> buildQuery(OperateLogDTO.QueryParams params) {
         LambdaQueryWrapper<OperateLog> qw = new LambdaQueryWrapper<>();
 
         // 家族筛选
@@ -58,6 +267,11 @@ public class OperateLogService extends ServiceImpl<OperateLogMapper, OperateLog>
             qw.eq(OperateLog::getFamilyId, params.getFamilyId());
         }
 
+        // 目标对象筛选
+        if (params.getTargetId() != null) {
+            qw.eq(OperateLog::getTargetId, params.getTargetId());
+        }
+
         // 操作类型筛选
         if (StringUtils.hasText(params.getOperateType())) {
             qw.eq(OperateLog::getOperateType, params.getOperateType());
@@ -86,53 +300,179 @@ public class OperateLogService extends ServiceImpl<OperateLogMapper, OperateLog>
             qw.like(OperateLog::getTargetName, params.getKeyword());
         }
 
-        qw.orderByDesc(OperateLog::getCreatedAt);
+        return qw;
+    }
 
-        Page<OperateLog> resultPage = page(page, qw);
+    /**
+     * 日志详情：字段级差异编码的人物编辑日志展开为完整的 before/after；热表中没有时查归档
+     */
+    public OperateLogDTO findDetail(Long id) {
+        OperateLog log = findLog(id);
+        if (log == null) return null;
+        OperateLogDTO dto = toDTO(log);
+        if (OperateLog.OperateType.PERSON_EDIT.equals(log.getOperateType())) {
+            Map<String, Object> view = renderPersonEdit(log);
+            if (view != null) {
+                try {
+                    dto.setDetail(objectMapper.writeValueAsString(view));
+                } catch (JsonProcessingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return dto;
+    }
 
-        List<OperateLogDTO> records = resultPage.getRecords().stream()
-                .map(this::toDTO)
-                .collect(Collectors.toList());
+    /**
+     * 以人物当前数据（已删除时取删除日志中的快照）为终点，逆序撤销该条之后的编辑得到编辑后状态，
+     * 再撤销该条本身得到编辑前状态；无从还原时只展示变化的字段与改动片段。旧格式日志返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> renderPersonEdit(OperateLog entry) {
+        Map<String, Object> detail = parseDetail(entry.getDetail());
+        if (!PersonDiff.isEncoded(detail)) return null;
+        Map<String, Object> changes = (Map<String, Object>) detail.get("changes");
+        if (changes == null) changes = Collections.emptyMap();
 
-        OperateLogDTO.PageResult result = new OperateLogDTO.PageResult();
-        result.setRecords(records);
-        result.setTotal(resultPage.getTotal());
-        result.setPageNum((int) resultPage.getCurrent());
-        result.setPageSize((int) resultPage.getSize());
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("changed", new ArrayList<>(changes.keySet()));
+        Map<String, Object> state = latestState(entry.getTargetId());
+        if (state != null) {
+            try {
+                List<OperateLog> later = list(new LambdaQueryWrapper<OperateLog>()
+                        .eq(OperateLog::getTargetId, entry.getTargetId())
+                        .eq(OperateLog::getOperateType, OperateLog.OperateType.PERSON_EDIT)
+                        .ge(OperateLog::getCreatedAt, entry.getCreatedAt())
+                        .and(w -> w.gt(OperateLog::getCreatedAt, entry.getCreatedAt())
+                                .or(x -> x.eq(OperateLog::getCreatedAt, entry.getCreatedAt()).gt(OperateLog::getId, entry.getId())))
+                        .orderByDesc(OperateLog::getCreatedAt, OperateLog::getId));
+                // 归档中的日志都早于热表，接在后面仍是倒序
+                OperateLogDTO.QueryParams archivedEdits = targetParams(entry.getTargetId(), OperateLog.OperateType.PERSON_EDIT);
+                archivedEdits.setStartTime(entry.getCreatedAt());
+                for (OperateLog l : archived(archivedEdits, Integer.MAX_VALUE)) {
+                    int c = l.getCreatedAt().compareTo(entry.getCreatedAt());
+                    if (c > 0 || (c == 0 && l.getId() > entry.getId())) later.add(l);
+                }
+                for (OperateLog l : later) {
+                    Map<String, Object> d = parseDetail(l.getDetail());
+                    if (PersonDiff.isEncoded(d)) {
+                        PersonDiff.applyBackward(state, (Map<String, Object>) d.get("changes"));
+                    } else if (d.get("before") instanceof Map) {
+                        state.putAll((Map<String, Object>) d.get("before"));
+                    }
+                }
+                Map<String, Object> after = new LinkedHashMap<>(state);
+                PersonDiff.applyBackward(state, changes);
+                view.put("before", state);
+                view.put("after", after);
+                return view;
+            } catch (RuntimeException e) {
+                log.warn("还原人物编辑日志失败 id={}: {}", entry.getId(), e.getMessage());
+            }
+        }
+        Map<String, Object> before = new LinkedHashMap<>(), after = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> e : changes.entrySet()) {
+            if (e.getValue() instanceof List) {
+                List<Object> pair = (List<Object>) e.getValue();
+                before.put(e.getKey(), pair.get(0));
+                after.put(e.getKey(), pair.get(1));
+            } else if (e.getValue() instanceof Map) {
+                Map<String, Object> t = (Map<String, Object>) e.getValue();
+                before.put(e.getKey(), "…" + t.get("d") + "…");
+                after.put(e.getKey(), "…" + t.get("i") + "…");
+            }
+        }
+        view.put("before", before);
+        view.put("after", after);
+        return view;
+    }
 
-        return result;
+    /** 人物的最新审计字段；已删除时取删除日志中的快照，都没有时为 null */
+    private Map<String, Object> latestState(Long personId) {
+        Person person = personMapper.selectById(personId);
+        if (person != null) return PersonDiff.snapshot(person);
+        OperateLog deleted = getOne(new LambdaQueryWrapper<OperateLog>()
+                .eq(OperateLog::getTargetId, personId)
+                .eq(OperateLog::getOperateType, OperateLog.OperateType.PERSON_DELETE)
+                .orderByDesc(OperateLog::getCreatedAt)
+                .last("LIMIT 1"), false);
+        if (deleted == null) {
+            List<OperateLog> archived = archived(targetParams(personId, OperateLog.OperateType.PERSON_DELETE), 1);
+            if (archived.isEmpty()) return null;
+            deleted = archived.get(0);
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>(parseDetail(deleted.getDetail()));
+        snapshot.remove("relations");
+        // 旧格式的删除日志只有姓名等少数字段
+        return snapshot.keySet().containsAll(PersonDiff.FIELDS) ? snapshot : null;
     }
 
     /**
-     * 查询某人物的所有操作历史
+     * 查询某人物的所有操作历史，含已归档的日志
      */
     public List<OperateLogDTO> getByTargetId(Long targetId) {
         List<OperateLog> logs = list(new LambdaQueryWrapper<OperateLog>()
                 .eq(OperateLog::getTargetId, targetId)
                 .orderByDesc(OperateLog::getCreatedAt));
+        logs.addAll(archived(targetParams(targetId, null), Integer.MAX_VALUE));
         return logs.stream().map(this::toDTO).collect(Collectors.toList());
     }
 
     /**
-     * 查询某家族的所有操作日志
+     * 查询某家族最近的操作日志，热表不足 100 条时由归档补足
      */
     public List<OperateLogDTO> getByFamilyId(Long familyId) {
         List<OperateLog> logs = list(new LambdaQueryWrapper<OperateLog>()
                 .eq(OperateLog::getFamilyId, familyId)
                 .orderByDesc(OperateLog::getCreatedAt)
                 .last("LIMIT 100")); // 最多返回100条
+        if (logs.size() < 100) {
+            OperateLogDTO.QueryParams params = new OperateLogDTO.QueryParams();
+            params.setFamilyId(familyId);
+            logs.addAll(archived(params, 100 - logs.size()));
+        }
         return logs.stream().map(this::toDTO).collect(Collectors.toList());
     }
 
     /**
-     * 根据ID查询单条日志
+     * 根据ID查询单条日志，热表中没有时查归档
      */
     public OperateLogDTO findById(Long id) {
-        OperateLog log = getBaseMapper().selectById(id);
+        OperateLog log = findLog(id);
         if (log == null) return null;
         return toDTO(log);
     }
 
+    /** 按 ID 取日志，热表中没有时查归档 */
+    public OperateLog findLog(Long id) {
+        OperateLog log = getBaseMapper().selectById(id);
+        if (log != null) return log;
+        try {
+            return operateLogArchive.findById(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取归档日志失败", e);
+        }
+    }
+
+    /**
+     * 归档中符合条件的日志，按时间倒序最多 limit 条；归档中的日志都早于热表，可直接接在热表结果之后
+     */
+    public List<OperateLog> archived(OperateLogDTO.QueryParams params, int limit) {
+        try {
+            return operateLogArchive.query(params, 0, limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取归档日志失败", e);
+        }
+    }
+
+    /** 某目标对象的某类日志的筛选条件，operateType 为 null 时不限类型 */
+    public static OperateLogDTO.QueryParams targetParams(Long targetId, String operateType) {
+        OperateLogDTO.QueryParams params = new OperateLogDTO.QueryParams();
+        params.setTargetId(targetId);
+        params.setOperateType(operateType);
+        return params;
+    }
+
     /**
      * 转换为DTO
      */
@@ -167,4 +507,10 @@ public class OperateLogService extends ServiceImpl<OperateLogMapper, OperateLog>
             return Collections.emptyMap();
         }
     }
+
+    /** {@link #audited()} 的作用域，关闭时释放 */
+    public interface AuditScope extends AutoCloseable {
+        @Override
+        void close();
+    }
 }
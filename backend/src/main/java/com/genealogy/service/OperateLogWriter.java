@@ -0,0 +1,201 @@
+package com.genealogy.service;
+
+import com.genealogy.entity.OperateLog;
+import com.genealogy.mapper.OperateLogMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 操作日志异步批量写入
+ * <p>
+ * 请求线程只把日志放入有界队列；后台写线程攒满 batchSize 条或等待 flushInterval 后，
+ * 以一条多行 INSERT 写入。队列满时请求线程最多等待 offerTimeout，仍放不进去则在请求线程同步写入，
+ * 不丢日志。关闭时停止接收并写完队列中剩余的日志。
+ */
+@Slf4j
+@Component
+public class OperateLogWriter {
+
+    private final OperateLogMapper operateLogMapper;
+    private final BlockingQueue<OperateLog> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long offerTimeoutMs;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong syncWrites = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+
+    /** 写线程每轮持有；公平锁，flush() 在当前一轮写完后即可取得 */
+    private final ReentrantLock roundLock = new ReentrantLock(true);
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public OperateLogWriter(OperateLogMapper operateLogMapper,
+                            @Value("${genealogy.audit.buffer-size:8192}") int bufferSize,
+                            @Value("${genealogy.audit.batch-size:200}") int batchSize,
+                            @Value("${genealogy.audit.flush-interval-ms:200}") long flushIntervalMs,
+                            @Value("${genealogy.audit.offer-timeout-ms:50}") long offerTimeoutMs) {
+        this.operateLogMapper = operateLogMapper;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.offerTimeoutMs = Math.max(0, offerTimeoutMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        thread = new Thread(this::loop, "operate-log-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 关闭时停止写线程，并在当前线程写完剩余日志
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        drainAndWrite();
+        log.info("操作日志写线程已停止 {}", stats());
+    }
+
+    /**
+     * 提交一条日志；队列已满且等待超时时在当前线程同步写入
+     */
+    public void submit(OperateLog entry) {
+        submitted.incrementAndGet();
+        boolean queued = false;
+        if (running) {
+            try {
+                queued = queue.offer(entry, offerTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!queued) {
+            syncWrites.incrementAndGet();
+            write(List.of(entry));
+            return;
+        }
+        maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        // 放入队列时恰好在关闭：stop() 可能已经取完队列，这里自己写完，否则日志会留在队列里丢失
+        if (!running) drainAndWrite();
+    }
+
+    /**
+     * 写完此刻之前提交的全部日志后返回：等写线程写完手中的一批，再写完队列中剩余的
+     */
+    public void flush() {
+        roundLock.lock();
+        try {
+            drainAndWrite();
+        } finally {
+            roundLock.unlock();
+        }
+    }
+
+    /**
+     * 在当前线程写完队列中剩余的日志；每条日志只会被一个线程取出，与 stop() 并发调用不会重复写入
+     */
+    private void drainAndWrite() {
+        List<OperateLog> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (int i = 0; i < rest.size(); i += batchSize) {
+            write(rest.subList(i, Math.min(i + batchSize, rest.size())));
+        }
+    }
+
+    private void loop() {
+        List<OperateLog> batch = new ArrayList<>(batchSize);
+        while (running) {
+            roundLock.lock();
+            try {
+                OperateLog first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                // 攒批：最多再等一个刷新周期
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize) break;
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    OperateLog next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // 关闭中：已取出的日志直接写完，stop() 等待超时后也不会遗漏
+                write(batch);
+                break;
+            } catch (RuntimeException e) {
+                log.error("操作日志写线程异常", e);
+                batch.clear();
+            } finally {
+                roundLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 批量写入；整批失败时逐条重试，仍失败的日志输出到错误日志
+     */
+    private void write(List<OperateLog> batch) {
+        if (batch.isEmpty()) return;
+        try {
+            operateLogMapper.insertBatch(batch);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+        } catch (RuntimeException e) {
+            log.warn("操作日志批量写入失败，逐条重试 size={}: {}", batch.size(), e.getMessage());
+            for (OperateLog entry : batch) {
+                try {
+                    operateLogMapper.insertBatch(List.of(entry));
+                    written.incrementAndGet();
+                } catch (RuntimeException ex) {
+                    failed.incrementAndGet();
+                    log.error("操作日志写入失败 {}", entry, ex);
+                }
+            }
+        }
+    }
+
+    /** 写入与背压指标 */
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("queueDepth", queue.size());
+        m.put("queueCapacity", queue.size() + queue.remainingCapacity());
+        m.put("maxQueueDepth", maxQueueDepth.get());
+        m.put("submitted", submitted.get());
+        m.put("written", written.get());
+        m.put("batches", batches.get());
+        m.put("syncWrites", syncWrites.get());
+        m.put("failed", failed.get());
+        m.put("batchSize", batchSize);
+        m.put("flushIntervalMs", flushIntervalMs);
+        return m;
+    }
+}
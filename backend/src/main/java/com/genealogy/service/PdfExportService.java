@@ -1,5 +1,6 @@
 package com.genealogy.service;
 
+import com.genealogy.dto.MigrationFlowDTO;
 import com.genealogy.entity.Event;
 import com.genealogy.entity.Family;
 import com.genealogy.entity.Person;
@@ -31,6 +32,7 @@ public class PdfExportService {
     private final PersonMapper personMapper;
     private final RelationMapper relationMapper;
     private final EventMapper eventMapper;
+    private final MigrationFlowService migrationFlowService;
 
     /**
      * 导出欧式族谱 PDF
@@ -65,20 +67,16 @@ public class PdfExportService {
                 .orderByAsc(Person::getName)
         );
 
-        // 获取关系列表
-        List<Relation> relations = relationMapper.selectList(
-            new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<Relation>()
-                .eq(Relation::getDeleted, 0)
-        );
+        // 获取关系列表（仅本家族）
+        List<Relation> relations = relationMapper.selectByFamilyId(familyId);
 
-        // 获取事件列表
-        List<Event> events = eventMapper.selectList(
-            new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<Event>()
-                .eq(Event::getDeleted, 0)
-        );
+        // 迁徙流向（预计算的迁徙路段按世代汇总）
+        List<MigrationFlowDTO> flows = migrationFlowService.flows(familyId, "generation");
+        // 没有路段的人物（只有一处落脚点）逐条列出迁徙/定居事件
+        List<Event> stays = eventMapper.selectUnroutedStays(familyId);
 
         // 构建数据模型
-        Map<String, Object> model = buildModel(family, persons, relations, events, template);
+        Map<String, Object> model = buildModel(family, persons, relations, flows, stays, template);
 
         // 渲染 HTML
         String html = renderHtml(template, model);
@@ -91,7 +89,8 @@ public class PdfExportService {
      * 构建数据模型
      */
     private Map<String, Object> buildModel(Family family, List<Person> persons,
-                                           List<Relation> relations, List<Event> events, String template) {
+                                           List<Relation> relations, List<MigrationFlowDTO> flows,
+                                           List<Event> stays, String template) {
         Map<String, Object> model = new HashMap<>();
 
         // 家族信息
@@ -122,7 +121,7 @@ public class PdfExportService {
         model.put("persons", personList);
 
         // 迁徙数据
-        List<Map<String, Object>> migrationData = buildMigrationData(persons, events);
+        List<Map<String, Object>> migrationData = buildMigrationData(flows, stays, persons);
         model.put("migrationData", migrationData);
 
         // 目录
@@ -384,30 +383,62 @@ public class PdfExportService {
     }
 
     /**
-     * 构建迁徙数据
+     * 构建迁徙数据：每世一组，组内 flows 为起点到终点的流向（汇总后不带日期），
+     * stays 为没有路段的人物及其带日期的迁徙/定居事件
      */
-    private List<Map<String, Object>> buildMigrationData(List<Person> persons, List<Event> events) {
-        // 筛选有地理位置的迁徙/定居事件
-        List<Event> migrationEvents = events.stream()
-            .filter(e -> ("migration".equals(e.getType()) || "residence".equals(e.getType())))
-            .filter(e -> e.getLatitude() != null && e.getLongitude() != null)
-            .sorted(Comparator.comparing(Event::getEventDate))
-            .collect(Collectors.toList());
+    private List<Map<String, Object>> buildMigrationData(List<MigrationFlowDTO> flows, List<Event> stays,
+                                                         List<Person> persons) {
+        Map<Integer, Map<String, Object>> byGeneration = new TreeMap<>();
+        for (MigrationFlowDTO f : flows) {
+            List<String> names = f.getPersonNames() != null ? f.getPersonNames() : Collections.emptyList();
+            String personName = String.join("、", names);
+            if (f.getPersonCount() != null && f.getPersonCount() > names.size()) {
+                personName += " 等" + f.getPersonCount() + "人";
+            }
+            Map<String, Object> data = new HashMap<>();
+            data.put("personName", personName);
+            data.put("route", f.getOrigin() + " → " + f.getDest());
+            data.put("count", f.getCount());
+            int generation = f.getGeneration() != null ? f.getGeneration() : 0;
+            migrationGroup(byGeneration, generation, "flows").add(data);
+        }
 
         Map<Long, Person> personMap = persons.stream()
             .collect(Collectors.toMap(Person::getId, p -> p));
-
-        return migrationEvents.stream().map(e -> {
+        Map<Long, Map<String, Object>> byPerson = new LinkedHashMap<>();
+        for (Event e : stays) {
             Person person = personMap.get(e.getPersonId());
-            Map<String, Object> data = new HashMap<>();
-            data.put("generation", person != null ? person.getGeneration() : 0);
-            data.put("personName", person != null ? person.getName() : "未知");
-            data.put("eventDate", e.getEventDate());
-            data.put("type", "migration".equals(e.getType()) ? "迁徙" : "定居");
-            data.put("location", e.getLocation());
-            data.put("events", Collections.singletonList(data));
-            return data;
-        }).collect(Collectors.toList());
+            if (person == null) continue;
+            Map<String, Object> data = byPerson.computeIfAbsent(person.getId(), id -> {
+                Map<String, Object> m = new HashMap<>();
+                m.put("personName", person.getName());
+                m.put("events", new ArrayList<Map<String, Object>>());
+                int generation = person.getGeneration() != null ? person.getGeneration() : 0;
+                migrationGroup(byGeneration, generation, "stays").add(m);
+                return m;
+            });
+            Map<String, Object> event = new HashMap<>();
+            event.put("eventDate", e.getEventDate() != null ? e.getEventDate() : "年代不详");
+            event.put("type", "migration".equals(e.getType()) ? "迁徙" : "定居");
+            event.put("location", e.getLocation() != null ? e.getLocation() : "");
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> events = (List<Map<String, Object>>) data.get("events");
+            events.add(event);
+        }
+        return new ArrayList<>(byGeneration.values());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> migrationGroup(Map<Integer, Map<String, Object>> byGeneration,
+                                                            int generation, String key) {
+        Map<String, Object> item = byGeneration.computeIfAbsent(generation, g -> {
+            Map<String, Object> m = new HashMap<>();
+            m.put("generation", g);
+            m.put("flows", new ArrayList<Map<String, Object>>());
+            m.put("stays", new ArrayList<Map<String, Object>>());
+            return m;
+        });
+        return (List<Map<String, Object>>) item.get(key);
     }
 
     /**
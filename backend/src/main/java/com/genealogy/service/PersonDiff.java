@@ -0,0 +1,170 @@
+package com.genealogy.service;
+
+import com.genealogy.entity.Person;
+
+import java.util.*;
+
+/**
+ * 人物编辑日志的字段级差异编码
+ * <p>
+ * 日志详情只记录变化的字段：{@code {"v":2,"changes":{字段: 变更}}}。短字段的变更为 [旧值, 新值]；
+ * 长文本（如简介）的变更为 {@code {"p":公共前缀长度,"s":公共后缀长度,"d":删除的中段,"i":插入的中段}}，
+ * 只保存改动的片段。已知旧值可正向推出新值，已知新值可反向推出旧值。
+ */
+public final class PersonDiff {
+
+    /** 编码版本，旧日志的详情为完整的 before/after */
+    public static final int VERSION = 2;
+
+    /** 纳入审计的字段 */
+    public static final List<String> FIELDS = List.of(
+            "familyId", "name", "gender", "generation", "birthDate", "deathDate", "birthPlace", "bio", "avatarUrl", "isStarred");
+
+    /** 任一侧超过该长度的文本改用片段差异 */
+    private static final int TEXT_DIFF_MIN_LENGTH = 64;
+
+    private PersonDiff() {
+    }
+
+    /** 人物的审计字段快照 */
+    public static Map<String, Object> snapshot(Person p) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("familyId", p.getFamilyId());
+        m.put("name", p.getName());
+        m.put("gender", p.getGender());
+        m.put("generation", p.getGeneration());
+        m.put("birthDate", p.getBirthDate());
+        m.put("deathDate", p.getDeathDate());
+        m.put("birthPlace", p.getBirthPlace());
+        m.put("bio", p.getBio());
+        m.put("avatarUrl", p.getAvatarUrl());
+        m.put("isStarred", p.getIsStarred());
+        return m;
+    }
+
+    /** 快照写回人物（值可能来自 JSON，按字段类型转换） */
+    public static void copyTo(Map<String, Object> state, Person p) {
+        p.setFamilyId(toLong(state.get("familyId")));
+        p.setName(toStr(state.get("name")));
+        p.setGender(toStr(state.get("gender")));
+        p.setGeneration(toInt(state.get("generation")));
+        p.setBirthDate(toStr(state.get("birthDate")));
+        p.setDeathDate(toStr(state.get("deathDate")));
+        p.setBirthPlace(toStr(state.get("birthPlace")));
+        p.setBio(toStr(state.get("bio")));
+        p.setAvatarUrl(toStr(state.get("avatarUrl")));
+        p.setIsStarred(toBool(state.get("isStarred")));
+    }
+
+    /** 两个快照之间变化的字段，没有变化时为空 */
+    public static Map<String, Object> diff(Map<String, Object> before, Map<String, Object> after) {
+        Map<String, Object> changes = new LinkedHashMap<>();
+        for (String f : FIELDS) {
+            Object b = before.get(f), a = after.get(f);
+            if (Objects.equals(normalize(b), normalize(a))) continue;
+            if (b instanceof String && a instanceof String
+                    && Math.max(((String) b).length(), ((String) a).length()) > TEXT_DIFF_MIN_LENGTH) {
+                changes.put(f, textDiff((String) b, (String) a));
+            } else {
+                changes.put(f, Arrays.asList(b, a));
+            }
+        }
+        return changes;
+    }
+
+    /** 编码后的日志详情 */
+    public static Map<String, Object> encode(Map<String, Object> changes) {
+        Map<String, Object> detail = new LinkedHashMap<>();
+        detail.put("v", VERSION);
+        detail.put("changes", changes);
+        return detail;
+    }
+
+    /** 详情是否为本编码 */
+    public static boolean isEncoded(Map<String, Object> detail) {
+        return detail.get("v") instanceof Number && ((Number) detail.get("v")).intValue() == VERSION;
+    }
+
+    /** 由编辑前的状态推出编辑后的状态（原地修改） */
+    @SuppressWarnings("unchecked")
+    public static void applyForward(Map<String, Object> state, Map<String, Object> changes) {
+        for (Map.Entry<String, Object> e : changes.entrySet()) {
+            Object c = e.getValue();
+            if (c instanceof List) {
+                state.put(e.getKey(), ((List<Object>) c).get(1));
+            } else if (c instanceof Map) {
+                Map<String, Object> t = (Map<String, Object>) c;
+                state.put(e.getKey(), splice(toStr(state.get(e.getKey())), t, toStr(t.get("d")), toStr(t.get("i"))));
+            }
+        }
+    }
+
+    /** 由编辑后的状态推出编辑前的状态（原地修改） */
+    @SuppressWarnings("unchecked")
+    public static void applyBackward(Map<String, Object> state, Map<String, Object> changes) {
+        for (Map.Entry<String, Object> e : changes.entrySet()) {
+            Object c = e.getValue();
+            if (c instanceof List) {
+                state.put(e.getKey(), ((List<Object>) c).get(0));
+            } else if (c instanceof Map) {
+                Map<String, Object> t = (Map<String, Object>) c;
+                state.put(e.getKey(), splice(toStr(state.get(e.getKey())), t, toStr(t.get("i")), toStr(t.get("d"))));
+            }
+        }
+    }
+
+    /** 去掉公共前缀与后缀，只保留改动的中段；不拆开代理对 */
+    private static Map<String, Object> textDiff(String before, String after) {
+        int max = Math.min(before.length(), after.length());
+        int p = 0;
+        while (p < max && before.charAt(p) == after.charAt(p)) p++;
+        if (p > 0 && Character.isHighSurrogate(before.charAt(p - 1))) p--;
+        int s = 0;
+        while (s < max - p && before.charAt(before.length() - 1 - s) == after.charAt(after.length() - 1 - s)) s++;
+        if (s > 0 && Character.isLowSurrogate(before.charAt(before.length() - s))) s--;
+        Map<String, Object> t = new LinkedHashMap<>();
+        t.put("p", p);
+        t.put("s", s);
+        t.put("d", before.substring(p, before.length() - s));
+        t.put("i", after.substring(p, after.length() - s));
+        return t;
+    }
+
+    /**
+     * 保留原文的前缀与后缀，中段由 from 换成 to；原文与差异不符时抛出异常
+     * （回放按快照水位取日志，每条日志只会作用在它生效前的文本上）
+     */
+    private static String splice(String text, Map<String, Object> t, String from, String to) {
+        int p = toInt(t.get("p")), s = toInt(t.get("s"));
+        String base = text != null ? text : "";
+        if (p + s > base.length() || !base.substring(p, base.length() - s).equals(from != null ? from : "")) {
+            throw new IllegalStateException("文本差异与原文不符");
+        }
+        return base.substring(0, p) + (to != null ? to : "") + base.substring(base.length() - s);
+    }
+
+    /** 空串与 null 视为相同，避免表单回传的空值产生无意义的变更 */
+    private static Object normalize(Object v) {
+        if (v instanceof String && ((String) v).isEmpty()) return null;
+        return v instanceof Number || v instanceof String ? v.toString() : v;
+    }
+
+    private static String toStr(Object v) {
+        return v != null ? v.toString() : null;
+    }
+
+    private static Integer toInt(Object v) {
+        if (v == null) return null;
+        return v instanceof Number ? ((Number) v).intValue() : Integer.valueOf(v.toString());
+    }
+
+    private static Boolean toBool(Object v) {
+        if (v == null) return null;
+        return v instanceof Boolean ? (Boolean) v : Boolean.valueOf(v.toString());
+    }
+
+    private static Long toLong(Object v) {
+        if (v == null) return null;
+        return v instanceof Number ? ((Number) v).longValue() : Long.valueOf(v.toString());
+    }
+}
@@ -0,0 +1,259 @@
+package com.genealogy.service;
+
+import com.genealogy.entity.Person;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 人物全文倒排索引（常驻内存，覆盖全部家族）
+ * <p>
+ * 姓名、出生地、简介按汉字二元组（姓名与出生地另加单字）与英文/数字词切分；
+ * 姓名另外加入每个字的拼音、全拼与首字母词项。
+ * 每次写入人物都分配新的文档槽位并作废旧槽位，倒排表只追加、按槽位有序，查询时按有序表求交。
+ * 作废槽位过多时由 {@link PersonSearchService} 丢弃整个索引并重新加载。
+ */
+public class PersonSearchIndex {
+
+    static final int NAME = 1;
+    static final int PINYIN = 2;
+    static final int PLACE = 4;
+    static final int BIO = 8;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Posting> postings = new HashMap<>();
+    private final Map<Long, Integer> slotOf = new HashMap<>();
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] familyIds = new long[INITIAL_CAPACITY];
+    private String[] names = new String[INITIAL_CAPACITY];
+    private boolean[] live = new boolean[INITIAL_CAPACITY];
+    private int size;
+    private int liveCount;
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int garbageCount() {
+        lock.readLock().lock();
+        try {
+            return size - liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 新增或覆盖人物 */
+    public void put(Person p) {
+        Map<String, Integer> terms = analyze(p);
+        lock.writeLock().lock();
+        try {
+            doRemove(p.getId());
+            if (size == ids.length) grow();
+            int slot = size++;
+            ids[slot] = p.getId();
+            familyIds[slot] = p.getFamilyId() != null ? p.getFamilyId() : 0L;
+            names[slot] = p.getName();
+            live[slot] = true;
+            slotOf.put(p.getId(), slot);
+            liveCount++;
+            terms.forEach((term, fields) -> postings.computeIfAbsent(term, k -> new Posting()).add(slot, fields));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long personId) {
+        lock.writeLock().lock();
+        try {
+            doRemove(personId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 检索：查询串切分后的每个词项都必须命中（AND），按命中字段加权打分排序
+     *
+     * @param familyId 为 null 时检索全部家族
+     * @return 按得分降序的全部命中人物ID
+     */
+    public List<Long> search(String query, Long familyId) {
+        Set<String> terms = analyzeQuery(query);
+        if (terms.isEmpty()) return Collections.emptyList();
+        String exact = query.trim();
+
+        lock.readLock().lock();
+        try {
+            Posting[] lists = new Posting[terms.size()];
+            int n = 0;
+            for (String t : terms) {
+                Posting posting = postings.get(t);
+                if (posting == null) return Collections.emptyList();
+                lists[n++] = posting;
+            }
+            Arrays.sort(lists, Comparator.comparingInt(l -> l.size));
+
+            List<long[]> hits = new ArrayList<>();
+            Posting first = lists[0];
+            outer:
+            for (int k = 0; k < first.size; k++) {
+                int slot = first.slots[k];
+                if (!live[slot] || (familyId != null && familyIds[slot] != familyId)) continue;
+                int score = weight(first.fields[k]);
+                for (int j = 1; j < n; j++) {
+                    int pos = Arrays.binarySearch(lists[j].slots, 0, lists[j].size, slot);
+                    if (pos < 0) continue outer;
+                    score += weight(lists[j].fields[pos]);
+                }
+                if (exact.equals(names[slot])) score += 100;
+                hits.add(new long[]{slot, score});
+            }
+            hits.sort((a, b) -> {
+                if (a[1] != b[1]) return Long.compare(b[1], a[1]);
+                int la = names[(int) a[0]] != null ? names[(int) a[0]].length() : 0;
+                int lb = names[(int) b[0]] != null ? names[(int) b[0]].length() : 0;
+                return la != lb ? Integer.compare(la, lb) : Long.compare(a[0], b[0]);
+            });
+            List<Long> result = new ArrayList<>(hits.size());
+            for (long[] h : hits) {
+                result.add(ids[(int) h[0]]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== 切分 ====================
+
+    /** 文档词项 → 命中字段位 */
+    static Map<String, Integer> analyze(Person p) {
+        Map<String, Integer> terms = new HashMap<>();
+        addText(terms, p.getName(), NAME, true);
+        addText(terms, p.getBirthPlace(), PLACE, true);
+        addText(terms, p.getBio(), BIO, false);
+        String name = p.getName();
+        if (name != null && !name.isBlank()) {
+            for (int i = 0; i < name.length(); i++) {
+                for (String r : Pinyin.readings(name.charAt(i))) {
+                    terms.merge(r, PINYIN, (a, b) -> a | b);
+                }
+            }
+            String full = Pinyin.full(name);
+            if (!full.isEmpty()) terms.merge(full, PINYIN, (a, b) -> a | b);
+            String initials = Pinyin.initials(name);
+            if (!initials.isEmpty()) terms.merge(initials, PINYIN, (a, b) -> a | b);
+        }
+        return terms;
+    }
+
+    /** 查询词项：汉字段取二元组（单字取单字），其他字符按词切分并转小写 */
+    static Set<String> analyzeQuery(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (query == null) return terms;
+        for (String part : query.trim().split("\\s+")) {
+            if (part.isEmpty()) continue;
+            Map<String, Integer> t = new LinkedHashMap<>();
+            addText(t, part, 0, false);
+            if (t.isEmpty() || hasSingleHan(part)) {
+                addText(t, part, 0, true);
+            }
+            terms.addAll(t.keySet());
+        }
+        return terms;
+    }
+
+    private static boolean hasSingleHan(String text) {
+        int run = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i < text.length() && Pinyin.isHan(text.charAt(i))) {
+                run++;
+            } else {
+                if (run == 1) return true;
+                run = 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 切分一段文本：连续汉字取相邻二元组（unigrams 为 true 时同时取单字），连续字母数字作为一个小写词
+     */
+    private static void addText(Map<String, Integer> terms, String text, int field, boolean unigrams) {
+        if (text == null || text.isEmpty()) return;
+        int i = 0, len = text.length();
+        while (i < len) {
+            char c = text.charAt(i);
+            if (Pinyin.isHan(c)) {
+                int j = i;
+                while (j < len && Pinyin.isHan(text.charAt(j))) j++;
+                for (int k = i; k < j; k++) {
+                    if (unigrams) terms.merge(String.valueOf(text.charAt(k)), field, (a, b) -> a | b);
+                    if (k + 1 < j) terms.merge(text.substring(k, k + 2), field, (a, b) -> a | b);
+                }
+                i = j;
+            } else if (Character.isLetterOrDigit(c)) {
+                int j = i;
+                while (j < len && Character.isLetterOrDigit(text.charAt(j)) && !Pinyin.isHan(text.charAt(j))) j++;
+                terms.merge(text.substring(i, j).toLowerCase(Locale.ROOT), field, (a, b) -> a | b);
+                i = j;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /** 字段权重：姓名 > 拼音 > 出生地 > 简介，多个字段同时命中取最高 */
+    private static int weight(int fields) {
+        if ((fields & NAME) != 0) return 10;
+        if ((fields & PINYIN) != 0) return 6;
+        if ((fields & PLACE) != 0) return 3;
+        return 1;
+    }
+
+    // ==================== 内部实现（调用方持有写锁） ====================
+
+    private void doRemove(Long personId) {
+        Integer slot = slotOf.remove(personId);
+        if (slot == null) return;
+        live[slot] = false;
+        names[slot] = null;
+        liveCount--;
+    }
+
+    private void grow() {
+        int newCap = ids.length * 2;
+        ids = Arrays.copyOf(ids, newCap);
+        familyIds = Arrays.copyOf(familyIds, newCap);
+        names = Arrays.copyOf(names, newCap);
+        live = Arrays.copyOf(live, newCap);
+    }
+
+    /**
+     * 倒排表：按槽位递增的文档列表与对应的命中字段位
+     */
+    private static class Posting {
+        int[] slots = new int[4];
+        byte[] fields = new byte[4];
+        int size;
+
+        void add(int slot, int field) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            slots[size] = slot;
+            fields[size] = (byte) field;
+            size++;
+        }
+    }
+}
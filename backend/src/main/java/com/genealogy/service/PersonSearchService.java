@@ -0,0 +1,110 @@
+package com.genealogy.service;
+
+import com.genealogy.dto.PageResult;
+import com.genealogy.entity.Person;
+import com.genealogy.mapper.PersonMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 人物检索服务
+ * 倒排索引在首次检索时流式加载全部人物，之后由人物写接口增量维护
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PersonSearchService {
+
+    /** 每页条数上限 */
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private final PersonMapper personMapper;
+
+    /** 加载期间持有写锁，写操作同步持有读锁，保证加载时提交的写入不会丢失 */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile PersonSearchIndex index;
+
+    /**
+     * 检索人物，按相关度排序并分页
+     *
+     * @param familyId 为 null 时检索全部家族
+     */
+    public PageResult<Person> search(String keyword, Long familyId, int pageNum, int pageSize) {
+        pageNum = Math.max(1, pageNum);
+        pageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        List<Long> ids = ensureLoaded().search(keyword, familyId);
+
+        int from = (int) Math.min((long) (pageNum - 1) * pageSize, ids.size());
+        int to = Math.min(from + pageSize, ids.size());
+        return PageResult.of(fetchInOrder(ids.subList(from, to)), ids.size(), pageNum, pageSize);
+    }
+
+    private List<Person> fetchInOrder(List<Long> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
+        Map<Long, Person> byId = personMapper.selectBatchIds(ids).stream()
+                .collect(Collectors.toMap(Person::getId, Function.identity()));
+        List<Person> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Person p = byId.get(id);
+            if (p != null) result.add(p);
+        }
+        return result;
+    }
+
+    // ==================== 写操作同步 ====================
+
+    public void putPerson(Person p) {
+        lock.readLock().lock();
+        try {
+            PersonSearchIndex idx = index;
+            if (idx == null) return;
+            idx.put(p);
+            compactIfNeeded(idx);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void removePerson(Long personId) {
+        lock.readLock().lock();
+        try {
+            PersonSearchIndex idx = index;
+            if (idx == null) return;
+            idx.remove(personId);
+            compactIfNeeded(idx);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 作废槽位多于存活人物时丢弃索引，下次检索重新紧凑加载 */
+    private void compactIfNeeded(PersonSearchIndex idx) {
+        if (idx.garbageCount() > Math.max(1024, idx.size())) index = null;
+    }
+
+    // ==================== 加载 ====================
+
+    private PersonSearchIndex ensureLoaded() {
+        PersonSearchIndex idx = index;
+        if (idx != null) return idx;
+        lock.writeLock().lock();
+        try {
+            if (index == null) {
+                long start = System.currentTimeMillis();
+                PersonSearchIndex loaded = new PersonSearchIndex();
+                personMapper.scanSearchFields(ctx -> loaded.put(ctx.getResultObject()));
+                index = loaded;
+                log.info("加载人物检索索引 人物={} 耗时={}ms", loaded.size(), System.currentTimeMillis() - start);
+            }
+            return index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
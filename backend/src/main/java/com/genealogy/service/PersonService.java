@@ -1,24 +1,90 @@
 package com.genealogy.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.genealogy.dto.CursorPage;
+import com.genealogy.dto.FlatTreeDTO;
+import com.genealogy.dto.R;
 import com.genealogy.dto.TreeNodeDTO;
 import com.genealogy.entity.Person;
-import com.genealogy.entity.Relation;
 import com.genealogy.mapper.PersonMapper;
-import com.genealogy.mapper.RelationMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
 public class PersonService extends ServiceImpl<PersonMapper, Person> {
 
-    private final RelationMapper relationMapper;
+    /** 窗口查询向上/向下的最大层数 */
+    private static final int MAX_WINDOW_DEPTH = 30;
+
+    /** 游标分页单页上限 */
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /** 可投影字段：字段名 -> (列名, 取值)，顺序即输出顺序 */
+    private static final Map<String, Map.Entry<String, Function<Person, Object>>> LIST_FIELDS = new LinkedHashMap<>();
+
+    static {
+        LIST_FIELDS.put("id", Map.entry("id", Person::getId));
+        LIST_FIELDS.put("familyId", Map.entry("family_id", Person::getFamilyId));
+        LIST_FIELDS.put("name", Map.entry("name", Person::getName));
+        LIST_FIELDS.put("gender", Map.entry("gender", Person::getGender));
+        LIST_FIELDS.put("generation", Map.entry("generation", Person::getGeneration));
+        LIST_FIELDS.put("birthDate", Map.entry("birth_date", Person::getBirthDate));
+        LIST_FIELDS.put("deathDate", Map.entry("death_date", Person::getDeathDate));
+        LIST_FIELDS.put("birthPlace", Map.entry("birth_place", Person::getBirthPlace));
+        LIST_FIELDS.put("bio", Map.entry("bio", Person::getBio));
+        LIST_FIELDS.put("avatarUrl", Map.entry("avatar_url", Person::getAvatarUrl));
+        LIST_FIELDS.put("isStarred", Map.entry("is_starred", Person::getIsStarred));
+        LIST_FIELDS.put("createdAt", Map.entry("created_at", Person::getCreatedAt));
+        LIST_FIELDS.put("updatedAt", Map.entry("updated_at", Person::getUpdatedAt));
+    }
+
+    private static final ObjectMapper CBOR_MAPPER = new CBORMapper();
+
+    private final FamilyGraphService familyGraphService;
+    private final ObjectMapper objectMapper;
+
+    /** 保存前由出生/去世日期生成排序键 */
+    @Override
+    public boolean save(Person entity) {
+        fillDateKeys(entity);
+        return super.save(entity);
+    }
+
+    /** 更新前由出生/去世日期生成排序键；日期为空时排序键同样不更新 */
+    @Override
+    public boolean updateById(Person entity) {
+        fillDateKeys(entity);
+        return super.updateById(entity);
+    }
+
+    static void fillDateKeys(Person p) {
+        if (p.getBirthDate() != null) {
+            DateKey key = DateKey.parse(p.getBirthDate());
+            p.setBirthSort(DateKey.sortOf(key));
+            p.setBirthPrecision(DateKey.precisionOf(key));
+        }
+        if (p.getDeathDate() != null) {
+            DateKey key = DateKey.parse(p.getDeathDate());
+            p.setDeathSort(DateKey.sortOf(key));
+            p.setDeathPrecision(DateKey.precisionOf(key));
+        }
+    }
 
+    /**
+     * 列出人物，按姓名模糊匹配，按世代、姓名排序；全文检索见 PersonSearchService
+     */
     public List<Person> search(String keyword, Long familyId) {
         LambdaQueryWrapper<Person> qw = new LambdaQueryWrapper<>();
         if (familyId != null) {
@@ -31,71 +97,104 @@ public class PersonService extends ServiceImpl<PersonMapper, Person> {
         return list(qw);
     }
 
-    public TreeNodeDTO buildTree(Long familyId) {
-        LambdaQueryWrapper<Person> pqw = new LambdaQueryWrapper<>();
+    /**
+     * 按 (generation, name, id) 游标分页列出人物，只查询 fields 指定的列（为空时返回全部字段）；
+     * 每页走 idx_family_gen_name 索引范围扫描，与翻页深度无关。
+     * bornFrom/bornTo 按出生年份过滤（含端点），基于出生日期排序键
+     */
+    public CursorPage<Map<String, Object>> listPage(Long familyId, String cursor, int limit, String fields,
+                                                    Integer bornFrom, Integer bornTo) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Set<String> selected = parseFields(fields);
+
+        // 游标列始终查询，用于生成下一页游标
+        Set<String> columns = new LinkedHashSet<>(List.of("id", "generation", "name"));
+        for (String f : selected) columns.add(LIST_FIELDS.get(f).getKey());
+
+        QueryWrapper<Person> qw = new QueryWrapper<>();
+        qw.select(columns.toArray(new String[0]));
         if (familyId != null) {
-            pqw.eq(Person::getFamilyId, familyId);
+            qw.eq("family_id", familyId);
         }
-        List<Person> allPersons = list(pqw);
-        List<Relation> allRelations = relationMapper.selectList(new LambdaQueryWrapper<>());
-
-        if (allPersons.isEmpty()) return null;
-
-        Set<Long> personIds = allPersons.stream().map(Person::getId).collect(Collectors.toSet());
-
-        Map<Long, TreeNodeDTO> nodeMap = new HashMap<>();
-        for (Person p : allPersons) {
-            TreeNodeDTO node = new TreeNodeDTO();
-            node.setId(p.getId());
-            node.setName(p.getName());
-            node.setGender(p.getGender());
-            node.setGeneration(p.getGeneration());
-            node.setBirthDate(p.getBirthDate());
-            node.setDeathDate(p.getDeathDate());
-            node.setBirthPlace(p.getBirthPlace());
-            node.setBio(p.getBio());
-            node.setAvatarUrl(p.getAvatarUrl());
-            node.setIsStarred(p.getIsStarred());
-            node.setSpouses(new ArrayList<>());
-            node.setChildren(new ArrayList<>());
-            nodeMap.put(p.getId(), node);
+        if (bornFrom != null) {
+            qw.ge("birth_sort", DateKey.lowerBound(bornFrom));
         }
-
-        Map<Long, Long> childOf = new HashMap<>();
-        Set<Long> spouseIds = new HashSet<>();
-
-        for (Relation r : allRelations) {
-            if (!personIds.contains(r.getFromId()) || !personIds.contains(r.getToId())) continue;
-            if ("spouse".equals(r.getType())) {
-                TreeNodeDTO from = nodeMap.get(r.getFromId());
-                TreeNodeDTO to = nodeMap.get(r.getToId());
-                if (from != null && to != null) {
-                    from.getSpouses().add(to);
-                    spouseIds.add(r.getToId());
-                }
-            } else {
-                childOf.put(r.getToId(), r.getFromId());
-            }
+        if (bornTo != null) {
+            qw.le("birth_sort", DateKey.upperBound(bornTo));
+        }
+        if (bornFrom == null && bornTo != null) {
+            // 排除无法识别的日期（排序键为 0）
+            qw.gt("birth_sort", 0);
         }
+        if (cursor != null && !cursor.isBlank()) {
+            Object[] c = decodeCursor(cursor);
+            int gen = (Integer) c[0];
+            String name = (String) c[1];
+            long id = (Long) c[2];
+            qw.and(w -> w.gt("generation", gen)
+                    .or(x -> x.eq("generation", gen)
+                            .and(y -> y.gt("name", name)
+                                    .or(z -> z.eq("name", name).gt("id", id)))));
+        }
+        qw.orderByAsc("generation", "name", "id");
+        qw.last("LIMIT " + (size + 1));
+        List<Person> rows = list(qw);
+
+        String next = null;
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            Person last = rows.get(size - 1);
+            next = encodeCursor(last.getGeneration(), last.getName(), last.getId());
+        }
+        List<Map<String, Object>> records = new ArrayList<>(rows.size());
+        for (Person p : rows) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            for (String f : selected) m.put(f, LIST_FIELDS.get(f).getValue().apply(p));
+            records.add(m);
+        }
+        return CursorPage.of(records, next);
+    }
 
-        for (Person p : allPersons) {
-            Long parentId = childOf.get(p.getId());
-            if (parentId != null && nodeMap.containsKey(parentId)) {
-                nodeMap.get(parentId).getChildren().add(nodeMap.get(p.getId()));
-            }
+    /** 解析逗号分隔的字段名，为空时取全部字段，未知字段抛出 IllegalArgumentException */
+    private Set<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) return LIST_FIELDS.keySet();
+        Set<String> selected = new LinkedHashSet<>();
+        for (String f : fields.split(",")) {
+            f = f.trim();
+            if (f.isEmpty()) continue;
+            if (!LIST_FIELDS.containsKey(f)) throw new IllegalArgumentException("未知字段: " + f);
+            selected.add(f);
         }
+        return selected.isEmpty() ? LIST_FIELDS.keySet() : selected;
+    }
 
-        List<TreeNodeDTO> roots = allPersons.stream()
-                .filter(p -> !childOf.containsKey(p.getId()) && !spouseIds.contains(p.getId()))
-                .map(p -> nodeMap.get(p.getId()))
-                .collect(Collectors.toList());
+    /** 游标：generation:id:name 的 URL 安全 Base64，姓名放最后以免含分隔符 */
+    private String encodeCursor(Integer generation, String name, Long id) {
+        String raw = (generation != null ? generation : 0) + ":" + id + ":" + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
 
-        if (roots.isEmpty()) {
-            roots = allPersons.stream()
-                    .filter(p -> !childOf.containsKey(p.getId()))
-                    .map(p -> nodeMap.get(p.getId()))
-                    .collect(Collectors.toList());
+    private Object[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 3);
+            return new Object[]{Integer.parseInt(parts[0]), parts[2], Long.parseLong(parts[1])};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的游标");
         }
+    }
+
+    public TreeNodeDTO buildTree(Long familyId) {
+        return buildTree(familyGraphService.get(familyId));
+    }
+
+    /**
+     * 由家族图构建族谱树，多个根节点时挂在虚拟根下
+     */
+    public TreeNodeDTO buildTree(FamilyGraph graph) {
+        List<TreeNodeDTO> roots = graph.treeRoots();
+
+        if (roots.isEmpty()) return null;
 
         if (roots.size() == 1) {
             return roots.get(0);
@@ -111,30 +210,39 @@ public class PersonService extends ServiceImpl<PersonMapper, Person> {
         return virtualRoot;
     }
 
-    public Map<String, Object> stats(Long familyId) {
-        LambdaQueryWrapper<Person> pqw = new LambdaQueryWrapper<>();
-        if (familyId != null) {
-            pqw.eq(Person::getFamilyId, familyId);
+    /**
+     * 以统一响应格式流式输出族谱树，不构建 TreeNodeDTO；在家族图的副本上输出，不持有家族图的锁
+     */
+    public void writeTree(Long familyId, OutputStream out) throws IOException {
+        FamilyGraph graph = familyGraphService.get(familyId).treeCopy();
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeNumberField("code", 200);
+            gen.writeStringField("msg", "success");
+            gen.writeFieldName("data");
+            graph.writeTree(gen);
+            gen.writeEndObject();
         }
-        List<Person> all = list(pqw);
-        List<Relation> rels = relationMapper.selectList(new LambdaQueryWrapper<>());
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("total", all.size());
-        result.put("maxGeneration", all.stream().mapToInt(Person::getGeneration).max().orElse(0));
-        result.put("maleCount", all.stream().filter(p -> "male".equals(p.getGender())).count());
-        result.put("femaleCount", all.stream().filter(p -> "female".equals(p.getGender())).count());
-        result.put("starredCount", all.stream().filter(p -> Boolean.TRUE.equals(p.getIsStarred())).count());
-
-        Set<Long> personIds = all.stream().map(Person::getId).collect(Collectors.toSet());
-        result.put("spouseCount", rels.stream()
-                .filter(r -> "spouse".equals(r.getType()) && personIds.contains(r.getFromId()))
-                .count());
-
-        Map<Integer, Long> genDist = all.stream()
-                .collect(Collectors.groupingBy(Person::getGeneration, Collectors.counting()));
-        result.put("generationDistribution", genDist);
-
-        return result;
+    }
+
+    /**
+     * 输出扁平列式族谱树，cbor 为 true 时使用 CBOR 二进制编码，否则为 JSON
+     */
+    public void writeFlatTree(Long familyId, OutputStream out, boolean cbor) throws IOException {
+        FlatTreeDTO flat = familyGraphService.get(familyId).flatten();
+        (cbor ? CBOR_MAPPER : objectMapper).writeValue(out, R.ok(flat));
+    }
+
+    public Map<String, Object> stats(Long familyId) {
+        return familyGraphService.get(familyId).stats();
+    }
+
+    /**
+     * 以某人为焦点的族谱树窗口，层数超出上限时截断
+     */
+    public TreeNodeDTO subtree(Person p, int up, int down) {
+        int clampedUp = Math.max(0, Math.min(up, MAX_WINDOW_DEPTH));
+        int clampedDown = Math.max(0, Math.min(down, MAX_WINDOW_DEPTH));
+        return familyGraphService.get(p.getFamilyId()).window(p.getId(), clampedUp, clampedDown);
     }
 }
@@ -0,0 +1,151 @@
+package com.genealogy.service;
+
+import com.genealogy.dto.SuggestDTO;
+import com.genealogy.entity.Person;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 人物选择器联想
+ * 每个家族维护一份按键排序的跳表（姓名、全拼、首字母各一个键），前缀查询为一次定位加顺序扫描。
+ * 首次查询时从家族图加载，之后由人物写接口按人增量维护，不随其他写操作重建。
+ */
+@Service
+@RequiredArgsConstructor
+public class PersonSuggestService {
+
+    /** 返回条数上限 */
+    public static final int MAX_LIMIT = 50;
+
+    /** 键与人物 ID 的分隔符，小于任何可见字符，使完全匹配的键排在同前缀的更长键之前 */
+    private static final char SEP = '\0';
+
+    private final FamilyGraphService familyGraphService;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, FamilyIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * 按前缀联想，匹配姓名、全拼或首字母；完全匹配的键排在前面，其余按键的字典序
+     */
+    public List<SuggestDTO> suggest(String prefix, Long familyId, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) return Collections.emptyList();
+        limit = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        FamilyIndex index = ensureLoaded(familyId);
+        List<SuggestDTO> result = new ArrayList<>(limit);
+        Set<Long> seen = new HashSet<>();
+        for (Map.Entry<String, SuggestDTO> e : index.entries.tailMap(key).entrySet()) {
+            if (result.size() >= limit || !e.getKey().startsWith(key)) break;
+            SuggestDTO dto = e.getValue();
+            if (seen.add(dto.getId())) result.add(dto);
+        }
+        return result;
+    }
+
+    // ==================== 写操作同步 ====================
+
+    /** 人物新增或修改；换了家族时传入原家族 */
+    public void putPerson(Long oldFamilyId, Person p) {
+        lock.readLock().lock();
+        try {
+            if (oldFamilyId != null && !oldFamilyId.equals(p.getFamilyId())) {
+                FamilyIndex old = indexes.get(oldFamilyId);
+                if (old != null) old.remove(p.getId());
+            }
+            FamilyIndex index = p.getFamilyId() != null ? indexes.get(p.getFamilyId()) : null;
+            if (index != null) index.put(p);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void removePerson(Person p) {
+        lock.readLock().lock();
+        try {
+            FamilyIndex index = p.getFamilyId() != null ? indexes.get(p.getFamilyId()) : null;
+            if (index != null) index.remove(p.getId());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 批量修改（如重算世代）后丢弃家族索引，下次查询重新加载 */
+    public void evict(Long familyId) {
+        if (familyId == null) return;
+        lock.writeLock().lock();
+        try {
+            indexes.remove(familyId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== 加载 ====================
+
+    /**
+     * 首次查询时加载；加载期间持有写锁，并发的人物写操作在加载完成后应用，不会丢失。
+     * 家族图不常驻（家族不存在或加载期间被写入）时索引也不保留，避免随意的家族 ID 使映射表增长
+     */
+    private FamilyIndex ensureLoaded(Long familyId) {
+        FamilyIndex index = indexes.get(familyId);
+        if (index != null) return index;
+        lock.writeLock().lock();
+        try {
+            index = indexes.get(familyId);
+            if (index == null) {
+                index = new FamilyIndex();
+                for (Person p : familyGraphService.get(familyId).persons()) index.put(p);
+                if (familyGraphService.isResident(familyId)) indexes.put(familyId, index);
+            }
+            return index;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static String normalize(String s) {
+        return s == null ? "" : s.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 家族联想索引：entries 的键为 联想键 + SEP + 人物ID，keysOf 记录每人的条目以便修改时删除
+     */
+    private static class FamilyIndex {
+        final ConcurrentSkipListMap<String, SuggestDTO> entries = new ConcurrentSkipListMap<>();
+        final Map<Long, List<String>> keysOf = new ConcurrentHashMap<>();
+
+        void put(Person p) {
+            keysOf.compute(p.getId(), (id, old) -> {
+                if (old != null) old.forEach(entries::remove);
+                if (p.getName() == null || p.getName().isBlank()) return null;
+                SuggestDTO dto = new SuggestDTO(p.getId(), p.getName(), p.getGeneration(), p.getGender());
+                Set<String> personKeys = new LinkedHashSet<>();
+                personKeys.add(normalize(p.getName()));
+                personKeys.add(Pinyin.full(p.getName()));
+                personKeys.add(Pinyin.initials(p.getName()));
+                List<String> keys = new ArrayList<>(personKeys.size());
+                for (String k : personKeys) {
+                    if (k.isEmpty()) continue;
+                    String entry = k + SEP + id;
+                    entries.put(entry, dto);
+                    keys.add(entry);
+                }
+                return keys;
+            });
+        }
+
+        void remove(Long personId) {
+            keysOf.computeIfPresent(personId, (id, old) -> {
+                old.forEach(entries::remove);
+                return null;
+            });
+        }
+    }
+}
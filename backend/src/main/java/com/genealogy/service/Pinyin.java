@@ -0,0 +1,71 @@
+package com.genealogy.service;
+
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinVCharType;
+import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+
+import java.util.Arrays;
+
+/**
+ * 汉字转拼音（小写、无声调，ü 写作 v），供搜索与联想索引使用
+ */
+final class Pinyin {
+
+    private static final HanyuPinyinOutputFormat FORMAT = new HanyuPinyinOutputFormat();
+    private static final String[] NONE = new String[0];
+
+    static {
+        FORMAT.setCaseType(HanyuPinyinCaseType.LOWERCASE);
+        FORMAT.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+        FORMAT.setVCharType(HanyuPinyinVCharType.WITH_V);
+    }
+
+    private Pinyin() {
+    }
+
+    static boolean isHan(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+
+    /** 单个汉字的全部读音（去重），非汉字返回空数组 */
+    static String[] readings(char c) {
+        if (!isHan(c)) return NONE;
+        try {
+            String[] r = PinyinHelper.toHanyuPinyinStringArray(c, FORMAT);
+            return r != null ? Arrays.stream(r).distinct().toArray(String[]::new) : NONE;
+        } catch (BadHanyuPinyinOutputFormatCombination e) {
+            return NONE;
+        }
+    }
+
+    /** 全拼：每个汉字取第一个读音拼接，字母数字转小写保留，其余字符忽略 */
+    static String full(String text) {
+        return convert(text, false);
+    }
+
+    /** 首字母：每个汉字取第一个读音的首字母 */
+    static String initials(String text) {
+        return convert(text, true);
+    }
+
+    private static String convert(String text, boolean initialsOnly) {
+        if (text == null) return "";
+        StringBuilder sb = new StringBuilder(text.length() * (initialsOnly ? 1 : 4));
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isHan(c)) {
+                String[] r = readings(c);
+                if (r.length > 0) {
+                    if (initialsOnly) sb.append(r[0].charAt(0));
+                    else sb.append(r[0]);
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,253 @@
+package com.genealogy.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 全库亲缘关系图（不区分家族），用于跨家族的最短亲缘路径查找
+ * <p>
+ * 人物ID映射为 int 下标，每个人物一条无向邻接表，元素编码为 {@code 邻居下标 << 3 | 收养位 | 方向}，
+ * 方向表示邻居相对本人的身份：{@link #PARENT} 父母、{@link #CHILD} 子女、{@link #SPOUSE} 配偶。
+ * 非线程安全，由 {@link KinshipPathService} 加锁访问。
+ */
+public class RelationGraph {
+
+    public static final int PARENT = 0;
+    public static final int CHILD = 1;
+    public static final int SPOUSE = 2;
+    public static final int ADOPTED = 4;
+
+    private static final int KIND_BITS = 3;
+    private static final int KIND_MASK = 7;
+    private static final int[] EMPTY = new int[0];
+
+    private final LongIntMap indexOf;
+    private long[] ids;
+    private int[][] adj;
+    private int[] deg;
+    private int size;
+    private long edgeCount;
+
+    public RelationGraph(int expectedNodes) {
+        int capacity = Math.max(16, expectedNodes);
+        indexOf = new LongIntMap(capacity);
+        ids = new long[capacity];
+        adj = new int[capacity][];
+        deg = new int[capacity];
+    }
+
+    public int nodeCount() {
+        return size;
+    }
+
+    public long edgeCount() {
+        return edgeCount;
+    }
+
+    /** 新增关系，已存在的相同边不重复添加 */
+    public void addRelation(long fromId, long toId, String type) {
+        int from = ensureNode(fromId);
+        int to = ensureNode(toId);
+        int adopted = "adopted".equals(type) ? ADOPTED : 0;
+        int forward = "spouse".equals(type) ? SPOUSE : CHILD;
+        int backward = "spouse".equals(type) ? SPOUSE : PARENT;
+        if (indexOfEntry(from, to << KIND_BITS | adopted | forward) >= 0) return;
+        append(from, to << KIND_BITS | adopted | forward);
+        append(to, from << KIND_BITS | adopted | backward);
+        edgeCount++;
+    }
+
+    /** 删除关系 */
+    public void removeRelation(long fromId, long toId, String type) {
+        int from = indexOf.get(fromId, -1);
+        int to = indexOf.get(toId, -1);
+        if (from < 0 || to < 0) return;
+        int adopted = "adopted".equals(type) ? ADOPTED : 0;
+        int forward = "spouse".equals(type) ? SPOUSE : CHILD;
+        int backward = "spouse".equals(type) ? SPOUSE : PARENT;
+        if (removeEntry(from, to << KIND_BITS | adopted | forward)) {
+            removeEntry(to, from << KIND_BITS | adopted | backward);
+            edgeCount--;
+        }
+    }
+
+    /** 删除人物的全部关系（下标保留，不再有边） */
+    public void removePerson(long personId) {
+        int i = indexOf.get(personId, -1);
+        if (i < 0) return;
+        for (int k = 0; k < deg[i]; k++) {
+            int e = adj[i][k];
+            int neighbor = e >>> KIND_BITS;
+            int back = i << KIND_BITS | (e & ADOPTED) | inverse(e & (KIND_MASK & ~ADOPTED));
+            removeEntry(neighbor, back);
+            edgeCount--;
+        }
+        adj[i] = EMPTY;
+        deg[i] = 0;
+    }
+
+    /**
+     * 双向 BFS 查找最短路径，每轮扩展较小的一侧并完整扩展一层，
+     * 在相遇点中选取总长度最短者
+     *
+     * @return 路径上的步骤，首个步骤的 kind 为 -1；不连通或超出跳数上限时返回 null
+     */
+    public List<Step> shortestPath(long fromId, long toId, int maxHops) {
+        int s = indexOf.get(fromId, -1);
+        int t = indexOf.get(toId, -1);
+        if (s < 0 || t < 0) return null;
+        List<Step> path = new ArrayList<>();
+        if (s == t) {
+            path.add(new Step(fromId, -1));
+            return path;
+        }
+
+        // 值编码为 前驱下标 << 3 | 本节点相对前驱的身份，起点为 -1
+        LongIntMap prevF = new LongIntMap(64);
+        LongIntMap prevB = new LongIntMap(64);
+        prevF.put(s, -1);
+        prevB.put(t, -1);
+        int[] frontF = {s};
+        int[] frontB = {t};
+        int sizeF = 1, sizeB = 1;
+        int hops = 0;
+
+        while (sizeF > 0 && sizeB > 0 && hops < maxHops) {
+            boolean forward = sizeF <= sizeB;
+            int[] front = forward ? frontF : frontB;
+            int frontSize = forward ? sizeF : sizeB;
+            LongIntMap prev = forward ? prevF : prevB;
+            LongIntMap other = forward ? prevB : prevF;
+
+            int[] next = new int[Math.max(4, frontSize)];
+            int nextSize = 0;
+            int meet = -1, meetCost = Integer.MAX_VALUE;
+            for (int f = 0; f < frontSize; f++) {
+                int u = front[f];
+                for (int k = 0; k < deg[u]; k++) {
+                    int e = adj[u][k];
+                    int v = e >>> KIND_BITS;
+                    if (prev.containsKey(v)) continue;
+                    prev.put(v, u << KIND_BITS | (e & KIND_MASK));
+                    if (other.containsKey(v)) {
+                        int cost = chainLength(other, v);
+                        if (cost < meetCost) {
+                            meet = v;
+                            meetCost = cost;
+                        }
+                    }
+                    if (nextSize == next.length) next = Arrays.copyOf(next, nextSize * 2);
+                    next[nextSize++] = v;
+                }
+            }
+            hops++;
+            if (meet >= 0) return buildPath(prevF, prevB, meet);
+
+            if (forward) {
+                frontF = next;
+                sizeF = nextSize;
+            } else {
+                frontB = next;
+                sizeB = nextSize;
+            }
+        }
+        return null;
+    }
+
+    private List<Step> buildPath(LongIntMap prevF, LongIntMap prevB, int meet) {
+        // 正向：从相遇点回溯到起点后反转
+        List<Step> path = new ArrayList<>();
+        int v = meet;
+        int entry = prevF.get(v, -1);
+        while (entry >= 0) {
+            path.add(new Step(ids[v], entry & KIND_MASK));
+            v = entry >>> KIND_BITS;
+            entry = prevF.get(v, -1);
+        }
+        path.add(new Step(ids[v], -1));
+        Collections.reverse(path);
+
+        // 反向：从相遇点沿前驱走到终点，身份取反
+        v = meet;
+        entry = prevB.get(v, -1);
+        while (entry >= 0) {
+            int w = entry >>> KIND_BITS;
+            int kind = entry & KIND_MASK;
+            path.add(new Step(ids[w], (kind & ADOPTED) | inverse(kind & ~ADOPTED)));
+            v = w;
+            entry = prevB.get(v, -1);
+        }
+        return path;
+    }
+
+    private int chainLength(LongIntMap prev, int v) {
+        int len = 0;
+        int entry = prev.get(v, -1);
+        while (entry >= 0) {
+            len++;
+            entry = prev.get(entry >>> KIND_BITS, -1);
+        }
+        return len;
+    }
+
+    private static int inverse(int direction) {
+        switch (direction) {
+            case PARENT: return CHILD;
+            case CHILD: return PARENT;
+            default: return SPOUSE;
+        }
+    }
+
+    private int ensureNode(long id) {
+        int i = indexOf.get(id, -1);
+        if (i >= 0) return i;
+        if (size == ids.length) {
+            int newCap = size * 2;
+            ids = Arrays.copyOf(ids, newCap);
+            adj = Arrays.copyOf(adj, newCap);
+            deg = Arrays.copyOf(deg, newCap);
+        }
+        i = size++;
+        ids[i] = id;
+        adj[i] = EMPTY;
+        indexOf.put(id, i);
+        return i;
+    }
+
+    private void append(int i, int entry) {
+        if (deg[i] == adj[i].length) {
+            adj[i] = Arrays.copyOf(adj[i], Math.max(4, deg[i] * 2));
+        }
+        adj[i][deg[i]++] = entry;
+    }
+
+    private int indexOfEntry(int i, int entry) {
+        for (int k = 0; k < deg[i]; k++) {
+            if (adj[i][k] == entry) return k;
+        }
+        return -1;
+    }
+
+    private boolean removeEntry(int i, int entry) {
+        int k = indexOfEntry(i, entry);
+        if (k < 0) return false;
+        System.arraycopy(adj[i], k + 1, adj[i], k, deg[i] - k - 1);
+        deg[i]--;
+        return true;
+    }
+
+    /**
+     * 路径上的一步：人物ID及其相对上一人的身份（{@link #PARENT}/{@link #CHILD}/{@link #SPOUSE}，可能带 {@link #ADOPTED}）
+     */
+    public static class Step {
+        public final long personId;
+        public final int kind;
+
+        Step(long personId, int kind) {
+            this.personId = personId;
+            this.kind = kind;
+        }
+    }
+}
@@ -2,15 +2,26 @@ package com.genealogy.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.genealogy.entity.Person;
 import com.genealogy.entity.Relation;
+import com.genealogy.mapper.PersonClosureMapper;
 import com.genealogy.mapper.RelationMapper;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.*;
 
 @Service
+@RequiredArgsConstructor
 public class RelationService extends ServiceImpl<RelationMapper, Relation> {
 
+    private static final Set<String> TYPES = Set.of("parent-child", "spouse", "adopted");
+
+    /** 亲生父母数上限 */
+    private static final int MAX_PARENTS = 2;
+
+    private final PersonClosureMapper closureMapper;
+
     /**
      * 查询某人相关的所有关系
      */
@@ -21,6 +32,13 @@ public class RelationService extends ServiceImpl<RelationMapper, Relation> {
                 .eq(Relation::getToId, personId));
     }
 
+    /**
+     * 查询某家族的所有关系
+     */
+    public List<Relation> findByFamilyId(Long familyId) {
+        return getBaseMapper().selectByFamilyId(familyId);
+    }
+
     /**
      * 删除某人的所有关系
      */
@@ -30,4 +48,157 @@ public class RelationService extends ServiceImpl<RelationMapper, Relation> {
                 .or()
                 .eq(Relation::getToId, personId));
     }
+
+    // ==================== 写入校验 ====================
+
+    /**
+     * 校验单条新增关系：类型、自环、重复边、世代先后、亲生父母数与成环
+     * 成环与直系判断查闭包表中一个人的祖先行，不需要加载家族
+     *
+     * @return 错误信息，校验通过时返回 null
+     */
+    public String validate(Relation r, Person from, Person to) {
+        String error = checkBasic(r, from, to);
+        if (error != null) return error;
+        if (getBaseMapper().countBetween(r.getFromId(), r.getToId()) > 0) return "两人之间已存在关系";
+
+        if (isLineage(r)) {
+            if ("parent-child".equals(r.getType())
+                    && getBaseMapper().countParents(r.getToId()) >= MAX_PARENTS) {
+                return "该人物已有两位亲生父母";
+            }
+            if (closureMapper.countAncestor(r.getToId(), r.getFromId()) > 0) {
+                return "不能将自己的祖先添加为子女";
+            }
+        } else if (closureMapper.countAncestor(r.getFromId(), r.getToId()) > 0
+                || closureMapper.countAncestor(r.getToId(), r.getFromId()) > 0) {
+            return "直系亲属之间不能建立配偶关系";
+        }
+        return null;
+    }
+
+    /**
+     * 批量导入时整批校验一次：逐条做基础校验后，一次性取出批内人物之间已有的关系与祖先关系，
+     * 与新边合并成一张小图做重复边、父母数与成环检查
+     *
+     * @param persons 批内涉及的人物，按ID索引
+     * @return 错误信息（含序号），校验通过时返回 null
+     */
+    public String validateBatch(List<Relation> batch, Map<Long, Person> persons) {
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Relation r = batch.get(i);
+            String error = checkBasic(r, persons.get(r.getFromId()), persons.get(r.getToId()));
+            if (error != null) return batchError(i, error);
+            ids.add(r.getFromId());
+            ids.add(r.getToId());
+        }
+        if (batch.isEmpty()) return null;
+
+        // 重复边：批内与库内按无序人物对判重
+        Set<String> pairs = new HashSet<>();
+        for (Relation e : getBaseMapper().selectAmong(ids)) {
+            pairs.add(pairKey(e.getFromId(), e.getToId()));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Relation r = batch.get(i);
+            if (!pairs.add(pairKey(r.getFromId(), r.getToId()))) return batchError(i, "两人之间已存在关系");
+        }
+
+        // 亲生父母数
+        Map<Long, Integer> parentCount = new HashMap<>();
+        Set<Long> childIds = new HashSet<>();
+        for (Relation r : batch) {
+            if ("parent-child".equals(r.getType())) childIds.add(r.getToId());
+        }
+        if (!childIds.isEmpty()) {
+            for (Relation e : getBaseMapper().selectParentsOf(childIds)) {
+                parentCount.merge(e.getToId(), 1, Integer::sum);
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Relation r = batch.get(i);
+            if ("parent-child".equals(r.getType())
+                    && parentCount.merge(r.getToId(), 1, Integer::sum) > MAX_PARENTS) {
+                return batchError(i, "该人物已有两位亲生父母");
+            }
+        }
+
+        // 成环：库内已有的祖先关系 + 批内亲子边，任何新环都必然经过批内的边
+        List<Relation> ancestorPairs = closureMapper.selectAncestorPairs(ids);
+        Set<String> lineal = new HashSet<>();
+        Map<Long, List<Long>> down = new HashMap<>();
+        for (Relation e : ancestorPairs) {
+            down.computeIfAbsent(e.getFromId(), k -> new ArrayList<>()).add(e.getToId());
+            lineal.add(pairKey(e.getFromId(), e.getToId()));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Relation r = batch.get(i);
+            if (isLineage(r)) {
+                down.computeIfAbsent(r.getFromId(), k -> new ArrayList<>()).add(r.getToId());
+            } else if (lineal.contains(pairKey(r.getFromId(), r.getToId()))) {
+                return batchError(i, "直系亲属之间不能建立配偶关系");
+            }
+        }
+        Long onCycle = findCycle(ids, down);
+        if (onCycle != null) {
+            Person p = persons.get(onCycle);
+            return "批量关系中存在环（涉及 " + (p != null ? p.getName() : onCycle) + "）";
+        }
+        return null;
+    }
+
+    /** 不依赖已有关系的校验 */
+    private String checkBasic(Relation r, Person from, Person to) {
+        if (r.getType() == null || !TYPES.contains(r.getType())) return "关系类型无效";
+        if (from == null || to == null) return "人物不存在";
+        if (Objects.equals(r.getFromId(), r.getToId())) return "不能与自己建立关系";
+        if (isLineage(r) && from.getGeneration() != null && to.getGeneration() != null
+                && to.getGeneration() <= from.getGeneration()) {
+            return "子女的世代必须晚于父母";
+        }
+        return null;
+    }
+
+    /**
+     * Kahn 拓扑排序，剩余入度不为零的节点位于环上
+     *
+     * @return 环上或环下游的任一人物ID，无环时返回 null
+     */
+    private Long findCycle(Set<Long> ids, Map<Long, List<Long>> down) {
+        Map<Long, Integer> inDegree = new HashMap<>();
+        for (Long id : ids) inDegree.put(id, 0);
+        for (List<Long> targets : down.values()) {
+            for (Long t : targets) inDegree.merge(t, 1, Integer::sum);
+        }
+        Deque<Long> queue = new ArrayDeque<>();
+        inDegree.forEach((id, d) -> {
+            if (d == 0) queue.add(id);
+        });
+        int visited = 0;
+        while (!queue.isEmpty()) {
+            Long u = queue.poll();
+            visited++;
+            for (Long v : down.getOrDefault(u, Collections.emptyList())) {
+                if (inDegree.merge(v, -1, Integer::sum) == 0) queue.add(v);
+            }
+        }
+        if (visited == inDegree.size()) return null;
+        for (Map.Entry<Long, Integer> e : inDegree.entrySet()) {
+            if (e.getValue() > 0) return e.getKey();
+        }
+        return null;
+    }
+
+    private boolean isLineage(Relation r) {
+        return !"spouse".equals(r.getType());
+    }
+
+    private String pairKey(Long a, Long b) {
+        return a < b ? a + ":" + b : b + ":" + a;
+    }
+
+    private String batchError(int index, String error) {
+        return "第 " + (index + 1) + " 条：" + error;
+    }
 }
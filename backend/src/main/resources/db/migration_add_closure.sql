@@ -0,0 +1,28 @@
+-- =============================================
+-- 祖先/后代查询 - 数据库迁移脚本
+-- 创建亲缘闭包表并按现有关系回填（需 MySQL 8.0+）
+-- =============================================
+
+USE genealogy;
+
+CREATE TABLE IF NOT EXISTS t_person_closure (
+  ancestor_id   BIGINT       NOT NULL COMMENT '祖先人物ID',
+  depth         INT          NOT NULL COMMENT '相隔代数，自身为0',
+  descendant_id BIGINT       NOT NULL COMMENT '后代人物ID',
+  path_count    BIGINT       NOT NULL DEFAULT 1 COMMENT '该深度下的路径数',
+  PRIMARY KEY (ancestor_id, depth, descendant_id),
+  INDEX idx_descendant (descendant_id, depth, ancestor_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='亲缘闭包表';
+
+-- 回填：枚举所有亲子/收养路径（深度上限100，防止脏数据成环）
+INSERT INTO t_person_closure (ancestor_id, depth, descendant_id, path_count)
+WITH RECURSIVE paths (ancestor_id, depth, descendant_id) AS (
+  SELECT id, 0, id FROM t_person WHERE deleted = 0
+  UNION ALL
+  SELECT p.ancestor_id, p.depth + 1, r.to_id
+  FROM paths p
+  JOIN t_relation r ON r.from_id = p.descendant_id AND r.type <> 'spouse' AND r.deleted = 0
+  WHERE p.depth < 100
+)
+SELECT ancestor_id, depth, descendant_id, COUNT(*) FROM paths
+GROUP BY ancestor_id, depth, descendant_id;
@@ -0,0 +1,20 @@
+-- =============================================
+-- 日期归一化 - 数据库迁移脚本
+-- 为人物与事件添加可排序的日期键与精度，时间轴改按排序键分页
+-- 执行后调用 POST /api/person/dates/backfill 回填已有数据
+-- =============================================
+
+USE genealogy;
+
+ALTER TABLE t_person
+  ADD COLUMN birth_sort INT DEFAULT NULL COMMENT '出生日期排序键 yyyymmdd，0 表示无法识别' AFTER death_date,
+  ADD COLUMN birth_precision VARCHAR(10) DEFAULT NULL COMMENT '出生日期精度: day/month/year/decade/circa/lunar' AFTER birth_sort,
+  ADD COLUMN death_sort INT DEFAULT NULL COMMENT '去世日期排序键 yyyymmdd' AFTER birth_precision,
+  ADD COLUMN death_precision VARCHAR(10) DEFAULT NULL COMMENT '去世日期精度' AFTER death_sort,
+  ADD INDEX idx_family_birth (family_id, birth_sort);
+
+ALTER TABLE t_event
+  ADD COLUMN event_sort INT DEFAULT NULL COMMENT '事件日期排序键 yyyymmdd，0 表示无法识别' AFTER event_date,
+  ADD COLUMN event_precision VARCHAR(10) DEFAULT NULL COMMENT '事件日期精度' AFTER event_sort,
+  DROP INDEX idx_date,
+  ADD INDEX idx_event_sort (event_sort);
@@ -0,0 +1,20 @@
+-- =============================================
+-- 重复人物检测 - 数据库迁移脚本
+-- 创建疑似重复人物审核队列
+-- =============================================
+
+USE genealogy;
+
+CREATE TABLE IF NOT EXISTS t_duplicate_candidate (
+  id            BIGINT       PRIMARY KEY COMMENT '主键ID',
+  person_a      BIGINT       NOT NULL COMMENT '人物A（ID较小者）',
+  person_b      BIGINT       NOT NULL COMMENT '人物B（ID较大者）',
+  family_id     BIGINT       DEFAULT NULL COMMENT '人物A所属家族ID',
+  score         INT          NOT NULL COMMENT '相似度得分(0-100)',
+  reasons       VARCHAR(255) DEFAULT NULL COMMENT '命中依据',
+  status        VARCHAR(20)  NOT NULL DEFAULT 'PENDING' COMMENT '状态: PENDING/MERGED/DISMISSED',
+  created_at    DATETIME     NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  updated_at    DATETIME     NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  UNIQUE KEY uk_pair (person_a, person_b),
+  INDEX idx_family_status (family_id, status, score)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='疑似重复人物审核队列';
@@ -0,0 +1,15 @@
+-- =============================================
+-- 事件冗余家族ID - 数据库迁移脚本
+-- 家族时间轴按 (family_id, event_sort, id) 走索引，不再关联 t_person
+-- =============================================
+
+USE genealogy;
+
+ALTER TABLE t_event
+  ADD COLUMN family_id BIGINT DEFAULT NULL COMMENT '所属人物的家族ID（冗余）' AFTER person_id;
+
+UPDATE t_event e JOIN t_person p ON p.id = e.person_id
+   SET e.family_id = p.family_id;
+
+ALTER TABLE t_event
+  ADD INDEX idx_family_sort (family_id, event_sort, id);
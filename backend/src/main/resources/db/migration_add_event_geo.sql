@@ -0,0 +1,26 @@
+-- =============================================
+-- 迁徙地图空间索引 - 数据库迁移脚本
+-- 创建事件空间索引表并按现有事件回填（需 MySQL 5.7+ 的 ST_GeoHash）
+-- =============================================
+
+USE genealogy;
+
+CREATE TABLE IF NOT EXISTS t_event_geo (
+  event_id      BIGINT       PRIMARY KEY COMMENT '事件ID',
+  family_id     BIGINT       DEFAULT NULL COMMENT '事件所属人物的家族ID',
+  person_id     BIGINT       NOT NULL COMMENT '所属人物ID',
+  geohash       CHAR(12)     NOT NULL COMMENT '12位geohash',
+  latitude      DOUBLE       NOT NULL COMMENT '纬度',
+  longitude     DOUBLE       NOT NULL COMMENT '经度',
+  INDEX idx_family_geohash (family_id, geohash),
+  INDEX idx_person (person_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='事件空间索引';
+
+-- 回填：全部未删除且经纬度合法的事件
+INSERT INTO t_event_geo (event_id, family_id, person_id, geohash, latitude, longitude)
+SELECT e.id, p.family_id, e.person_id, ST_GeoHash(e.longitude, e.latitude, 12), e.latitude, e.longitude
+FROM t_event e JOIN t_person p ON p.id = e.person_id
+WHERE e.deleted = 0 AND p.deleted = 0
+  AND e.latitude BETWEEN -90 AND 90 AND e.longitude BETWEEN -180 AND 180
+ON DUPLICATE KEY UPDATE family_id = VALUES(family_id), geohash = VALUES(geohash),
+  latitude = VALUES(latitude), longitude = VALUES(longitude);
@@ -0,0 +1,9 @@
+-- =============================================
+-- 家族时间轴分页 - 数据库迁移脚本
+-- 按 (event_date, id) 游标分页（InnoDB 二级索引隐含主键 id）
+-- =============================================
+
+USE genealogy;
+
+ALTER TABLE t_event
+  ADD INDEX idx_date (event_date);
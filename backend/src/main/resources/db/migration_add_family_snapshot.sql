@@ -0,0 +1,19 @@
+-- =============================================
+-- 按时间点还原 - 数据库迁移脚本
+-- 创建家族快照表；应用启动后为尚无快照的家族各保存一份基线快照，
+-- 之后由定时任务（genealogy.snapshot.cron）按操作数补充
+-- =============================================
+
+USE genealogy;
+
+-- 家族快照（按时间点还原时回放操作日志的起点）
+CREATE TABLE IF NOT EXISTS t_family_snapshot (
+  id              BIGINT       PRIMARY KEY COMMENT '主键ID',
+  family_id       BIGINT       NOT NULL COMMENT '家族ID',
+  taken_at        DATETIME(6)  NOT NULL COMMENT '快照时间',
+  last_log_id     BIGINT       NOT NULL DEFAULT 0 COMMENT '回放水位：不大于该ID的操作日志已包含在快照中',
+  person_count    INT          NOT NULL DEFAULT 0 COMMENT '人物数',
+  relation_count  INT          NOT NULL DEFAULT 0 COMMENT '关系数',
+  data            LONGBLOB     NOT NULL COMMENT 'gzip 压缩的人物与关系 JSON',
+  INDEX idx_family_time (family_id, taken_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='家族快照';
@@ -0,0 +1,22 @@
+-- =============================================
+-- 迁徙流向聚合 - 数据库迁移脚本
+-- 创建迁徙路段表；执行后调用 POST /api/event/flows/rebuild 按现有事件生成路段
+-- =============================================
+
+USE genealogy;
+
+CREATE TABLE IF NOT EXISTS t_migration_leg (
+  id            BIGINT       PRIMARY KEY COMMENT '主键ID',
+  family_id     BIGINT       DEFAULT NULL COMMENT '所属家族ID',
+  person_id     BIGINT       NOT NULL COMMENT '人物ID',
+  seq           INT          NOT NULL COMMENT '该人的第几段，从0开始',
+  origin        VARCHAR(255) NOT NULL COMMENT '起点地名（无地名时为经纬度）',
+  origin_lat    DOUBLE       NOT NULL COMMENT '起点纬度',
+  origin_lng    DOUBLE       NOT NULL COMMENT '起点经度',
+  dest          VARCHAR(255) NOT NULL COMMENT '终点地名（无地名时为经纬度）',
+  dest_lat      DOUBLE       NOT NULL COMMENT '终点纬度',
+  dest_lng      DOUBLE       NOT NULL COMMENT '终点经度',
+  decade        INT          DEFAULT NULL COMMENT '到达终点的年代',
+  INDEX idx_family (family_id, origin, dest),
+  INDEX idx_person (person_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='迁徙路段';
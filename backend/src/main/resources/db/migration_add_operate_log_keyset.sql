@@ -0,0 +1,19 @@
+-- =============================================
+-- 操作日志游标分页 - 数据库迁移脚本
+-- 按 (created_at, id) 倒序游标分页，为各筛选条件建立以 created_at 结尾的复合索引
+-- （InnoDB 二级索引隐含主键 id），替换原有的单列索引
+-- =============================================
+
+USE genealogy;
+
+ALTER TABLE t_operate_log
+  DROP INDEX idx_family,
+  DROP INDEX idx_user,
+  DROP INDEX idx_target,
+  DROP INDEX idx_operate_type,
+  ADD INDEX idx_family_time (family_id, created_at),
+  ADD INDEX idx_family_type_time (family_id, operate_type, created_at),
+  ADD INDEX idx_user_time (user_id, created_at),
+  ADD INDEX idx_target_time (target_id, created_at),
+  ADD INDEX idx_target_type_time (target_type, created_at),
+  ADD INDEX idx_type_time (operate_type, created_at);
@@ -0,0 +1,10 @@
+-- =============================================
+-- 人物游标分页 - 数据库迁移脚本
+-- 为 (世代, 姓名, ID) 游标分页添加复合索引（InnoDB 二级索引隐含主键 id）
+-- =============================================
+
+USE genealogy;
+
+ALTER TABLE t_person
+  ADD INDEX idx_family_gen_name (family_id, generation, name),
+  ADD INDEX idx_gen_name (generation, name);
@@ -0,0 +1,14 @@
+-- =============================================
+-- 家族快照回放水位 - 数据库迁移脚本
+-- 已执行过 migration_add_family_snapshot.sql 的库执行此脚本：
+-- 快照时间改为微秒精度并记录日志 ID 水位。旧快照没有水位、边界不精确，直接删除，
+-- 应用启动后会为每个家族重新保存基线快照
+-- =============================================
+
+USE genealogy;
+
+DELETE FROM t_family_snapshot;
+
+ALTER TABLE t_family_snapshot
+  MODIFY COLUMN taken_at DATETIME(6) NOT NULL COMMENT '快照时间',
+  ADD COLUMN last_log_id BIGINT NOT NULL DEFAULT 0 COMMENT '回放水位：不大于该ID的操作日志已包含在快照中' AFTER taken_at;
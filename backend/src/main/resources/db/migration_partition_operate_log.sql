@@ -0,0 +1,18 @@
+-- =============================================
+-- 操作日志按月分区 - 数据库迁移脚本
+-- 分区表的主键必须包含分区列，主键改为 (id, created_at)
+-- 月分区 pYYYYMM 由 OperateLogPartitionService 定时从 pmax 拆出；
+-- 超过保留期的分区写入压缩归档（genealogy.audit.archive-dir）后整个 DROP
+-- =============================================
+
+USE genealogy;
+
+ALTER TABLE t_operate_log
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (id, created_at);
+
+ALTER TABLE t_operate_log
+  PARTITION BY RANGE COLUMNS(created_at) (
+    PARTITION p0 VALUES LESS THAN ('2026-01-01 00:00:00'),
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+  );
@@ -40,6 +40,10 @@ CREATE TABLE IF NOT EXISTS t_person (
   generation    INT          NOT NULL DEFAULT 1 COMMENT '世代编号',
   birth_date    VARCHAR(20)  DEFAULT NULL COMMENT '出生日期',
   death_date    VARCHAR(20)  DEFAULT NULL COMMENT '去世日期',
+  birth_sort    INT          DEFAULT NULL COMMENT '出生日期排序键 yyyymmdd，0 表示无法识别',
+  birth_precision VARCHAR(10) DEFAULT NULL COMMENT '出生日期精度: day/month/year/decade/circa/lunar',
+  death_sort    INT          DEFAULT NULL COMMENT '去世日期排序键 yyyymmdd',
+  death_precision VARCHAR(10) DEFAULT NULL COMMENT '去世日期精度',
   birth_place   VARCHAR(100) DEFAULT NULL COMMENT '出生地',
   bio           TEXT         DEFAULT NULL COMMENT '人物简介',
   avatar_url    VARCHAR(255) DEFAULT NULL COMMENT '头像路径',
@@ -49,7 +53,10 @@ CREATE TABLE IF NOT EXISTS t_person (
   updated_at    DATETIME     NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   INDEX idx_generation (generation),
   INDEX idx_name (name),
-  INDEX idx_family (family_id)
+  INDEX idx_family (family_id),
+  INDEX idx_family_gen_name (family_id, generation, name),
+  INDEX idx_gen_name (generation, name),
+  INDEX idx_family_birth (family_id, birth_sort)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='人物表';
 
 -- 亲缘关系表
@@ -68,21 +75,26 @@ CREATE TABLE IF NOT EXISTS t_relation (
 CREATE TABLE IF NOT EXISTS t_event (
   id            BIGINT       PRIMARY KEY COMMENT '主键ID',
   person_id     BIGINT       NOT NULL COMMENT '所属人物ID',
+  family_id     BIGINT       DEFAULT NULL COMMENT '所属人物的家族ID（冗余）',
   type          VARCHAR(20)  NOT NULL DEFAULT 'other' COMMENT '事件类型: birth/death/marriage/migration/achievement/residence/other',
   title         VARCHAR(100) NOT NULL COMMENT '事件标题',
   event_date    VARCHAR(20)  DEFAULT NULL COMMENT '事件日期',
+  event_sort    INT          DEFAULT NULL COMMENT '事件日期排序键 yyyymmdd，0 表示无法识别',
+  event_precision VARCHAR(10) DEFAULT NULL COMMENT '事件日期精度',
   description   TEXT         DEFAULT NULL COMMENT '事件描述',
   location      VARCHAR(255) DEFAULT NULL COMMENT '地点名称',
   latitude      DOUBLE       DEFAULT NULL COMMENT '纬度',
   longitude     DOUBLE       DEFAULT NULL COMMENT '经度',
   deleted       TINYINT(1)   NOT NULL DEFAULT 0 COMMENT '逻辑删除',
   created_at    DATETIME     NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
-  INDEX idx_person (person_id)
+  INDEX idx_person (person_id),
+  INDEX idx_event_sort (event_sort),
+  INDEX idx_family_sort (family_id, event_sort, id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='人物事件表';
 
 -- 操作日志表
 CREATE TABLE IF NOT EXISTS t_operate_log (
-  id                  BIGINT       PRIMARY KEY COMMENT '主键ID',
+  id                  BIGINT       NOT NULL COMMENT '主键ID',
   operate_type        VARCHAR(50)  NOT NULL COMMENT '操作类型',
   operate_type_desc   VARCHAR(100) NOT NULL COMMENT '操作类型描述',
   user_id             BIGINT       DEFAULT NULL COMMENT '操作人ID',
@@ -93,9 +105,84 @@ CREATE TABLE IF NOT EXISTS t_operate_log (
   family_id           BIGINT       DEFAULT NULL COMMENT '家族ID',
   detail              TEXT         DEFAULT NULL COMMENT '操作详情(JSON格式)',
   created_at          DATETIME     NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '操作时间',
-  INDEX idx_family (family_id),
-  INDEX idx_user (user_id),
-  INDEX idx_target (target_id),
-  INDEX idx_operate_type (operate_type),
+  PRIMARY KEY (id, created_at),
+  -- 各筛选条件 + (created_at, id) 游标排序；二级索引隐含主键 id
+  INDEX idx_family_time (family_id, created_at),
+  INDEX idx_family_type_time (family_id, operate_type, created_at),
+  INDEX idx_user_time (user_id, created_at),
+  INDEX idx_target_time (target_id, created_at),
+  INDEX idx_target_type_time (target_type, created_at),
+  INDEX idx_type_time (operate_type, created_at),
   INDEX idx_created_at (created_at)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='操作日志表';
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='操作日志表'
+-- 按月分区，月分区 pYYYYMM 由 OperateLogPartitionService 从 pmax 拆出，过期分区归档后删除
+PARTITION BY RANGE COLUMNS(created_at) (
+  PARTITION p0 VALUES LESS THAN ('2026-01-01 00:00:00'),
+  PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
+
+-- 亲缘闭包表（祖先-后代，按深度记录路径数，由关系写操作增量维护）
+CREATE TABLE IF NOT EXISTS t_person_closure (
+  ancestor_id   BIGINT       NOT NULL COMMENT '祖先人物ID',
+  depth         INT          NOT NULL COMMENT '相隔代数，自身为0',
+  descendant_id BIGINT       NOT NULL COMMENT '后代人物ID',
+  path_count    BIGINT       NOT NULL DEFAULT 1 COMMENT '该深度下的路径数',
+  PRIMARY KEY (ancestor_id, depth, descendant_id),
+  INDEX idx_descendant (descendant_id, depth, ancestor_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='亲缘闭包表';
+
+-- 疑似重复人物审核队列（由查重任务写入，人工审核）
+CREATE TABLE IF NOT EXISTS t_duplicate_candidate (
+  id            BIGINT       PRIMARY KEY COMMENT '主键ID',
+  person_a      BIGINT       NOT NULL COMMENT '人物A（ID较小者）',
+  person_b      BIGINT       NOT NULL COMMENT '人物B（ID较大者）',
+  family_id     BIGINT       DEFAULT NULL COMMENT '人物A所属家族ID',
+  score         INT          NOT NULL COMMENT '相似度得分(0-100)',
+  reasons       VARCHAR(255) DEFAULT NULL COMMENT '命中依据',
+  status        VARCHAR(20)  NOT NULL DEFAULT 'PENDING' COMMENT '状态: PENDING/MERGED/DISMISSED',
+  created_at    DATETIME     NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  updated_at    DATETIME     NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  UNIQUE KEY uk_pair (person_a, person_b),
+  INDEX idx_family_status (family_id, status, score)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='疑似重复人物审核队列';
+
+-- 事件空间索引（带经纬度的事件，迁徙地图按视口查询与聚合）
+CREATE TABLE IF NOT EXISTS t_event_geo (
+  event_id      BIGINT       PRIMARY KEY COMMENT '事件ID',
+  family_id     BIGINT       DEFAULT NULL COMMENT '事件所属人物的家族ID',
+  person_id     BIGINT       NOT NULL COMMENT '所属人物ID',
+  geohash       CHAR(12)     NOT NULL COMMENT '12位geohash',
+  latitude      DOUBLE       NOT NULL COMMENT '纬度',
+  longitude     DOUBLE       NOT NULL COMMENT '经度',
+  INDEX idx_family_geohash (family_id, geohash),
+  INDEX idx_person (person_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='事件空间索引';
+
+-- 迁徙路段（每人相邻两个落脚点之间的一段，迁徙流向按此汇总）
+CREATE TABLE IF NOT EXISTS t_migration_leg (
+  id            BIGINT       PRIMARY KEY COMMENT '主键ID',
+  family_id     BIGINT       DEFAULT NULL COMMENT '所属家族ID',
+  person_id     BIGINT       NOT NULL COMMENT '人物ID',
+  seq           INT          NOT NULL COMMENT '该人的第几段，从0开始',
+  origin        VARCHAR(255) NOT NULL COMMENT '起点地名（无地名时为经纬度）',
+  origin_lat    DOUBLE       NOT NULL COMMENT '起点纬度',
+  origin_lng    DOUBLE       NOT NULL COMMENT '起点经度',
+  dest          VARCHAR(255) NOT NULL COMMENT '终点地名（无地名时为经纬度）',
+  dest_lat      DOUBLE       NOT NULL COMMENT '终点纬度',
+  dest_lng      DOUBLE       NOT NULL COMMENT '终点经度',
+  decade        INT          DEFAULT NULL COMMENT '到达终点的年代',
+  INDEX idx_family (family_id, origin, dest),
+  INDEX idx_person (person_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='迁徙路段';
+
+-- 家族快照（按时间点还原时回放操作日志的起点）
+CREATE TABLE IF NOT EXISTS t_family_snapshot (
+  id              BIGINT       PRIMARY KEY COMMENT '主键ID',
+  family_id       BIGINT       NOT NULL COMMENT '家族ID',
+  taken_at        DATETIME(6)  NOT NULL COMMENT '快照时间',
+  last_log_id     BIGINT       NOT NULL DEFAULT 0 COMMENT '回放水位：不大于该ID的操作日志已包含在快照中',
+  person_count    INT          NOT NULL DEFAULT 0 COMMENT '人物数',
+  relation_count  INT          NOT NULL DEFAULT 0 COMMENT '关系数',
+  data            LONGBLOB     NOT NULL COMMENT 'gzip 压缩的人物与关系 JSON',
+  INDEX idx_family_time (family_id, taken_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='家族快照';
@@ -0,0 +1,61 @@
+package com.genealogy.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DateKeyTest {
+
+    @ParameterizedTest(name = "{0} -> {1} {2}")
+    @CsvSource(delimiter = '|', value = {
+            // 阿拉伯数字与全角数字
+            "1850-03-05         | 18500305 | day",
+            "1850年3月          | 18500300 | month",
+            "1850               | 18500000 | year",
+            "１８５０年３月５日 | 18500305 | day",
+            // 〇 与 零 都是 0
+            "一八五〇年         | 18500000 | year",
+            "一八五零年         | 18500000 | year",
+            "一八五〇年三月初五 | 18500305 | day",
+            // 十/廿 改写
+            "1850年十月         | 18501000 | month",
+            "1850年十二月       | 18501200 | month",
+            "1850年三月十五日   | 18500315 | day",
+            "1850年三月二十日   | 18500320 | day",
+            "1850年五月三十一日 | 18500531 | day",
+            "1850年二月廿五     | 18500225 | day",
+            "1850年二月廿       | 18500220 | day",
+            // 月、日超出范围时降为更粗的精度
+            "1850年13月         | 18500000 | year",
+            "1850年3月32日      | 18500300 | month",
+            // 农历优先于年代与约数，年代优先于约数
+            "农历1850年三月初五 | 18500000 | lunar",
+            "约1850年代         | 18500000 | decade",
+            "1855年代           | 18500000 | decade",
+            "1850s              | 18500000 | decade",
+            "约1853年           | 18530000 | circa",
+            "1853年左右         | 18530000 | circa",
+            "c.1853             | 18530000 | circa",
+            "1853?              | 18530000 | circa",
+    })
+    void parse(String raw, int sort, String precision) {
+        DateKey key = DateKey.parse(raw);
+        assertNotNull(key);
+        assertEquals(sort, key.sort());
+        assertEquals(precision, key.precision());
+    }
+
+    @ParameterizedTest
+    @NullAndEmptySource
+    @ValueSource(strings = {"   ", "不详", "85年", "民国三十年"})
+    void unparseable(String raw) {
+        assertNull(DateKey.parse(raw));
+        assertEquals(0, DateKey.sortOf(DateKey.parse(raw)));
+        assertEquals("", DateKey.precisionOf(DateKey.parse(raw)));
+    }
+}
@@ -0,0 +1,88 @@
+package com.genealogy.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersonDiffTest {
+
+    /** 超过片段差异阈值的公共文本 */
+    private static final String BASE = "家谱".repeat(40);
+
+    /** U+1F600 与 U+1F603：高代理相同、低代理不同 */
+    private static final String GRIN = "😀", SMILE = "😃";
+    /** U+1F600 与 U+1FA00：低代理相同、高代理不同 */
+    private static final String OTHER_HIGH = "🨀";
+
+    static Stream<Arguments> textCases() {
+        return Stream.of(
+                Arguments.of("中段替换", BASE + "甲" + BASE, BASE + "乙丙" + BASE),
+                Arguments.of("末尾追加", BASE, BASE + "补记"),
+                Arguments.of("开头删除", "序言" + BASE, BASE),
+                // 公共前缀止于代理对中间：不能只保留高代理
+                Arguments.of("前缀拆代理对", BASE + GRIN, BASE + SMILE),
+                Arguments.of("前缀拆代理对后有公共后缀", BASE + GRIN + BASE, BASE + SMILE + BASE),
+                // 公共后缀始于代理对中间：不能只保留低代理
+                Arguments.of("后缀拆代理对", GRIN + BASE, OTHER_HIGH + BASE),
+                Arguments.of("前后都拆代理对", BASE + GRIN + "x" + OTHER_HIGH + BASE, BASE + SMILE + "y" + GRIN + BASE),
+                Arguments.of("插入代理对", BASE + BASE, BASE + GRIN + BASE));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("textCases")
+    @SuppressWarnings("unchecked")
+    void textDiffKeepsSurrogatePairsWhole(String name, String before, String after) {
+        Map<String, Object> changes = PersonDiff.diff(Map.of("bio", before), Map.of("bio", after));
+        Map<String, Object> t = (Map<String, Object>) changes.get("bio");
+        assertNotNull(t, "长文本应编码为片段差异");
+        assertWellFormed((String) t.get("d"));
+        assertWellFormed((String) t.get("i"));
+        int p = (Integer) t.get("p"), s = (Integer) t.get("s");
+        assertTrue(p == 0 || !Character.isHighSurrogate(before.charAt(p - 1)));
+        assertTrue(s == 0 || !Character.isLowSurrogate(before.charAt(before.length() - s)));
+
+        Map<String, Object> state = new HashMap<>(Map.of("bio", before));
+        PersonDiff.applyForward(state, changes);
+        assertEquals(after, state.get("bio"));
+        PersonDiff.applyBackward(state, changes);
+        assertEquals(before, state.get("bio"));
+    }
+
+    @Test
+    void spliceRejectsMismatchedText() {
+        Map<String, Object> changes = PersonDiff.diff(Map.of("bio", BASE + "甲" + BASE), Map.of("bio", BASE + "乙" + BASE));
+        Map<String, Object> state = new HashMap<>(Map.of("bio", BASE + "丙" + BASE));
+        assertThrows(IllegalStateException.class, () -> PersonDiff.applyForward(state, changes));
+        Map<String, Object> shorter = new HashMap<>(Map.of("bio", "甲"));
+        assertThrows(IllegalStateException.class, () -> PersonDiff.applyBackward(shorter, changes));
+    }
+
+    @Test
+    void shortFieldsUsePairs() {
+        Map<String, Object> changes = PersonDiff.diff(
+                Map.of("name", "张三", "isStarred", false), Map.of("name", "张四", "isStarred", true));
+        assertEquals(List.of("张三", "张四"), changes.get("name"));
+        assertEquals(List.of(false, true), changes.get("isStarred"));
+    }
+
+    /** 不含孤立的代理字符 */
+    private static void assertWellFormed(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c)) {
+                assertTrue(i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1)), "孤立的高代理: " + s);
+                i++;
+            } else {
+                assertFalse(Character.isLowSurrogate(c), "孤立的低代理: " + s);
+            }
+        }
+    }
+}
@@ -403,8 +403,8 @@ createApp({
       try {
         const [p, r, e] = await Promise.all([
           Store.person.list(null, fid),
-          Store.relation.list(),
-          Store.event.all(),
+          Store.relation.list(fid),
+          Store.event.all(fid),
         ]);
         persons.value = p || [];
         relations.value = r || [];
@@ -841,9 +841,12 @@ createApp({
       };
 
       try {
-        const treeData = await Store.person.tree(familyId.value);
+        // 族谱树按家族构建；未选家族时直接用全部人物和关系绘制
+        const treeData = familyId.value ? await Store.person.tree(familyId.value) : null;
         if (treeData) {
           GraphManager.renderTree(treeData, handleNodeClick);
+        } else {
+          GraphManager.render(persons.value, relations.value, handleNodeClick);
         }
       } catch (err) {
         GraphManager.render(persons.value, relations.value, handleNodeClick);
@@ -1078,9 +1081,6 @@ createApp({
           return;
         }
 
-        console.log('Rendering migration map');
-        console.log('Events:', events.value);
-
         // 确保容器有尺寸
         container.style.width = '100%';
         container.style.height = '100%';
@@ -1106,102 +1106,94 @@ createApp({
         migrationMapInstance.value = map;
         console.log('Leaflet map initialized');
 
-        // 获取有位置的事件（兼容 lat/lng 或 latitude/longitude）
-        const locationEvents = events.value.filter(function(e) {
-          const lat = e.latitude !== undefined ? e.latitude : e.lat;
-          const lng = e.longitude !== undefined ? e.longitude : e.lng;
-          const hasLocation = lat !== undefined && lat !== null && lat !== '' &&
-                             lng !== undefined && lng !== null && lng !== '';
-          const isMigrationOrResidence = e.type === 'migration' || e.type === 'residence';
-          return hasLocation && isMigrationOrResidence;
-        }).sort(function(a, b) {
-          return (a.eventDate || '').localeCompare(b.eventDate || '');
-        });
-
-        console.log('Location events:', locationEvents);
-
-        if (locationEvents.length === 0) {
-          console.log('No location events found');
-          return;
-        }
-
-        // 按人物分组，同一人物按时间排序
-        var eventsByPerson = {};
-        locationEvents.forEach(function(e) {
-          if (!eventsByPerson[e.personId]) {
-            eventsByPerson[e.personId] = [];
-          }
-          eventsByPerson[e.personId].push(e);
+        // 点击地图关闭卡片
+        map.on('click', function() {
+          migrationCard.value.show = false;
         });
 
-        var markers = [];
-
-        // 绘制每个成员的迁徙路线
-        Object.entries(eventsByPerson).forEach(function(entry) {
-          var personId = entry[0];
-          var evts = entry[1];
-          var person = persons.value.find(function(p) { return p.id == personId; });
-          if (!person) return;
-
-          // 按时间排序
-          evts.sort(function(a, b) {
-            return (a.eventDate || '').localeCompare(b.eventDate || '');
+        const fid = familyId.value;
+        if (!fid) return;
+
+        // 迁徙路线：服务端按起点-终点汇总的流向，线宽随路段数增加
+        const routeLayer = L.layerGroup().addTo(map);
+        Store.event.flows(fid, 'place').then(function(flows) {
+          if (migrationMapInstance.value !== map) return;
+          const bounds = [];
+          (flows || []).forEach(function(f) {
+            if (f.originLat == null || f.destLat == null) return;
+            const line = L.polyline([[f.originLat, f.originLng], [f.destLat, f.destLng]], {
+              color: '#3b82f6',
+              weight: Math.min(2 + Math.log2(f.count || 1), 8),
+              opacity: 0.7,
+              dashArray: '10, 10'
+            }).addTo(routeLayer);
+            line.bindTooltip(`${f.origin || '?'} → ${f.dest || '?'}：${f.count} 段，${(f.personNames || []).join('、')}${f.personCount > 3 ? ' 等' : ''}`);
+            bounds.push([f.originLat, f.originLng], [f.destLat, f.destLng]);
           });
+          if (bounds.length > 0) map.fitBounds(L.latLngBounds(bounds).pad(0.1));
+        }).catch(function(err) {
+          toast('加载迁徙路线失败: ' + err.message, 'error');
+        });
 
-          // 创建路径点
-          var coords = evts.map(function(e, idx) {
-            var lat = e.latitude || e.lat;
-            var lng = e.longitude || e.lng;
-
-            // 确定标记类型
-            var isFirst = idx === 0;
-            var isResidence = e.type === 'residence';
-            var isOrigin = isFirst && evts.length > 1;
-
-            // 创建标记
-            var markerHtml = createMarkerHtml(e, person, isOrigin, isResidence);
-
-            var marker = L.marker([lat, lng], {
-              icon: L.divIcon({
-                className: 'migration-marker',
-                html: markerHtml,
-                iconSize: [40, 40],
-                iconAnchor: [20, 40]
-              })
-            }).addTo(map);
-
-            // 绑定点击事件
-            marker.on('click', function(clickEvent) {
-              L.DomEvent.stopPropagation(clickEvent.originalEvent);
-              showMigrationCard(clickEvent.originalEvent, person, e);
+        // 事件标记：只取视口内的聚合点，随平移与缩放重新请求；只处理最后一次请求的结果
+        const clusterLayer = L.layerGroup().addTo(map);
+        let seq = 0;
+        let timer = null;
+        function loadClusters() {
+          const mine = ++seq;
+          Store.event.geo(fid, map.getBounds().toBBoxString(), map.getZoom()).then(function(clusters) {
+            if (mine !== seq || migrationMapInstance.value !== map) return;
+            clusterLayer.clearLayers();
+            (clusters || []).forEach(function(c) {
+              if (c.count === 1 && c.event) {
+                addEventMarker(c.event);
+              } else {
+                addClusterMarker(c);
+              }
             });
-
-            markers.push(marker);
-
-            return [lat, lng];
+          }).catch(function(err) {
+            if (mine === seq) toast('加载地图事件失败: ' + err.message, 'error');
           });
+        }
 
-          // 绘制迁徙路线
-          if (coords.length > 1) {
-            var polyline = L.polyline(coords, {
-              color: '#3b82f6',
-              weight: 2,
-              opacity: 0.7,
-              dashArray: '10, 10'
-            }).addTo(map);
-          }
-        });
+        function addEventMarker(e) {
+          const person = persons.value.find(function(p) { return p.id == e.personId; });
+          const marker = L.marker([e.latitude, e.longitude], {
+            icon: L.divIcon({
+              className: 'migration-marker',
+              html: createMarkerHtml(e, person, false, e.type === 'residence'),
+              iconSize: [40, 40],
+              iconAnchor: [20, 40]
+            })
+          }).addTo(clusterLayer);
+          marker.on('click', function(clickEvent) {
+            L.DomEvent.stopPropagation(clickEvent.originalEvent);
+            showMigrationCard(clickEvent.originalEvent, person, e);
+          });
+        }
 
-        // 自动调整视野以显示所有标记
-        if (markers.length > 0) {
-          var group = L.featureGroup(markers);
-          map.fitBounds(group.getBounds().pad(0.1));
+        function addClusterMarker(c) {
+          const marker = L.marker([c.latitude, c.longitude], {
+            icon: L.divIcon({
+              className: 'migration-marker',
+              html: `<div class="marker-cluster">${c.count}</div>`,
+              iconSize: [36, 36],
+              iconAnchor: [18, 18]
+            })
+          }).addTo(clusterLayer);
+          // 点击聚合点放大到该网格
+          marker.on('click', function(clickEvent) {
+            L.DomEvent.stopPropagation(clickEvent.originalEvent);
+            map.setView([c.latitude, c.longitude], Math.min(map.getZoom() + 2, map.getMaxZoom()));
+          });
         }
 
-        // 点击地图关闭卡片
-        map.on('click', function() {
-          migrationCard.value.show = false;
+        // 缩放结束也会触发 moveend，合并为一次请求
+        map.on('moveend zoomend', function() {
+          clearTimeout(timer);
+          timer = setTimeout(loadClusters, 150);
         });
+        loadClusters();
       });
     }
 
@@ -122,6 +122,13 @@ const Store = {
       if (params.length) q = '?' + params.join('&');
       return http('/person/list' + q);
     },
+    page(familyId, cursor, limit, fields) {
+      const params = ['limit=' + (limit || 50)];
+      if (familyId) params.push('familyId=' + familyId);
+      if (cursor) params.push('cursor=' + encodeURIComponent(cursor));
+      if (fields) params.push('fields=' + fields.join(','));
+      return http('/person/list?' + params.join('&'));
+    },
     get(id)          { return http('/person/' + id); },
     create(dto)      { return http('/person', { method: 'POST', body: JSON.stringify(dto) }); },
     update(id, dto)  { return http('/person/' + id, { method: 'PUT', body: JSON.stringify(dto) }); },
@@ -129,11 +136,14 @@ const Store = {
     toggleStar(id)   { return http('/person/' + id + '/star', { method: 'PATCH' }); },
     tree(familyId)   { return http('/person/tree' + (familyId ? '?familyId=' + familyId : '')); },
     stats(familyId)  { return http('/person/stats' + (familyId ? '?familyId=' + familyId : '')); },
+    subtree(id, up, down) { return http('/person/' + id + '/subtree?up=' + (up || 0) + '&down=' + (down || 2)); },
+    kinship(id, ids) { return http('/person/' + id + '/kinship?to=' + ids.join(',')); },
+    suggest(prefix, familyId, limit) { return http('/person/suggest?prefix=' + encodeURIComponent(prefix) + '&familyId=' + familyId + '&limit=' + (limit || 10)); },
   },
 
   /* ========== Relation ========== */
   relation: {
-    list()           { return http('/relation/list'); },
+    list(familyId)   { return http('/relation/list' + (familyId ? '?familyId=' + familyId : '')); },
     byPerson(id)     { return http('/relation/person/' + id); },
     create(dto)      { return http('/relation', { method: 'POST', body: JSON.stringify(dto) }); },
     remove(id)       { return http('/relation/' + id, { method: 'DELETE' }); },
@@ -142,7 +152,27 @@ const Store = {
   /* ========== Event ========== */
   event: {
     byPerson(id)     { return http('/event/person/' + id); },
-    all()            { return http('/event/all'); },
+    /** 家族全部事件（按日期排序），逐页读取时间轴游标 */
+    async all(familyId) {
+      if (familyId == null) return [];
+      const events = [];
+      let cursor = null;
+      do {
+        const page = await this.timeline(familyId, cursor, 500);
+        events.push(...(page.records || []));
+        cursor = page.nextCursor;
+      } while (cursor);
+      return events;
+    },
+    flows(familyId, by) {
+      return http('/event/flows?familyId=' + familyId + '&by=' + (by || 'place'));
+    },
+    geo(familyId, bbox, zoom) {
+      return http('/event/geo?familyId=' + familyId + '&bbox=' + encodeURIComponent(bbox) + '&zoom=' + zoom);
+    },
+    timeline(familyId, cursor, limit) {
+      return http('/event/all?familyId=' + familyId + '&limit=' + (limit || 100) + (cursor ? '&cursor=' + encodeURIComponent(cursor) : ''));
+    },
     create(dto)      { return http('/event', { method: 'POST', body: JSON.stringify(dto) }); },
     update(id, dto)  { return http('/event/' + id, { method: 'PUT', body: JSON.stringify(dto) }); },
     remove(id)       { return http('/event/' + id, { method: 'DELETE' }); },
@@ -186,6 +216,9 @@ const Store = {
     page(params) {
       return http('/operate-log/page', { method: 'POST', body: JSON.stringify(params) });
     },
+    scroll(params) {
+      return http('/operate-log/scroll', { method: 'POST', body: JSON.stringify(params) });
+    },
     byPerson(personId) { return http('/operate-log/person/' + personId); },
     byFamily(familyId) { return http('/operate-log/family/' + familyId); },
     getDetail(id)      { return http('/operate-log/' + id + '/detail'); },
@@ -212,7 +245,7 @@ const Store = {
     const [persons, relations, events] = await Promise.all([
       this.person.list(null, familyId),
       this.relation.list(),
-      this.event.all(),
+      this.event.all(familyId),
     ]);
     const data = { persons, relations, events, exportDate: new Date().toISOString() };
     const blob = new Blob([JSON.stringify(data, null, 2)], { type: 'application/json' });